@@ -0,0 +1,42 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+repositories {
+    mavenCentral()
+}
+
+// -Psimd adds the Vector API kernels of ll4j-simd, they need JDK 17 and the incubator module.
+// Pass -PjmhKernels=scalar as well to measure the scalar kernels on the same JDK, see Kernels.
+val simd = providers.gradleProperty("simd").isPresent
+
+dependencies {
+    jmh(project(":ll4j-train"))
+    jmh(project(":ll4j-huzpsb"))
+    if (simd) jmh(project(":ll4j-simd"))
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(if (simd) 17 else 8)
+    }
+}
+
+// ./gradlew :ll4j-bench:jmh, results are written as JSON for regression tracking.
+// Pass -PjmhIncludes=<regex> to run some of the benchmarks, like -PjmhIncludes=KernelBenchmark
+jmh {
+    jmhVersion = "1.37"
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    warmupIterations = 3
+    iterations = 5
+    fork = 1
+
+    val only = providers.gradleProperty("jmhIncludes")
+    if (only.isPresent) includes.add(only.get())
+
+    if (simd) jvmArgsAppend.addAll("--add-modules", "jdk.incubator.vector")
+    val kernels = providers.gradleProperty("jmhKernels")
+    if (kernels.isPresent) jvmArgsAppend.add("-Dll4j.kernels=${kernels.get()}")
+}
@@ -0,0 +1,66 @@
+package com.shinonometn.ml.ll4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read a generated MNIST-like CSV file with the sample iterators, results are per row.
+ * The file is small enough to stay in the page cache, so this is parsing speed, not disk speed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvBenchmark {
+
+    private static final int RowCount = 10_000;
+    private static final int FeatureCount = 784;
+
+    private Path path;
+
+    @Setup
+    public void setUp() throws IOException {
+        path = SyntheticData.csvFile(SyntheticData.newRandom(), RowCount, FeatureCount);
+    }
+
+    private static int drain(final DataSet.SampleIterator<DataSet.LabelEntry> samples) throws IOException {
+        int sum = 0;
+        try (final DataSet.SampleIterator<DataSet.LabelEntry> iterator = samples) {
+            while (iterator.hasNext()) sum += iterator.next().getLabelValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RowCount)
+    public int csvIterator() throws IOException {
+        return drain(DataSet.LabelEntry.createCSVIterator(path.toString(), true));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RowCount)
+    public int parallelCsvLoader() throws IOException {
+        return drain(ParallelCsvLoader.open(path, true, ParallelCsvLoader.Order.Strict));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RowCount)
+    public int numericCsvReader() throws IOException {
+        int sum = 0;
+        try (final NumericCsvReader reader = NumericCsvReader.open(path)) {
+            reader.skipLine();
+            final double[] row = new double[FeatureCount + 1];
+            while (reader.readRow(row) > 0) sum += (int) row[0];
+        }
+        return sum;
+    }
+}
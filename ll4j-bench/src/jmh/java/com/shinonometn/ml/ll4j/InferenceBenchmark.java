@@ -0,0 +1,68 @@
+package com.shinonometn.ml.ll4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classification with the MNIST model layout, one sample at a time and in batches.
+ * <p>
+ * {@link #classification()} is measured both as throughput and as sampled latency, so the JSON results
+ * have its latency percentiles. Batch results are per sample, comparable with the single sample ones.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InferenceBenchmark {
+
+    @Param({"Float64", "Float32"})
+    public Precision precision;
+
+    private static final int BatchSize = 64;
+
+    private Model model;
+    private InferenceSession session;
+    private double[] input;
+    private double[] output;
+    private double[] batch;
+
+    @Setup
+    public void setUp() throws MinRtException {
+        final NRandom random = SyntheticData.newRandom();
+        model = SyntheticData.model(random, SyntheticData.MnistLayout).withPrecision(precision).freeze();
+        session = model.newSession();
+
+        final int inputSize = model.getInputSize();
+        input = SyntheticData.pixels(random, inputSize);
+        output = new double[model.getOutputSize()];
+        batch = SyntheticData.pixels(random, inputSize * BatchSize);
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public double[] classification() throws MinRtException {
+        return model.classification(input);
+    }
+
+    /** Same as {@link #classification()} without allocations */
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public double[] sessionClassification() throws MinRtException {
+        session.classifyInto(input, output);
+        return output;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(BatchSize)
+    public double[] classifyBatch() throws MinRtException {
+        return model.classifyBatch(batch, BatchSize);
+    }
+}
@@ -0,0 +1,189 @@
+package com.shinonometn.ml.ll4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward, backward and update kernels of the built-in layers, on one thread.
+ * <p>
+ * Dense kernels come from {@link Kernels} and {@link TrainingKernels}. They are the scalar kernels, or the
+ * vector kernels of ll4j-simd when the benchmarks run with -Psimd, see build.gradle.kts.
+ * LeakyRelu and judge kernels run on the output of the dense layer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KernelBenchmark {
+
+    /** Dense layer shapes of the MNIST model, input x output */
+    @Param({"784x100", "100x100", "100x10"})
+    public String shape;
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    // Weights change a little on every update, a tiny rate keeps them stable over the run
+    private static final double LearningRate = 1e-12;
+
+    private int inputSize;
+    private int outputSize;
+
+    private Layer dense;
+    private Layer biasedDense;
+    private Layer quantized;
+    private Layer activation;
+    private Layer judge;
+
+    private double[] input;
+    private double[] output;
+    private double[] errors;
+    private double[] inputErrors;
+    private double[] gradient;
+
+    private float[] floatInput;
+    private float[] floatWeights;
+    private float[] floatOutput;
+
+    private ForwardFunction forwardDense;
+    private ForwardFunction forwardDenseLeakyRelu;
+    private BackwardFunction backwardDense;
+    private LayerAdjust.Updater denseUpdate;
+
+    @Setup
+    public void setUp() {
+        final String[] sizes = shape.split("x");
+        inputSize = Integer.parseInt(sizes[0]);
+        outputSize = Integer.parseInt(sizes[1]);
+
+        final NRandom random = SyntheticData.newRandom();
+        dense = Layers.dense(inputSize, outputSize, SyntheticData.weights(random, inputSize * outputSize));
+        activation = Layers.leakyRelu(outputSize);
+        judge = Layers.judge(outputSize);
+
+        // Random int8 weights, one scale for all rows
+        final byte[] bytes = new byte[inputSize * outputSize];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) (random.nextInt(255) - 127);
+        final double[] scales = new double[outputSize + 1];
+        Arrays.fill(scales, 1.0 / 127);
+        quantized = Layers.quantizedDenseOutputMajor(inputSize, outputSize, bytes, scales);
+
+        input = SyntheticData.weights(random, inputSize * batchSize);
+        output = SyntheticData.weights(random, outputSize * batchSize);
+        errors = SyntheticData.weights(random, outputSize * batchSize);
+        inputErrors = new double[inputSize * batchSize];
+        gradient = SyntheticData.weights(random, inputSize * outputSize);
+
+        floatInput = narrow(input);
+        floatWeights = narrow(dense.data);
+        floatOutput = new float[outputSize * batchSize];
+
+        forwardDense = ForwardFunction.dense(ExecutionPolicy.Sequential);
+        backwardDense = BackwardFunction.dense(ExecutionPolicy.Sequential);
+        denseUpdate = AdjustFunctions.denseUpdate(ExecutionPolicy.Sequential);
+
+        // Same shape with a bias for each output, for the fused kernel
+        biasedDense = Layers.dense(
+                inputSize, outputSize,
+                SyntheticData.weights(random, inputSize * outputSize), SyntheticData.weights(random, outputSize)
+        );
+        forwardDenseLeakyRelu = forwardDense.fuseLeakyRelu();
+    }
+
+    private static float[] narrow(final double[] source) {
+        final float[] result = new float[source.length];
+        for (int i = 0; i < result.length; i++) result[i] = (float) source[i];
+        return result;
+    }
+
+    //================================================================
+
+    @Benchmark
+    public double[] forwardDense() {
+        forwardDense.applyBatch(input, inputSize, dense.data, output, outputSize, batchSize);
+        return output;
+    }
+
+    @Benchmark
+    public float[] forwardDenseFloat32() {
+        forwardDense.applyBatch(floatInput, inputSize, floatWeights, floatOutput, outputSize, batchSize);
+        return floatOutput;
+    }
+
+    /** Dense layer with bias and the LeakyRelu after it in one pass, compare with forwardDense + forwardLeakyRelu */
+    @Benchmark
+    public double[] forwardDenseLeakyRelu() {
+        forwardDenseLeakyRelu.applyBatch(input, inputSize, biasedDense.data, output, outputSize, batchSize);
+        return output;
+    }
+
+    @Benchmark
+    public double[] forwardQuantizedDense() {
+        quantized.function.applyBatch(input, inputSize, quantized.data, output, outputSize, batchSize);
+        return output;
+    }
+
+    @Benchmark
+    public double[] forwardLeakyRelu() {
+        activation.function.applyBatch(errors, outputSize, activation.data, output, outputSize, batchSize);
+        return output;
+    }
+
+    @Benchmark
+    public double[] forwardJudge() {
+        judge.function.applyBatch(errors, outputSize, judge.data, output, outputSize, batchSize);
+        return output;
+    }
+
+    //================================================================
+
+    @Benchmark
+    public double[] backwardDense() {
+        backwardDense.applyBatch(input, dense, errors, inputErrors, batchSize);
+        return inputErrors;
+    }
+
+    @Benchmark
+    public double[] backwardLeakyRelu() {
+        BackwardFunction.LeakyRelu.applyBatch(errors, activation, errors, output, batchSize);
+        return output;
+    }
+
+    @Benchmark
+    public double[] backwardJudge() {
+        BackwardFunction.MaxIndex.applyBatch(errors, judge, errors, output, batchSize);
+        return output;
+    }
+
+    //================================================================
+
+    /** One update per sample, like {@link ModelTrainer#adjust(DataSet.Entry, double)} */
+    @Benchmark
+    public double[] denseUpdate() {
+        for (int idxS = 0; idxS < batchSize; idxS++) {
+            denseUpdate.apply(input, dense, errors, LearningRate);
+        }
+        return dense.data;
+    }
+
+    /** Gradient of the batch, like {@link ModelTrainer#adjustBatch(java.util.List, double)} */
+    @Benchmark
+    public double[] denseAccumulate() {
+        denseUpdate.accumulate(input, dense, errors, batchSize, gradient);
+        return gradient;
+    }
+
+    @Benchmark
+    public double[] denseApplyGradient() {
+        denseUpdate.applyGradient(dense, gradient, LearningRate);
+        return dense.data;
+    }
+}
@@ -0,0 +1,44 @@
+package com.shinonometn.ml.ll4j;
+
+import huzpsb.ll4j.minrt.MinRt;
+import huzpsb.ll4j.minrt.MinRtProgram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The original MinRt runtime on the MNIST model layout: parsing the script on every call, and compiled once
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MinRtBenchmark {
+
+    private String[] script;
+    private MinRtProgram program;
+    private double[] input;
+
+    @Setup
+    public void setUp() {
+        final NRandom random = SyntheticData.newRandom();
+        script = SyntheticData.modelText(random, SyntheticData.MnistLayout);
+        program = MinRt.compile(script);
+        input = SyntheticData.pixels(random, SyntheticData.MnistLayout[0]);
+    }
+
+    @Benchmark
+    public int doAi() {
+        return MinRt.doAi(input, script);
+    }
+
+    @Benchmark
+    public int compiledDoAi() {
+        return program.doAi(input);
+    }
+}
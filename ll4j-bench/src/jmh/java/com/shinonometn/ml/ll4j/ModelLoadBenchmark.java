@@ -0,0 +1,42 @@
+package com.shinonometn.ml.ll4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load time of the MNIST model layout, from text lines and from a text stream
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModelLoadBenchmark {
+
+    private String[] lines;
+    private byte[] text;
+
+    @Setup
+    public void setUp() {
+        lines = SyntheticData.modelText(SyntheticData.newRandom(), SyntheticData.MnistLayout);
+        text = String.join("\n", lines).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public Model parseLayers() throws MinRtException {
+        return Model.parseLayers(lines);
+    }
+
+    @Benchmark
+    public Model parseStream() throws IOException, MinRtException {
+        return Model.parse(new ByteArrayInputStream(text));
+    }
+}
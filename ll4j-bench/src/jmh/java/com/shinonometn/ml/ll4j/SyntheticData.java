@@ -0,0 +1,95 @@
+package com.shinonometn.ml.ll4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generated models and samples for the benchmarks, so they run without the MNIST files.
+ * Everything comes from {@link NRandom} with a fixed seed, every run sees the same data.
+ */
+final class SyntheticData {
+    private SyntheticData() {
+    }
+
+    static final long Seed = 42;
+
+    /** Same layout as the MNIST demos: 784-100-L-100-L-10-J */
+    static final int[] MnistLayout = {784, 100, 100, 10};
+
+    static NRandom newRandom() {
+        return new NRandom(Seed);
+    }
+
+    /**
+     * Gaussian values with the same spread as {@link AdjustFunctions#fillWithGaussianRandom(double[])}
+     */
+    static double[] weights(final NRandom random, final int size) {
+        final double[] array = new double[size];
+        for (int i = 0; i < size; i++) array[i] = random.nextGaussian(0, 1.0 / Math.sqrt(size));
+        return array;
+    }
+
+    /**
+     * Integer values in [0, 255], like MNIST pixels
+     */
+    static double[] pixels(final NRandom random, final int size) {
+        final double[] array = new double[size];
+        for (int i = 0; i < size; i++) array[i] = random.nextInt(256);
+        return array;
+    }
+
+    /**
+     * A text model of dense and LeakyRelu layers with a judge layer at the end,
+     * in the format of {@link Model#parseLayers(String[])}
+     *
+     * @param sizes input size of the model, then the output size of each dense layer
+     */
+    static String[] modelText(final NRandom random, final int... sizes) {
+        final int denseCount = sizes.length - 1;
+        final String[] lines = new String[denseCount * 2];
+        for (int d = 0; d < denseCount; d++) {
+            final int input = sizes[d];
+            final int output = sizes[d + 1];
+
+            final StringBuilder builder = new StringBuilder();
+            builder.append("D ").append(input).append(' ').append(output);
+            for (final double weight : weights(random, input * output)) builder.append(' ').append(weight);
+            lines[d * 2] = builder.toString();
+            lines[d * 2 + 1] = ((d == denseCount - 1) ? "J " : "L ") + output;
+        }
+        return lines;
+    }
+
+    static Model model(final NRandom random, final int... sizes) throws MinRtException {
+        return Model.parseLayers(modelText(random, sizes));
+    }
+
+    /**
+     * Write a CSV file of labeled samples with a header line, in the format of the MNIST CSV files.
+     * The file is deleted when the JVM exits.
+     */
+    static Path csvFile(final NRandom random, final int rows, final int features) throws IOException {
+        final Path path = Files.createTempFile("ll4j-bench-", ".csv");
+        path.toFile().deleteOnExit();
+
+        try (final BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+            writer.write("label");
+            for (int i = 0; i < features; i++) writer.write(",pixel" + i);
+            writer.newLine();
+
+            for (int r = 0; r < rows; r++) {
+                writer.write(Integer.toString(random.nextInt(10)));
+                for (int i = 0; i < features; i++) {
+                    writer.write(',');
+                    // Mostly background, like MNIST
+                    writer.write(Integer.toString((random.nextInt(4) == 0) ? random.nextInt(256) : 0));
+                }
+                writer.newLine();
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,86 @@
+package com.shinonometn.ml.ll4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a training step on the MNIST model layout, per sample.
+ * <p>
+ * Samples are cycled through a small synthetic set. The learning rate is tiny, so the weights barely change
+ * during the run and every iteration does the same work.
+ * <p>
+ * Only the cost of a step is measured here, the epochs each optimizer takes to an accuracy are compared by
+ * the CompareOptimizers demo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrainingBenchmark {
+
+    private static final int SampleCount = 256;
+    private static final int BatchSize = 32;
+    private static final double LearningRate = 1e-12;
+
+    @Param({"sgd", "momentum", "nesterov", "adam"})
+    public String optimizer;
+
+    private ModelTrainer trainer;
+    private List<DataSet.LabelEntry> samples;
+    private int nextSample = 0;
+    private int nextBatch = 0;
+
+    @Setup
+    public void setUp() throws MinRtException {
+        final NRandom random = SyntheticData.newRandom();
+        final Model model = SyntheticData.model(random, SyntheticData.MnistLayout);
+        trainer = ModelTrainer.withOptimizer(model, createOptimizer(optimizer));
+
+        samples = new ArrayList<>(SampleCount);
+        for (int i = 0; i < SampleCount; i++) {
+            samples.add(DataSet.LabelEntry.of(random.nextInt(10), SyntheticData.pixels(random, 784)));
+        }
+    }
+
+    private static Optimizer createOptimizer(final String name) {
+        switch (name) {
+            case "sgd":
+                return Optimizer.Sgd;
+            case "momentum":
+                return Optimizer.momentum(0.9);
+            case "nesterov":
+                return Optimizer.nesterov(0.9);
+            case "adam":
+                return Optimizer.adam();
+            default:
+                throw new IllegalArgumentException("Unknown optimizer " + name);
+        }
+    }
+
+    /** Forward, backward and update of one sample */
+    @Benchmark
+    public double adjust() {
+        final DataSet.LabelEntry sample = samples.get(nextSample);
+        nextSample = (nextSample + 1) % SampleCount;
+        return trainer.adjust(sample, LearningRate);
+    }
+
+    /** One mini-batch, the result is per sample */
+    @Benchmark
+    @OperationsPerInvocation(BatchSize)
+    public int adjustBatch() {
+        final int from = nextBatch;
+        nextBatch = (nextBatch + BatchSize) % SampleCount;
+        return trainer.adjustBatch(samples.subList(from, from + BatchSize), LearningRate);
+    }
+}
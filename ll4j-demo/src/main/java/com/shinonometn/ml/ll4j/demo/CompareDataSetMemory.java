@@ -0,0 +1,46 @@
+package com.shinonometn.ml.ll4j.demo;
+
+import com.shinonometn.ml.ll4j.CompactDataSet;
+import com.shinonometn.ml.ll4j.ParallelCsvLoader;
+import com.shinonometn.utils.Loaders;
+import huzpsb.ll4j.data.DataSet;
+
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class CompareDataSetMemory {
+    private final static String LabeledDataPath = Optional
+            .ofNullable(System.getenv("TRAIN_DATA_PATH"))
+            .orElse("fashion-mnist_train.csv");
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("Training data file : %s\n", Paths.get(LabeledDataPath).toAbsolutePath());
+
+        long before = usedHeap();
+        long start = System.currentTimeMillis();
+        DataSet dataSet = Loaders.loadDataSet(LabeledDataPath, 0);
+        final long listTime = System.currentTimeMillis() - start;
+        final long listHeap = usedHeap() - before;
+        final int listCount = dataSet.split.size();
+        dataSet = null;
+
+        before = usedHeap();
+        start = System.currentTimeMillis();
+        final CompactDataSet compact = CompactDataSet.load(ParallelCsvLoader.open(
+                Paths.get(LabeledDataPath), true, ParallelCsvLoader.Order.Strict
+        ));
+        final long compactTime = System.currentTimeMillis() - start;
+        final long compactHeap = usedHeap() - before;
+
+        System.out.printf("List<DataEntry>    : %d samples, %,d bytes, loaded in %d ms%n", listCount, listHeap, listTime);
+        System.out.printf("CompactDataSet     : %d samples, %,d bytes, loaded in %d ms, %s features%n",
+                compact.size(), compactHeap, compactTime, compact.isByteFeatures() ? "byte" : "float");
+        System.out.printf("Ratio              : %.1fx%n", listHeap / (double) compactHeap);
+    }
+}
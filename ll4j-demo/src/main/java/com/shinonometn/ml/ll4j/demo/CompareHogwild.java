@@ -0,0 +1,139 @@
+package com.shinonometn.ml.ll4j.demo;
+
+import com.shinonometn.ml.ll4j.CompactDataSet;
+import com.shinonometn.ml.ll4j.EpochSampler;
+import com.shinonometn.ml.ll4j.HogwildTrainer;
+import com.shinonometn.ml.ll4j.MinRtException;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.ParallelCsvLoader;
+import com.shinonometn.ml.ll4j.SampleCache;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+
+import static com.shinonometn.ml.ll4j.AdjustFunctions.fillWithGaussianRandom;
+import static com.shinonometn.ml.ll4j.Layers.*;
+
+/**
+ * Train the same initial model single-threaded with {@link ModelTrainer#adjust(com.shinonometn.ml.ll4j.DataSet.Entry, double)}
+ * and with {@link HogwildTrainer} in both update modes, then compare throughput and accuracy after each epoch.
+ * All runs visit the samples in the same shuffled orders.
+ */
+public class CompareHogwild {
+    private final static String LabeledDataPath = Optional
+            .ofNullable(System.getenv("TRAIN_DATA_PATH"))
+            .orElse("fashion-mnist_train.csv");
+
+    private final static String CachePath = Optional
+            .ofNullable(System.getenv("TRAIN_CACHE_PATH"))
+            .orElse(LabeledDataPath + ".cache");
+
+    private final static String TestDataPath = Optional
+            .ofNullable(System.getenv("TEST_DATA_PATH"))
+            .orElse("fashion-mnist_test.csv");
+
+    private final static double LearningRate = Optional
+            .ofNullable(System.getenv("LEARNING_RATE"))
+            .map(Double::parseDouble)
+            .orElse(ModelTrainer.DefaultLearningRate);
+
+    private final static int WorkerCount = Optional
+            .ofNullable(System.getenv("WORKER_COUNT"))
+            .map(Integer::parseInt)
+            .orElse(Runtime.getRuntime().availableProcessors());
+
+    private final static int Epochs = Optional
+            .ofNullable(System.getenv("EPOCHS"))
+            .map(Integer::parseInt)
+            .orElse(5);
+
+    private final static long ShuffleSeed = Optional
+            .ofNullable(System.getenv("SHUFFLE_SEED"))
+            .map(Long::parseLong)
+            .orElse(1L);
+
+    private final static int TestBatchSize = 256;
+
+    public static void main(String[] args) throws IOException, MinRtException {
+        System.out.printf("Training data : %s\n", Paths.get(LabeledDataPath).toAbsolutePath());
+        System.out.printf("Test data     : %s\n", Paths.get(TestDataPath).toAbsolutePath());
+        System.out.printf("Learning rate : %s\n", LearningRate);
+        System.out.printf("Worker count  : %d\n", WorkerCount);
+        System.out.printf("Epochs        : %d\n", Epochs);
+
+        final CompactDataSet train = CompactDataSet.load(SampleCache.openOrCreate(LabeledDataPath, CachePath, true));
+        final CompactDataSet test = CompactDataSet.load(ParallelCsvLoader.open(
+                Paths.get(TestDataPath), true, ParallelCsvLoader.Order.Strict
+        ));
+        System.out.printf("Samples       : %d training, %d test\n", train.size(), test.size());
+
+        // Same initial weights for all runs
+        final double[][] initial = {
+                fillWithGaussianRandom(new double[784 * 100]),
+                fillWithGaussianRandom(new double[100 * 100]),
+                fillWithGaussianRandom(new double[100 * 10])
+        };
+
+        final String[] names = {"Single thread", "Hogwild, relaxed", "Hogwild, striped"};
+        final HogwildTrainer.UpdateMode[] modes = {null, HogwildTrainer.UpdateMode.Relaxed, HogwildTrainer.UpdateMode.Striped};
+
+        for (int run = 0; run < names.length; run++) {
+            final ModelTrainer trainer = ModelTrainer.create(
+                    dense(784, 100, initial[0].clone()),
+                    leakyRelu(100),
+                    dense(100, 100, initial[1].clone()),
+                    leakyRelu(100),
+                    dense(100, 10, initial[2].clone()),
+                    judge(10)
+            );
+            final HogwildTrainer hogwild = (modes[run] == null) ? null : HogwildTrainer.on(trainer, WorkerCount, modes[run]);
+            final EpochSampler sampler = EpochSampler.shuffled(train.size(), ShuffleSeed);
+            final CompactDataSet.Sample sample = train.newSample();
+
+            System.out.printf("======== %s ========\n", names[run]);
+            long totalTime = 0;
+            for (int epoch = 1; epoch <= Epochs; epoch++) {
+                final PrimitiveIterator.OfInt order = sampler.nextEpoch();
+                final long start = System.nanoTime();
+                int correct = 0;
+                if (hogwild != null) {
+                    correct = hogwild.adjust(train, order, LearningRate);
+                } else {
+                    while (order.hasNext()) {
+                        if (trainer.adjust(sample.load(order.nextInt()), LearningRate) > 0) correct++;
+                    }
+                }
+                final long time = System.nanoTime() - start;
+                totalTime += time;
+
+                System.out.printf(
+                        "Epoch %02d: %,.0f samples/s, train %.2f%%, test %.2f%%%n",
+                        epoch, train.size() / (time / 1e9),
+                        correct * 100.0 / train.size(), testAccuracy(trainer.toModel(), test) * 100
+                );
+            }
+            System.out.printf("Total   : %.2f s%n", totalTime / 1e9);
+            if (hogwild != null) hogwild.close();
+        }
+    }
+
+    private static double testAccuracy(final Model model, final CompactDataSet test) throws MinRtException {
+        final int inputSize = model.getInputSize();
+        final double[] values = new double[inputSize];
+        int correct = 0;
+        for (int from = 0; from < test.size(); from += TestBatchSize) {
+            final int size = Math.min(TestBatchSize, test.size() - from);
+            final double[] batch = new double[size * inputSize];
+            for (int i = 0; i < size; i++) {
+                test.copyTo(from + i, values);
+                System.arraycopy(values, 0, batch, i * inputSize, inputSize);
+            }
+            final double[] results = model.classifyBatch(batch, size);
+            for (int i = 0; i < size; i++) if ((int) results[i] == test.getLabel(from + i)) correct++;
+        }
+        return (double) correct / test.size();
+    }
+}
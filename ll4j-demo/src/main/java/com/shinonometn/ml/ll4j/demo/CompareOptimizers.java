@@ -0,0 +1,182 @@
+package com.shinonometn.ml.ll4j.demo;
+
+import com.shinonometn.ml.ll4j.CompactDataSet;
+import com.shinonometn.ml.ll4j.DataParallelTrainer;
+import com.shinonometn.ml.ll4j.DataSet;
+import com.shinonometn.ml.ll4j.EpochSampler;
+import com.shinonometn.ml.ll4j.IndexedDataSet;
+import com.shinonometn.ml.ll4j.MinRtException;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.Optimizer;
+import com.shinonometn.ml.ll4j.ParallelCsvLoader;
+import com.shinonometn.ml.ll4j.SampleCache;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.shinonometn.ml.ll4j.AdjustFunctions.fillWithGaussianRandom;
+import static com.shinonometn.ml.ll4j.Layers.*;
+
+/**
+ * Train the same initial model with each {@link Optimizer} until the test accuracy reaches a target,
+ * then compare epochs and seconds to the target. All runs visit the samples in the same shuffled orders.
+ */
+public class CompareOptimizers {
+    private final static String LabeledDataPath = Optional
+            .ofNullable(System.getenv("TRAIN_DATA_PATH"))
+            .orElse("fashion-mnist_train.csv");
+
+    private final static String CachePath = Optional
+            .ofNullable(System.getenv("TRAIN_CACHE_PATH"))
+            .orElse(LabeledDataPath + ".cache");
+
+    private final static String TestDataPath = Optional
+            .ofNullable(System.getenv("TEST_DATA_PATH"))
+            .orElse("fashion-mnist_test.csv");
+
+    // Test accuracy to reach, in [0, 1]
+    private final static double TargetAccuracy = Optional
+            .ofNullable(System.getenv("TARGET_ACCURACY"))
+            .map(Double::parseDouble)
+            .orElse(0.85);
+
+    private final static int MaxEpochs = Optional
+            .ofNullable(System.getenv("MAX_EPOCHS"))
+            .map(Integer::parseInt)
+            .orElse(20);
+
+    private final static int BatchSize = Optional
+            .ofNullable(System.getenv("BATCH_SIZE"))
+            .map(Integer::parseInt)
+            .orElse(32);
+
+    private final static int WorkerCount = Optional
+            .ofNullable(System.getenv("WORKER_COUNT"))
+            .map(Integer::parseInt)
+            .orElse(Runtime.getRuntime().availableProcessors());
+
+    private final static long ShuffleSeed = Optional
+            .ofNullable(System.getenv("SHUFFLE_SEED"))
+            .map(Long::parseLong)
+            .orElse(1L);
+
+    // Learning rates of each optimizer, the momentum rate is shared by Nesterov
+    private final static double SgdLearningRate = Optional
+            .ofNullable(System.getenv("SGD_LEARNING_RATE"))
+            .map(Double::parseDouble)
+            .orElse(ModelTrainer.DefaultLearningRate);
+
+    private final static double MomentumLearningRate = Optional
+            .ofNullable(System.getenv("MOMENTUM_LEARNING_RATE"))
+            .map(Double::parseDouble)
+            .orElse(ModelTrainer.DefaultLearningRate);
+
+    private final static double AdamLearningRate = Optional
+            .ofNullable(System.getenv("ADAM_LEARNING_RATE"))
+            .map(Double::parseDouble)
+            .orElse(1e-4);
+
+    private final static int TestBatchSize = 256;
+
+    public static void main(String[] args) throws IOException, MinRtException {
+        System.out.printf("Training data   : %s\n", Paths.get(LabeledDataPath).toAbsolutePath());
+        System.out.printf("Test data       : %s\n", Paths.get(TestDataPath).toAbsolutePath());
+        System.out.printf("Target accuracy : %.2f%%\n", TargetAccuracy * 100);
+        System.out.printf("Max epochs      : %d\n", MaxEpochs);
+        System.out.printf("Batch size      : %d\n", BatchSize);
+        System.out.printf("Worker count    : %d\n", WorkerCount);
+
+        final CompactDataSet train = CompactDataSet.load(SampleCache.openOrCreate(LabeledDataPath, CachePath, true));
+        final CompactDataSet test = CompactDataSet.load(ParallelCsvLoader.open(
+                Paths.get(TestDataPath), true, ParallelCsvLoader.Order.Strict
+        ));
+        final IndexedDataSet<CompactDataSet.Sample> samples = train.asIndexed(BatchSize);
+        System.out.printf("Samples         : %d training, %d test\n", train.size(), test.size());
+
+        // Same initial weights for all runs
+        final double[][] initial = {
+                fillWithGaussianRandom(new double[784 * 100]),
+                fillWithGaussianRandom(new double[100 * 100]),
+                fillWithGaussianRandom(new double[100 * 10])
+        };
+
+        final String[] names = {"SGD", "Momentum 0.9", "Nesterov 0.9", "Adam"};
+        final Optimizer[] optimizers = {Optimizer.Sgd, Optimizer.momentum(0.9), Optimizer.nesterov(0.9), Optimizer.adam()};
+        final double[] learningRates = {SgdLearningRate, MomentumLearningRate, MomentumLearningRate, AdamLearningRate};
+        final String[] results = new String[names.length];
+
+        for (int run = 0; run < names.length; run++) {
+            final ModelTrainer trainer = ModelTrainer.create(
+                    optimizers[run],
+                    dense(784, 100, initial[0].clone()),
+                    leakyRelu(100),
+                    dense(100, 100, initial[1].clone()),
+                    leakyRelu(100),
+                    dense(100, 10, initial[2].clone()),
+                    judge(10)
+            );
+            final EpochSampler sampler = EpochSampler.shuffled(train.size(), ShuffleSeed);
+
+            System.out.printf("======== %s, learning rate %s ========\n", names[run], learningRates[run]);
+            results[run] = String.format("not reached in %d epochs", MaxEpochs);
+            try (final DataParallelTrainer parallelTrainer = DataParallelTrainer.on(trainer, WorkerCount)) {
+                long totalTime = 0;
+                for (int epoch = 1; epoch <= MaxEpochs; epoch++) {
+                    final long start = System.nanoTime();
+                    final int correct = trainEpoch(parallelTrainer, sampler.nextEpoch(samples), learningRates[run]);
+                    totalTime += System.nanoTime() - start;
+
+                    final double accuracy = testAccuracy(trainer.toModel(), test);
+                    System.out.printf(
+                            "Epoch %02d: %.2f s, train %.2f%%, test %.2f%%%n",
+                            epoch, totalTime / 1e9, correct * 100.0 / train.size(), accuracy * 100
+                    );
+                    if (accuracy >= TargetAccuracy) {
+                        results[run] = String.format("%d epochs, %.2f s", epoch, totalTime / 1e9);
+                        break;
+                    }
+                }
+            }
+        }
+
+        System.out.printf("======== Time to %.2f%% test accuracy ========\n", TargetAccuracy * 100);
+        for (int run = 0; run < names.length; run++) System.out.printf("%-13s: %s%n", names[run], results[run]);
+    }
+
+    private static int trainEpoch(
+            final DataParallelTrainer trainer,
+            final DataSet.SampleIterator<CompactDataSet.Sample> epoch,
+            final double learningRate
+    ) {
+        final List<DataSet.Entry> batch = new ArrayList<>(BatchSize);
+        int correct = 0;
+        while (epoch.hasNext()) {
+            batch.add(epoch.next());
+            if (batch.size() < BatchSize && epoch.hasNext()) continue;
+            correct += trainer.adjustBatch(batch, learningRate);
+            batch.clear();
+        }
+        return correct;
+    }
+
+    private static double testAccuracy(final Model model, final CompactDataSet test) throws MinRtException {
+        final int inputSize = model.getInputSize();
+        final double[] values = new double[inputSize];
+        int correct = 0;
+        for (int from = 0; from < test.size(); from += TestBatchSize) {
+            final int size = Math.min(TestBatchSize, test.size() - from);
+            final double[] batch = new double[size * inputSize];
+            for (int i = 0; i < size; i++) {
+                test.copyTo(from + i, values);
+                System.arraycopy(values, 0, batch, i * inputSize, inputSize);
+            }
+            final double[] results = model.classifyBatch(batch, size);
+            for (int i = 0; i < size; i++) if ((int) results[i] == test.getLabel(from + i)) correct++;
+        }
+        return (double) correct / test.size();
+    }
+}
@@ -0,0 +1,136 @@
+package com.shinonometn.ml.ll4j.demo;
+
+import com.shinonometn.ml.ll4j.DataSet;
+import com.shinonometn.ml.ll4j.InferenceSession;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.ParallelCsvLoader;
+import com.shinonometn.ml.ll4j.Precision;
+import com.shinonometn.ml.ll4j.Quantizer;
+import com.shinonometn.utils.Loaders;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Run the same model and test set in Float64, Float32 and int8, and compare accuracy, agreement and speed.
+ * The int8 model is calibrated on the first samples of the training set.
+ */
+public class ComparePrecision {
+    private final static String ModelPath = Optional
+            .ofNullable(System.getenv("MODEL_LOCATION"))
+            .orElse("test2.model");
+
+    private final static String LabeledDataPath = Optional
+            .ofNullable(System.getenv("TEST_DATA_PATH"))
+            .orElse("fashion-mnist_test.csv");
+
+    private final static String CalibrationDataPath = Optional
+            .ofNullable(System.getenv("TRAIN_DATA_PATH"))
+            .orElse("fashion-mnist_train.csv");
+
+    private final static int CalibrationSize = Optional
+            .ofNullable(System.getenv("CALIBRATION_SIZE"))
+            .map(Integer::parseInt)
+            .orElse(500);
+
+    private final static int BatchSize = 256;
+    private final static int Rounds = 5;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("Model path : %s\n", Paths.get(ModelPath).toAbsolutePath());
+        System.out.printf("Label path : %s\n", Paths.get(LabeledDataPath).toAbsolutePath());
+        System.out.printf("Calibration: %s, %d samples\n", Paths.get(CalibrationDataPath).toAbsolutePath(), CalibrationSize);
+
+        final Model model64 = Loaders.loadModel(ModelPath, Precision.Float64);
+        final Model[] models = {
+                model64,
+                model64.withPrecision(Precision.Float32),
+                Quantizer.quantize(model64, loadCalibrationSamples().iterator())
+        };
+        final String[] names = {Precision.Float64.description, Precision.Float32.description, "int8 (1 byte)"};
+        final int inputSize = models[0].getInputSize();
+
+        // Load the test set
+        int count = 0;
+        double[] inputs = new double[inputSize * 1024];
+        int[] labels = new int[1024];
+        try (final DataSet.SampleIterator<DataSet.LabelEntry> samples = ParallelCsvLoader.open(
+                Paths.get(LabeledDataPath), true, ParallelCsvLoader.Order.Strict
+        )) {
+            while (samples.hasNext()) {
+                final DataSet.LabelEntry entry = samples.next();
+                if (count == labels.length) {
+                    labels = Arrays.copyOf(labels, count * 2);
+                    inputs = Arrays.copyOf(inputs, count * 2 * inputSize);
+                }
+                System.arraycopy(entry.values, 0, inputs, count * inputSize, inputSize);
+                labels[count++] = entry.getLabelValue();
+            }
+        }
+        System.out.printf("Samples    : %d\n", count);
+
+        final int[][] predictions = new int[models.length][count];
+        for (int m = 0; m < models.length; m++) {
+            final Model model = models[m];
+
+            long weightBytes = 0;
+            for (final Layer layer : model.getLayers()) weightBytes += layer.getWeightBytes();
+
+            // Batches, the first round warms up
+            long batchTime = 0;
+            for (int round = 0; round <= Rounds; round++) {
+                final long start = System.nanoTime();
+                for (int from = 0; from < count; from += BatchSize) {
+                    final int size = Math.min(BatchSize, count - from);
+                    final double[] batch = new double[size * inputSize];
+                    System.arraycopy(inputs, from * inputSize, batch, 0, batch.length);
+                    final double[] results = model.classifyBatch(batch, size);
+                    for (int i = 0; i < size; i++) predictions[m][from + i] = (int) results[i];
+                }
+                if (round > 0) batchTime += System.nanoTime() - start;
+            }
+
+            // One sample at a time
+            final InferenceSession session = model.newSession();
+            final double[] input = new double[inputSize];
+            final double[] output = new double[model.getOutputSize()];
+            long sessionTime = 0;
+            for (int round = 0; round <= Rounds; round++) {
+                final long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    System.arraycopy(inputs, i * inputSize, input, 0, inputSize);
+                    session.classifyInto(input, output);
+                }
+                if (round > 0) sessionTime += System.nanoTime() - start;
+            }
+
+            int correct = 0;
+            for (int i = 0; i < count; i++) if (predictions[m][i] == labels[i]) correct++;
+
+            // Agreement with the Float64 model
+            int agreed = 0;
+            for (int i = 0; i < count; i++) if (predictions[m][i] == predictions[0][i]) agreed++;
+
+            System.out.printf("%s%n", names[m]);
+            System.out.printf("  Weights  : %,d bytes%n", weightBytes);
+            System.out.printf("  Correct  : %d, %.2f%%%n", correct, correct * 100.0 / count);
+            System.out.printf("  Agreement: %d of %d, %.2f%%%n", agreed, count, agreed * 100.0 / count);
+            System.out.printf("  Batch    : %.2f us/sample%n", batchTime / 1000.0 / Rounds / count);
+            System.out.printf("  Session  : %.2f us/sample%n", sessionTime / 1000.0 / Rounds / count);
+        }
+    }
+
+    private static List<double[]> loadCalibrationSamples() throws Exception {
+        final List<double[]> samples = new ArrayList<>(CalibrationSize);
+        try (final DataSet.SampleIterator<DataSet.LabelEntry> entries = ParallelCsvLoader.open(
+                Paths.get(CalibrationDataPath), true, ParallelCsvLoader.Order.Strict
+        )) {
+            while (entries.hasNext() && samples.size() < CalibrationSize) samples.add(entries.next().values);
+        }
+        return samples;
+    }
+}
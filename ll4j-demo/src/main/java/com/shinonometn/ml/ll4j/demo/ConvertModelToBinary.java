@@ -0,0 +1,39 @@
+package com.shinonometn.ml.ll4j.demo;
+
+import com.shinonometn.ml.ll4j.BinaryModelFormat;
+import com.shinonometn.ml.ll4j.Precision;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+public class ConvertModelToBinary {
+    /* Text model */
+    private final static String ModelPath = Optional
+            .ofNullable(System.getenv("MODEL_LOCATION"))
+            .orElse("test2.model");
+
+    /* Binary model output */
+    private final static String OutputPath = Optional
+            .ofNullable(System.getenv("OUTPUT_LOCATION"))
+            .orElse("test2.model.bin");
+
+    /* Float64 or Float32 */
+    private final static Precision WeightPrecision = Optional
+            .ofNullable(System.getenv("PRECISION"))
+            .map(Precision::valueOf)
+            .orElse(Precision.Float64);
+
+    public static void main(String[] args) throws Exception {
+        final Path input = Paths.get(ModelPath);
+        final Path output = Paths.get(OutputPath);
+        System.out.println("Model Path  : " + input.toAbsolutePath());
+        System.out.println("Output Path : " + output.toAbsolutePath());
+        System.out.println("Precision   : " + WeightPrecision.description);
+
+        final long start = System.currentTimeMillis();
+        BinaryModelFormat.convertTextModel(input, output, WeightPrecision);
+        System.out.printf("Converted in %d ms.%n", System.currentTimeMillis() - start);
+        System.out.printf("Size: %d -> %d bytes.%n", input.toFile().length(), output.toFile().length());
+    }
+}
@@ -2,6 +2,8 @@ package com.shinonometn.ml.ll4j.demo;
 
 import com.shinonometn.ml.ll4j.DataSet;
 import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.ParallelCsvLoader;
+import com.shinonometn.ml.ll4j.Precision;
 import com.shinonometn.utils.Loaders;
 import com.shinonometn.utils.SampleVisualizingParams;
 import com.shinonometn.utils.Visualizers;
@@ -9,6 +11,8 @@ import com.shinonometn.utils.Visualizers;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -26,6 +30,15 @@ public class MnistClassify {
             .ofNullable(System.getenv("TEST_DATA_PATH"))
             .orElse("fashion-mnist_test.csv");
 
+    /* Float64 or Float32 */
+    private final static Precision ModelPrecision = Optional
+            .ofNullable(System.getenv("PRECISION"))
+            .map(Precision::valueOf)
+            .orElse(Precision.Float64);
+
+    // Samples classified together in one batch
+    private final static int BatchSize = 256;
+
     // Background executor
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
     private static final Thread.UncaughtExceptionHandler uceHandler = (t, e) -> executor.execute(() -> {
@@ -44,40 +57,58 @@ public class MnistClassify {
                 "Created wrong output directory: " + wrongOutputPath.toAbsolutePath()
         );
 
-        final Model model = Model.parseLayers(Loaders.loadModelString(ModelPath));
+        System.out.printf("Precision  : %s\n", ModelPrecision.description);
+        final Model model = Loaders.loadModel(ModelPath, ModelPrecision);
+
+        final DataSet.SampleIterator<DataSet.LabelEntry> sampleDataSet = ParallelCsvLoader.open(
+                Paths.get(LabeledDataPath), true, ParallelCsvLoader.Order.Strict
+        );
 
-        final DataSet.SampleIterator<DataSet.LabelEntry> sampleDataSet = DataSet
-                .LabelEntry.createCSVIterator(LabeledDataPath);
+        final int inputSize = model.getInputSize();
+        final int outputSize = model.getOutputSize();
+        final List<DataSet.LabelEntry> batch = new ArrayList<>(BatchSize);
 
         int correct = 0, wrong = 0;
         System.out.println("Start testing...");
         final long startTime = System.currentTimeMillis();
         int count = 0;
-        while (sampleDataSet.hasNext()) {
-            final DataSet.LabelEntry data = sampleDataSet.next();
-
-            final int predictedLabel = (int) model.classification(data.values)[0];
-
-            final int actualLabel = data.getLabelValue();
-            final boolean isCorrect = (predictedLabel == actualLabel);
-            if (isCorrect) correct++; else wrong++;
-            if (!isCorrect) executor.execute(() -> {
-                try {
-                    Visualizers.dumpSampleToGreyScaleImageFile(
-                            SampleVisualizingParams.rowFirst(28, 28, data.values),
-                            wrongOutputPath.resolve(String.format("P%d_A%d.png", predictedLabel, actualLabel))
-                    );
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            count++;
-            if (count % 100 == 0) System.out.printf(
-                    "\rItem: %d, label: %d, predicted: %d, correct: %s      ",
-                    count, actualLabel, predictedLabel, isCorrect
-            );
-            if (count >= 10_000) break;
+        while (sampleDataSet.hasNext() && count < 10_000) {
+            // Collect a batch of samples
+            batch.clear();
+            while (sampleDataSet.hasNext() && batch.size() < BatchSize && count + batch.size() < 10_000) {
+                batch.add(sampleDataSet.next());
+            }
+
+            final double[] inputs = new double[batch.size() * inputSize];
+            for (int i = 0; i < batch.size(); i++) {
+                System.arraycopy(batch.get(i).values, 0, inputs, i * inputSize, inputSize);
+            }
+            final double[] results = model.classifyBatch(inputs, batch.size());
+
+            for (int i = 0; i < batch.size(); i++) {
+                final DataSet.LabelEntry data = batch.get(i);
+                final int predictedLabel = (int) results[i * outputSize];
+
+                final int actualLabel = data.getLabelValue();
+                final boolean isCorrect = (predictedLabel == actualLabel);
+                if (isCorrect) correct++; else wrong++;
+                if (!isCorrect) executor.execute(() -> {
+                    try {
+                        Visualizers.dumpSampleToGreyScaleImageFile(
+                                SampleVisualizingParams.rowFirst(28, 28, data.values),
+                                wrongOutputPath.resolve(String.format("P%d_A%d.png", predictedLabel, actualLabel))
+                        );
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+
+                count++;
+                if (count % 100 == 0) System.out.printf(
+                        "\rItem: %d, label: %d, predicted: %d, correct: %s      ",
+                        count, actualLabel, predictedLabel, isCorrect
+                );
+            }
         }
         sampleDataSet.close();
         final long timeDiff = System.currentTimeMillis() - startTime;
@@ -1,16 +1,29 @@
 package com.shinonometn.ml.ll4j.demo;
 
+import com.shinonometn.ml.ll4j.CompactDataSet;
+import com.shinonometn.ml.ll4j.DataParallelTrainer;
+import com.shinonometn.ml.ll4j.DataSet;
 import com.shinonometn.ml.ll4j.DataSet.LabelEntry;
 import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+import com.shinonometn.ml.ll4j.EpochSampler;
+import com.shinonometn.ml.ll4j.IndexedDataSet;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.MetricsRecorder;
 import com.shinonometn.ml.ll4j.MinRtException;
 import com.shinonometn.ml.ll4j.Model;
 import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.Optimizer;
+import com.shinonometn.ml.ll4j.PrefetchingIterator;
+import com.shinonometn.ml.ll4j.SampleCache;
+import com.shinonometn.tools.MNIST;
 import com.shinonometn.utils.Formats;
 import com.shinonometn.utils.Loaders;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -28,11 +41,56 @@ public class MnistTrain {
             .ofNullable(System.getenv("TRAIN_DATA_PATH"))
             .orElse("fashion-mnist_train.csv");
 
-    // 8e-7 for fashion, 8e-5 for digits
+    // Binary copy of the training data, created from the CSV file on the first run
+    private final static String CachePath = Optional
+            .ofNullable(System.getenv("TRAIN_CACHE_PATH"))
+            .orElse(LabeledDataPath + ".cache");
+
+    // IDX files of the training data, used instead of the CSV file if both are set
+    private final static String LabelIdxPath = System.getenv("TRAIN_LABEL_PATH");
+    private final static String ImageIdxPath = System.getenv("TRAIN_IMAGE_PATH");
+
+    // Optimizer of the dense layers: sgd, momentum, nesterov or adam
+    private final static String OptimizerName = Optional
+            .ofNullable(System.getenv("OPTIMIZER"))
+            .orElse("sgd");
+
+    // Give new dense layers a bias for each output
+    private final static boolean DenseBias = Optional
+            .ofNullable(System.getenv("DENSE_BIAS"))
+            .map(Boolean::parseBoolean)
+            .orElse(false);
+
+    // 8e-7 for fashion, 8e-5 for digits with SGD. Adam takes larger rates, 1e-4 by default.
     private final static double InitialLearningRate = Optional
             .ofNullable(System.getenv("LEARNING_RATE"))
             .map(Double::parseDouble)
-            .orElse(ModelTrainer.DefaultLearningRate);
+            .orElse(OptimizerName.equals("adam") ? 1e-4 : ModelTrainer.DefaultLearningRate);
+
+    // Samples per weight update, 1 updates on every sample
+    private final static int BatchSize = Optional
+            .ofNullable(System.getenv("BATCH_SIZE"))
+            .map(Integer::parseInt)
+            .orElse(32);
+
+    // Training threads, each batch is split among them
+    private final static int WorkerCount = Optional
+            .ofNullable(System.getenv("WORKER_COUNT"))
+            .map(Integer::parseInt)
+            .orElse(Runtime.getRuntime().availableProcessors());
+
+    // Samples read ahead of the training thread
+    private final static int PrefetchDepth = Optional
+            .ofNullable(System.getenv("PREFETCH_DEPTH"))
+            .map(Integer::parseInt)
+            .orElse(1024);
+
+    // Seed of the shuffled sample order, samples are visited in file order if not set.
+    // Shuffling loads the training data into memory once.
+    private final static Long ShuffleSeed = Optional
+            .ofNullable(System.getenv("SHUFFLE_SEED"))
+            .map(Long::parseLong)
+            .orElse(null);
 
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
     private static final Thread.UncaughtExceptionHandler uceHandler = (t, e) -> executor.execute(() -> {
@@ -40,65 +98,136 @@ public class MnistTrain {
         executor.shutdown();
     });
 
-    private static void printProgressLine(final int c, final int t, final int f) {
-        System.out.printf("\r[% 6d] t:% 6d, f:% 6d, r:%2.2f%%", c, t, f, ((t / (double) c) * 100));
+    // Count, correct, wrong, correct rate, samples per second and samples ready in the prefetch queue
+    private static void printProgressLine(final MetricsRecorder metrics) {
+        final long c = metrics.getSampleCount();
+        final long t = metrics.getCorrectCount();
+        final int depth = metrics.getQueueDepth(PrefetchingIterator.QueueName);
+        System.out.printf(
+                "\r[% 6d] t:% 6d, f:% 6d, r:%2.2f%%, %.0f/s, q:%s",
+                c, t, c - t, (c == 0) ? 0 : (t / (double) c) * 100, metrics.getSamplesPerSecond(),
+                (depth < 0) ? "-" : String.valueOf(depth)
+        );
+    }
+
+    private static Layer newDense(final int input, final int output) {
+        return DenseBias ? denseWithBias(input, output) : dense(input, output);
+    }
+
+    private static Optimizer createOptimizer(final String name) {
+        switch (name) {
+            case "sgd":
+                return Optimizer.Sgd;
+            case "momentum":
+                return Optimizer.momentum(0.9);
+            case "nesterov":
+                return Optimizer.nesterov(0.9);
+            case "adam":
+                return Optimizer.adam();
+            default:
+                throw new IllegalArgumentException("Unknown optimizer " + name);
+        }
+    }
+
+    private static SampleIterator<LabelEntry> openTrainingData() throws IOException {
+        if (LabelIdxPath != null && ImageIdxPath != null) {
+            // Pixels in [0, 255], same as the CSV files
+            return MNIST.createLabeledIterator(Paths.get(LabelIdxPath), Paths.get(ImageIdxPath), 1.0);
+        }
+        return SampleCache.openOrCreate(LabeledDataPath, CachePath, true);
     }
 
     public static void main(String[] args) throws IOException, MinRtException {
         Thread.currentThread().setUncaughtExceptionHandler(uceHandler);
         final Path ModelPath = Paths.get(ModelLocation);
 
-        System.out.printf("Training data file : %s\n", Paths.get(LabeledDataPath).toAbsolutePath());
+        if (LabelIdxPath != null && ImageIdxPath != null) {
+            System.out.printf("Training labels    : %s\n", Paths.get(LabelIdxPath).toAbsolutePath());
+            System.out.printf("Training images    : %s\n", Paths.get(ImageIdxPath).toAbsolutePath());
+        } else {
+            System.out.printf("Training data file : %s\n", Paths.get(LabeledDataPath).toAbsolutePath());
+            System.out.printf("Training data cache: %s\n", Paths.get(CachePath).toAbsolutePath());
+        }
         System.out.printf("Model output file  : %s\n", ModelPath.toAbsolutePath());
-
+        System.out.printf("Optimizer          : %s\n", OptimizerName);
+        System.out.printf("Learning rate      : %s\n", InitialLearningRate);
+        System.out.printf("Batch size         : %d\n", BatchSize);
+        System.out.printf("Worker count       : %d\n", WorkerCount);
+        System.out.printf("Prefetch depth     : %d\n", PrefetchDepth);
+        System.out.printf("Shuffle seed       : %s\n", (ShuffleSeed == null) ? "none, file order" : ShuffleSeed);
+
+        final Optimizer optimizer = createOptimizer(OptimizerName);
         final ModelTrainer trainer;
         if (ModelPath.toFile().exists()) {
-            trainer = ModelTrainer.on(Model.parseLayers(Loaders.loadModelString(ModelLocation)));
+            trainer = ModelTrainer.withOptimizer(Loaders.loadModel(ModelLocation), optimizer);
             System.out.println("Load origin weights from file.");
         } else {
             trainer = ModelTrainer.create(
-                    fillWithGaussianRandom(dense(784, 100)),
+                    optimizer,
+                    fillWithGaussianRandom(newDense(784, 100)),
                     leakyRelu(100),
-                    fillWithGaussianRandom(dense(100, 100)),
+                    fillWithGaussianRandom(newDense(100, 100)),
                     leakyRelu(100),
-                    fillWithGaussianRandom(dense(100, 10)),
+                    fillWithGaussianRandom(newDense(100, 10)),
                     judge(10)
             );
-            System.out.println("New model weights created.");
+            System.out.printf("New model weights created%s.%n", DenseBias ? ", with bias" : "");
         }
 
+        final IndexedDataSet<CompactDataSet.Sample> samples;
+        final EpochSampler sampler;
+        if (ShuffleSeed != null) {
+            final CompactDataSet data = CompactDataSet.load(openTrainingData());
+            // Samples of a batch must stay valid until the batch is trained
+            samples = data.asIndexed(BatchSize);
+            sampler = EpochSampler.shuffled(data.size(), ShuffleSeed);
+            System.out.printf("Loaded %d samples in memory, %d bytes.%n", data.size(), data.getByteSize());
+        } else {
+            samples = null;
+            sampler = null;
+        }
+
+        // Also readable in JMX, as com.shinonometn.ml.ll4j:type=Metrics,name="MnistTrain"
+        final MetricsRecorder metrics = new MetricsRecorder();
+        metrics.register("MnistTrain");
+
+        final DataParallelTrainer parallelTrainer = DataParallelTrainer.on(trainer, WorkerCount);
+        parallelTrainer.setMetricsListener(metrics);
         final long start = System.currentTimeMillis();
 
         double learningRate = InitialLearningRate;
 
         for (int i = 0; i < 128; i++) {
             final long roundStart = System.currentTimeMillis();
-            int trainCount = 0, correctCount = 0, wrongCount = 0;
+            int trainCount = 0;
+            metrics.reset();
             System.out.printf("======== Training round % 3d/128 ========\n", i + 1);
-            try (final SampleIterator<LabelEntry> sampleDataSet =
-                         LabelEntry.createCSVIterator(LabeledDataPath)) {
+            try (final SampleIterator<? extends DataSet.Entry> sampleDataSet = (sampler != null)
+                    ? sampler.nextEpoch(samples)
+                    : PrefetchingIterator.wrap(openTrainingData(), PrefetchDepth, metrics)) {
 
+                final List<DataSet.Entry> batch = new ArrayList<>(BatchSize);
                 while (sampleDataSet.hasNext()) {
-                    // Adjust for single sample
-                    final double correct = trainer.adjust(sampleDataSet.next(), learningRate);
-                    if (correct > 0) correctCount++;
-                    else wrongCount++;
+                    batch.add(sampleDataSet.next());
+                    if (batch.size() < BatchSize && sampleDataSet.hasNext()) continue;
 
-                    if (((trainCount++) % 1000) != 0) continue;
+                    // Adjust for a batch of samples
+                    parallelTrainer.adjustBatch(batch, learningRate);
 
-                    final int c = trainCount;
-                    final int t = correctCount;
-                    final int f = wrongCount;
-                    executor.execute(() -> printProgressLine(c, t, f));
+                    final int previous = trainCount;
+                    trainCount += batch.size();
+                    batch.clear();
+                    if (previous / 1000 == trainCount / 1000) continue;
+                    executor.execute(() -> printProgressLine(metrics));
                 }
 
             }
             final long roundEnd = System.currentTimeMillis();
-            printProgressLine(trainCount, correctCount, wrongCount);
+            printProgressLine(metrics);
             System.out.println();
 
             // Adjust the learning rate according to correct rate
-            final double correctRate = (double) correctCount / trainCount;
+            final double correctRate = (double) metrics.getCorrectCount() / metrics.getSampleCount();
             if (correctRate > 0.95) {
                 learningRate = InitialLearningRate * 0.01;
             } else if (correctRate > 0.9) {
@@ -109,12 +238,15 @@ public class MnistTrain {
                     "Round %03d finished, time: %s%n",
                     i + 1, Formats.millisDuration(roundEnd - roundStart)
             );
+            for (final String line : metrics.getLayerLatencies()) System.out.println("  " + line);
             trainer.writeModelToFile(ModelLocation);
             System.out.printf("Correct rate: %02.2f. Round saved, next LR: %f.%n", correctRate, learningRate);
         }
 
         final long end = System.currentTimeMillis();
         System.out.printf("All round finished, time: %s%n", Formats.millisDuration(end - start));
+        parallelTrainer.close();
+        metrics.unregister();
         executor.shutdown();
     }
 }
@@ -20,7 +20,7 @@ public class VisualizeDenseLayer {
     private final static String MODEL_PATH = "digits/test.model";
 
     public static void main(String[] args) throws IOException, MinRtException {
-        final Model model = Model.parseLayers(Loaders.loadModelString(MODEL_PATH));
+        final Model model = Loaders.loadModel(MODEL_PATH);
         final Path outputFolder = Paths.get("./layer_visualized");
         if (outputFolder.toFile().mkdirs()) System.out.println(
                 "Created output folder: " + outputFolder.toAbsolutePath()
@@ -44,10 +44,11 @@ public class VisualizeDenseLayer {
 
             final int rows = (int) Math.floor(((Math.sqrt(size) * 2) * rowRatio));
 
-            // find the weight's max and min in layer
+            // find the weight's max and min in layer, biases after the weights are left out
             double wMax = data[0];
             double wMin = data[0];
-            for (double datum : data) {
+            for (int i = 0; i < size * total; i++) {
+                final double datum = data[i];
                 if (wMax < datum) wMax = datum;
                 if (wMin > datum) wMin = datum;
             }
@@ -1,10 +1,16 @@
 package com.shinonometn.tools;
 
+import com.shinonometn.ml.ll4j.DataSet;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * MNIST database dataset tools
@@ -101,8 +107,13 @@ public final class MNIST {
         public Entry next() {
             try {
                 final byte[] data = new byte[entrySize];
-                final int read = in.read(data);
-                if (read != entrySize) throw new EOFException("Unexpected end of source stream");
+                // A single read may return less than asked
+                int read = 0;
+                while (read < entrySize) {
+                    final int count = in.read(data, read, entrySize - read);
+                    if (count < 0) throw new EOFException("Unexpected end of source stream");
+                    read += count;
+                }
                 return new Entry(dimensionSizes, data);
             } catch (Exception e) {
                 /* Throw all unexpected exceptions. */
@@ -113,6 +124,152 @@ public final class MNIST {
         }
     }
 
+    //================================================================
+
+    /**
+     * Create a training sample iterator from a label file and an image file, both of unsigned bytes.
+     * <p>
+     * Both files are read in large blocks into reusable buffers, pixels are multiplied by the scale
+     * (1.0 keeps [0, 255], 1 / 255.0 normalizes to [0, 1]).
+     */
+    public static DataSet.SampleIterator<DataSet.LabelEntry> createLabeledIterator(final Path labelPath,
+                                                                                  final Path imagePath,
+                                                                                  final double scale) throws IOException {
+        final FileChannel labels = FileChannel.open(labelPath, StandardOpenOption.READ);
+        final FileChannel images;
+        try {
+            images = FileChannel.open(imagePath, StandardOpenOption.READ);
+        } catch (IOException e) {
+            labels.close();
+            throw e;
+        }
+
+        try {
+            final int[] labelSizes = readHeader(labels, labelPath);
+            final int[] imageSizes = readHeader(images, imagePath);
+            if (labelSizes[0] != imageSizes[0]) throw new IllegalArgumentException(String.format(
+                    "Label count %d is not the same as image count %d", labelSizes[0], imageSizes[0]
+            ));
+
+            int imageSize = 1;
+            for (int i = 1; i < imageSizes.length; i++) imageSize *= imageSizes[i];
+            return new LabeledImageIterator(labels, images, labelSizes[0], imageSize, scale);
+        } catch (IOException | RuntimeException e) {
+            labels.close();
+            images.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Zips a label file and an image file
+     */
+    private static final class LabeledImageIterator implements DataSet.SampleIterator<DataSet.LabelEntry> {
+        private static final int BlockSize = 256 * 1024;
+
+        private final FileChannel labelChannel;
+        private final FileChannel imageChannel;
+        private final int entryCount;
+        private final int imageSize;
+        private final double scale;
+
+        // Buffers hold whole entries
+        private final ByteBuffer labels;
+        private final ByteBuffer images;
+
+        private int yieldCount = 0;
+
+        LabeledImageIterator(final FileChannel labelChannel,
+                             final FileChannel imageChannel,
+                             final int entryCount,
+                             final int imageSize,
+                             final double scale) {
+            this.labelChannel = labelChannel;
+            this.imageChannel = imageChannel;
+            this.entryCount = entryCount;
+            this.imageSize = imageSize;
+            this.scale = scale;
+
+            final int entriesPerBlock = Math.max(BlockSize / imageSize, 1);
+            this.labels = ByteBuffer.allocate(entriesPerBlock);
+            this.images = ByteBuffer.allocate(entriesPerBlock * imageSize);
+            labels.limit(0);
+            images.limit(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return yieldCount < entryCount;
+        }
+
+        @Override
+        public DataSet.LabelEntry next() {
+            if (yieldCount >= entryCount) throw new NoSuchElementException();
+            try {
+                if (!labels.hasRemaining()) {
+                    final int entries = Math.min(labels.capacity(), entryCount - yieldCount);
+                    readFully(labelChannel, labels, entries);
+                    readFully(imageChannel, images, entries * imageSize);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            final int label = labels.get() & 0xFF;
+            final byte[] pixels = images.array();
+            final int offset = images.position();
+            final double[] values = new double[imageSize];
+            for (int i = 0; i < imageSize; i++) values[i] = (pixels[offset + i] & 0xFF) * scale;
+            images.position(offset + imageSize);
+
+            yieldCount++;
+            return DataSet.LabelEntry.of(label, values);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                labelChannel.close();
+            } finally {
+                imageChannel.close();
+            }
+        }
+
+        private static void readFully(final FileChannel channel, final ByteBuffer buffer, final int size) throws IOException {
+            buffer.clear();
+            buffer.limit(size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new EOFException("Unexpected end of source stream");
+            }
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Read the header of a file of unsigned bytes
+     *
+     * @return dimension sizes
+     */
+    private static int[] readHeader(final FileChannel channel, final Path path) throws IOException {
+        final ByteBuffer magic = ByteBuffer.allocate(4);
+        LabeledImageIterator.readFully(channel, magic, 4);
+        if (magic.get(0) != 0 || magic.get(1) != 0) throw new IllegalArgumentException("Invalid magic of file: " + path);
+
+        final DataType type = getType(magic.get(2) & 0xFF);
+        if (type != DataType.UByte) throw new IllegalArgumentException(String.format(
+                "Expected unsigned bytes in file %s, got %s", path, type.description
+        ));
+
+        final ByteBuffer sizes = ByteBuffer.allocate((magic.get(3) & 0xFF) * 4);
+        LabeledImageIterator.readFully(channel, sizes, sizes.capacity());
+        final int[] result = new int[sizes.capacity() / 4];
+        for (int i = 0; i < result.length; i++) result[i] = sizes.getInt();
+        if (result.length == 0) throw new IllegalArgumentException("No dimension in file: " + path);
+        return result;
+    }
+
+    //================================================================
+
     public static class Entry {
         private final int[] sizes;
         public final byte[] data;
@@ -1,6 +1,16 @@
 package com.shinonometn.utils;
 
+import com.shinonometn.ml.ll4j.BinaryModelFormat;
+import com.shinonometn.ml.ll4j.MinRtException;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.NumericCsvReader;
+import com.shinonometn.ml.ll4j.Precision;
+import huzpsb.ll4j.data.DataEntry;
+import huzpsb.ll4j.data.DataSet;
+
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -17,4 +27,41 @@ public final class Loaders {
         }
         return buffer.toArray(new String[0]);
     }
+
+    /**
+     * Load a CSV data set for the huzpsb trainer, like {@code huzpsb.ll4j.data.CsvLoader.load},
+     * but with {@link NumericCsvReader}. The first line is the header.
+     */
+    public static DataSet loadDataSet(final String path, final int labelIndex) throws IOException {
+        final DataSet data = new DataSet();
+        try (final NumericCsvReader reader = NumericCsvReader.open(Paths.get(path))) {
+            reader.skipLine(); // Skip the csv header
+
+            double[] row;
+            while ((row = reader.readRow()) != null) {
+                final double[] x = new double[row.length - 1];
+                int idx = 0;
+                for (int i = 0; i < row.length; i++) {
+                    if (i == labelIndex) continue;
+                    x[idx++] = row[i];
+                }
+                data.split.add(new DataEntry((int) row[labelIndex], x));
+            }
+        }
+        return data;
+    }
+
+    /** Load a text or binary model file */
+    public static Model loadModel(final String modelPath) throws IOException, MinRtException {
+        return loadModel(modelPath, Precision.Float64);
+    }
+
+    /** Load a text or binary model file, the model runs in the given precision */
+    public static Model loadModel(final String modelPath, final Precision precision) throws IOException, MinRtException {
+        final Path path = Paths.get(modelPath);
+        if (BinaryModelFormat.isBinaryModel(path)) return BinaryModelFormat.load(path, precision);
+        try (final InputStream input = Files.newInputStream(path)) {
+            return Model.parse(input).withPrecision(precision);
+        }
+    }
 }
@@ -1,14 +1,18 @@
 package huzpsb.ll4j.samples;
 
+import com.shinonometn.ml.ll4j.NumericCsvReader;
 import huzpsb.ll4j.minrt.MinRt;
+import huzpsb.ll4j.minrt.MinRtProgram;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
@@ -51,25 +55,32 @@ public class TestMinRt {
     }
 
     static Iterator<SampleData> createDataIterator(String dataSetPath, boolean skipHeader) throws IOException {
-        final Scanner scanner = new Scanner(Files.newInputStream(Paths.get(dataSetPath)));
-        if (skipHeader) {
-            final String header = scanner.nextLine().trim(); // Skip the csv header
-            System.out.println("Header: " + header);
-        }
+        final NumericCsvReader reader = NumericCsvReader.open(Paths.get(dataSetPath));
+        if (skipHeader) reader.skipLine(); // Skip the csv header
 
         return new Iterator<SampleData>() {
+            private double[] row = readRow();
+
+            private double[] readRow() {
+                try {
+                    final double[] line = reader.readRow();
+                    if (line == null) reader.close();
+                    return line;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
             @Override
             public boolean hasNext() {
-                return scanner.hasNextLine();
+                return row != null;
             }
 
             @Override
             public SampleData next() {
-                final String[] line = scanner.nextLine().split(",");
-                final double[] buffer = new double[line.length - 1];
-                for (int i = 1; i < line.length; i++) buffer[i - 1] = Double.parseDouble(line[i]);
-                final int label = Integer.parseInt(line[0]);
-                return new SampleData(label, buffer);
+                final double[] line = row;
+                row = readRow();
+                return new SampleData((int) line[0], Arrays.copyOfRange(line, 1, line.length));
             }
         };
     }
@@ -80,35 +91,52 @@ public class TestMinRt {
 
         final String[] model = loadModelString();
 
+        final long compileStart = System.currentTimeMillis();
+        final MinRtProgram program = MinRt.compile(model);
+        System.out.printf("Compile time: %d ms.%n", System.currentTimeMillis() - compileStart);
+
+        final List<SampleData> samples = new ArrayList<>();
         final Iterator<SampleData> sampleDataSet = createDataIterator(LabeledDataPath, true);
-        int correct = 0, wrong = 0;
-        System.out.println("Start testing...");
-        final long startTime = System.currentTimeMillis();
-        int count = 0;
-        while (sampleDataSet.hasNext()) {
-            final SampleData data = sampleDataSet.next();
-            if (count == 0) dumpAsImage(data);
+        while (sampleDataSet.hasNext() && samples.size() < 1_000) samples.add(sampleDataSet.next());
+        final int count = samples.size();
+        dumpAsImage(samples.get(0));
+
+        System.out.println("Start testing with script...");
+        final int[] scriptResults = new int[count];
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            scriptResults[i] = MinRt.doAi(samples.get(i).payload, model);
+            if ((i + 1) % 100 == 0) System.out.printf("\rItem: %d      ", i + 1);
+        }
+        final long scriptTime = System.currentTimeMillis() - startTime;
+        System.out.println();
 
-            final int predictedLabel = MinRt.doAi(data.payload, model);
+        System.out.println("Start testing with compiled program...");
+        int correct = 0, wrong = 0, mismatch = 0;
+        startTime = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            final SampleData data = samples.get(i);
+            final int predictedLabel = program.doAi(data.payload);
 
             final int actualLabel = data.label;
             final boolean isCorrect = (predictedLabel == actualLabel);
             if (isCorrect) correct++;
             else wrong++;
+            if (predictedLabel != scriptResults[i]) mismatch++;
 
-            count++;
-            if (count % 100 == 0) System.out.printf(
+            if ((i + 1) % 100 == 0) System.out.printf(
                     "\rItem: %d, label: %d, predicted: %d, correct: %s      ",
-                    count, actualLabel, predictedLabel, isCorrect
+                    i + 1, actualLabel, predictedLabel, isCorrect
             );
-            if (count >= 1_000) break;
         }
-        final long timeDiff = System.currentTimeMillis() - startTime;
+        final long programTime = System.currentTimeMillis() - startTime;
         System.out.println();
         System.out.printf("Test sample count: %d, Correct: %d Wrong: %d%n", count, correct, wrong);
         System.out.printf("Correct Rate: %.2f%n", (double) correct / (double) count * 100);
+        System.out.printf("Results differ from script: %d%n", mismatch);
 
-        System.out.printf("Time used: %f seconds.%n", timeDiff / 1000.0);
-        System.out.printf("Average: %f ms/i.%n", timeDiff / (double) count);
+        System.out.printf("Script: %f seconds, %f ms/i.%n", scriptTime / 1000.0, scriptTime / (double) count);
+        System.out.printf("Compiled: %f seconds, %f ms/i.%n", programTime / 1000.0, programTime / (double) count);
+        System.out.printf("Speedup: %.1fx%n", scriptTime / (double) Math.max(programTime, 1));
     }
 }
@@ -1,24 +1,27 @@
 package huzpsb.ll4j.samples;
 
 import com.shinonometn.utils.Formats;
-import huzpsb.ll4j.data.CsvLoader;
+import com.shinonometn.utils.Loaders;
 import huzpsb.ll4j.data.DataSet;
 import huzpsb.ll4j.layer.DenseLayer;
 import huzpsb.ll4j.layer.JudgeLayer;
 import huzpsb.ll4j.layer.LeakyRelu;
 import huzpsb.ll4j.model.Model;
+import huzpsb.ll4j.utils.NRandom;
 
+import java.io.IOException;
 import java.nio.file.Paths;
 
 public class TestTrain {
     private final static String ModelPath = "test3.model";
     private final static String LabeledDataPath = "fashion-mnist_train.csv";
+    private final static long ShuffleSeed = 42;
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         System.out.printf("Training data file : %s\n", Paths.get(LabeledDataPath).toAbsolutePath());
         System.out.printf("Model output file  : %s\n", Paths.get(ModelPath).toAbsolutePath());
 
-        DataSet trainingSet = CsvLoader.load(LabeledDataPath, 0);
+        DataSet trainingSet = Loaders.loadDataSet(LabeledDataPath, 0);
 
         Model model = new Model(
                 new DenseLayer(784, 100),
@@ -29,10 +32,13 @@ public class TestTrain {
                 new JudgeLayer(10) // MSELoss
         );
 
+        // Fixed seed, so the shuffled orders are the same on every run
+        final NRandom random = new NRandom(ShuffleSeed);
+
         final long start = System.currentTimeMillis();
         for (int i = 0; i < 128; i++) {
             final long roundStart = System.currentTimeMillis();
-            model.trainOn(trainingSet);
+            model.trainOn(trainingSet, random);
             final long roundEnd = System.currentTimeMillis();
             System.out.printf("Round %03d finished, time: %s ========%n", i + 1, Formats.millisDuration(roundEnd - roundStart));
             model.save(ModelPath);
@@ -25,6 +25,11 @@ public class Compiler {
                 case "D":
                     final int ic = Integer.parseInt(tokens[1]);
                     final int oc = Integer.parseInt(tokens[2]);
+                    // The biases are optional, after the weights
+                    final boolean bias = tokens.length - 3 == ic * oc + oc;
+                    if (!bias && tokens.length - 3 != ic * oc) {
+                        throw new RuntimeException("Wrong weight count for Dense layer (expected " + ic * oc + " or " + (ic * oc + oc) + " with biases, got " + (tokens.length - 3) + ")");
+                    }
                     sb.append("    double *l").append(layer).append(" = (double *) malloc(sizeof(double) * ").append(oc).append(");\n");
                     for (int i = 0; i < oc; i++) {
                         sb.append("    l").append(layer).append("[").append(i).append("] = ");
@@ -34,6 +39,9 @@ public class Compiler {
                                 sb.append(" + ");
                             }
                         }
+                        if (bias) {
+                            sb.append(" + ").append(tokens[3 + ic * oc + i]);
+                        }
                         sb.append(";\n");
                     }
                     break;
@@ -1,6 +1,7 @@
 // MinRt is a minimal runtime for LL4J deep learning framework
 // While MinRt is as small as possible, it is SLOW and INEFFICIENT.
 // Use MinRt only when you need to run LL4J models in a memory-constrained environment.
+// Use MinRt.compile to parse the script once, if the same model runs many times.
 // Copyright (c) 2024 huzpsb [admin<at>huzpsb<dot>eu<dot>org]
 // Licensed under the WTFPL license. You may remove this notice at will.
 
@@ -9,6 +10,100 @@ package huzpsb.ll4j.minrt;
 public final class MinRt {
     private MinRt() {}
 
+    // Parse the script once, and get a program that runs it without parsing on every call.
+    // Layers after the judge layer are ignored, doAi never reaches them either.
+    // A Dense line may end with the bias of each output, after the weights.
+    public static MinRtProgram compile(String[] script) {
+        int[] ops = new int[script.length * 4];
+        int opCount = 0;
+        int weightCount = 0;
+        String[][] lines = new String[script.length][];
+
+        // First pass, check the layers and count the weights
+        int current = -1;
+        boolean judged = false;
+        for (int l = 0; l < script.length && !judged; l++) {
+            String str = script[l];
+            if (str.length() < 2) {
+                continue;
+            }
+            String[] tokens = str.split(" ");
+            int ic = Integer.parseInt(tokens[1]);
+            int oc = ic;
+            int type;
+            switch (tokens[0]) {
+                case "D":
+                    oc = Integer.parseInt(tokens[2]);
+                    if (tokens.length - 3 == ic * oc) {
+                        type = MinRtProgram.OP_DENSE;
+                    } else if (tokens.length - 3 == ic * oc + oc) {
+                        type = MinRtProgram.OP_DENSE_BIAS;
+                    } else {
+                        throw new RuntimeException("Wrong weight count for Dense layer (expected " + ic * oc + " or " + (ic * oc + oc) + " with biases, got " + (tokens.length - 3) + ")");
+                    }
+                    lines[l] = tokens;
+                    break;
+                case "L":
+                    type = MinRtProgram.OP_LEAKY_RELU;
+                    break;
+                case "J":
+                    type = MinRtProgram.OP_JUDGE;
+                    judged = true;
+                    break;
+                default:
+                    throw new RuntimeException("Unknown layer type");
+            }
+            if (current >= 0 && current != ic) {
+                throw new RuntimeException("Wrong input size for layer " + tokens[0] + " (expected " + ic + ", got " + current + ")");
+            }
+            current = oc;
+
+            ops[opCount] = type;
+            ops[opCount + 1] = ic;
+            ops[opCount + 2] = oc;
+            ops[opCount + 3] = weightCount;
+            opCount += 4;
+            if (type == MinRtProgram.OP_DENSE) {
+                weightCount += ic * oc;
+            } else if (type == MinRtProgram.OP_DENSE_BIAS) {
+                weightCount += ic * oc + oc;
+            }
+        }
+        if (!judged) {
+            throw new RuntimeException("No output layer");
+        }
+
+        // Second pass, parse the weights, transposed so each output reads a contiguous row, then the biases
+        double[] weights = new double[weightCount];
+        int op = 0;
+        for (String[] tokens : lines) {
+            if (tokens == null) {
+                continue;
+            }
+            while (ops[op] != MinRtProgram.OP_DENSE && ops[op] != MinRtProgram.OP_DENSE_BIAS) {
+                op += 4;
+            }
+            int ic = ops[op + 1];
+            int oc = ops[op + 2];
+            int offset = ops[op + 3];
+            for (int iIdx = 0; iIdx < ic; iIdx++) {
+                for (int oIdx = 0; oIdx < oc; oIdx++) {
+                    weights[offset + oIdx * ic + iIdx] = Double.parseDouble(tokens[3 + oIdx + iIdx * oc]);
+                }
+            }
+            if (ops[op] == MinRtProgram.OP_DENSE_BIAS) {
+                for (int oIdx = 0; oIdx < oc; oIdx++) {
+                    weights[offset + ic * oc + oIdx] = Double.parseDouble(tokens[3 + ic * oc + oIdx]);
+                }
+            }
+            op += 4;
+        }
+
+        int[] program = new int[opCount];
+        System.arraycopy(ops, 0, program, 0, opCount);
+        return new MinRtProgram(program, weights, ops[1]);
+    }
+
     public static int doAi(double[] input, String[] script) {
         double[] current = new double[input.length];
         System.arraycopy(input, 0, current, 0, input.length);
@@ -25,12 +120,20 @@ public final class MinRt {
                     if (current.length != ic) {
                         throw new RuntimeException("Wrong input size for Dense layer (expected " + ic + ", got " + current.length + ")");
                     }
+                    // The biases are optional, after the weights
+                    boolean bias = tokens.length - 3 == ic * oc + oc;
+                    if (!bias && tokens.length - 3 != ic * oc) {
+                        throw new RuntimeException("Wrong weight count for Dense layer (expected " + ic * oc + " or " + (ic * oc + oc) + " with biases, got " + (tokens.length - 3) + ")");
+                    }
                     double[] tmp = new double[oc];
                     for (int oIdx = 0; oIdx < oc; oIdx++) {
                         double sum = 0;
                         for (int iIdx = 0; iIdx < ic; iIdx++) {
                             sum += current[iIdx] * Double.parseDouble(tokens[3 + oIdx + iIdx * oc]);
                         }
+                        if (bias) {
+                            sum += Double.parseDouble(tokens[3 + ic * oc + oIdx]);
+                        }
                         tmp[oIdx] = sum;
                     }
                     current = tmp;
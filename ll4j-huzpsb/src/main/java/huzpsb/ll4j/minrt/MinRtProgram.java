@@ -0,0 +1,76 @@
+// A MinRt script compiled by MinRt.compile.
+// The script is parsed once, weights are kept in one flat array, so doAi does no parsing at all.
+
+package huzpsb.ll4j.minrt;
+
+public final class MinRtProgram {
+    static final int OP_DENSE = 0;
+    static final int OP_LEAKY_RELU = 1;
+    static final int OP_JUDGE = 2;
+    static final int OP_DENSE_BIAS = 3;
+
+    // Each op is {type, input size, output size, weight offset}
+    private final int[] ops;
+    // Dense weights of all layers, output-major: w[offset + oIdx * ic + iIdx]
+    // A dense layer with bias has its biases right after its weights: w[offset + ic * oc + oIdx]
+    private final double[] weights;
+    private final int inputSize;
+
+    MinRtProgram(int[] ops, double[] weights, int inputSize) {
+        this.ops = ops;
+        this.weights = weights;
+        this.inputSize = inputSize;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public int doAi(double[] input) {
+        if (input.length != inputSize) {
+            throw new RuntimeException("Wrong input size (expected " + inputSize + ", got " + input.length + ")");
+        }
+        double[] current = new double[input.length];
+        System.arraycopy(input, 0, current, 0, input.length);
+
+        for (int op = 0; op < ops.length; op += 4) {
+            int ic = ops[op + 1];
+            int oc = ops[op + 2];
+            switch (ops[op]) {
+                case OP_DENSE:
+                case OP_DENSE_BIAS:
+                    int offset = ops[op + 3];
+                    double[] tmp = new double[oc];
+                    for (int oIdx = 0; oIdx < oc; oIdx++) {
+                        int row = offset + oIdx * ic;
+                        double sum = 0;
+                        for (int iIdx = 0; iIdx < ic; iIdx++) {
+                            sum += current[iIdx] * weights[row + iIdx];
+                        }
+                        if (ops[op] == OP_DENSE_BIAS) {
+                            sum += weights[offset + ic * oc + oIdx];
+                        }
+                        tmp[oIdx] = sum;
+                    }
+                    current = tmp;
+                    break;
+                case OP_LEAKY_RELU:
+                    for (int i = 0; i < ic; i++) {
+                        current[i] = current[i] > 0 ? current[i] : current[i] * 0.01;
+                    }
+                    break;
+                case OP_JUDGE:
+                    int idx = 0;
+                    for (int i = 1; i < ic; i++) {
+                        if (current[i] > current[idx]) {
+                            idx = i;
+                        }
+                    }
+                    return idx;
+                default:
+                    throw new RuntimeException("Unknown layer type");
+            }
+        }
+        throw new RuntimeException("No output layer");
+    }
+}
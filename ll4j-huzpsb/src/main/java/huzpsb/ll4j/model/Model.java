@@ -4,8 +4,11 @@ import huzpsb.ll4j.data.DataEntry;
 import huzpsb.ll4j.data.DataSet;
 import huzpsb.ll4j.layer.AbstractLayer;
 import huzpsb.ll4j.layer.JudgeLayer;
+import huzpsb.ll4j.utils.NRandom;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Model {
     public final AbstractLayer[] layers;
@@ -15,13 +18,30 @@ public class Model {
     }
 
     public void trainOn(DataSet dataSet) {
+        trainOn(dataSet.split);
+    }
+
+    /**
+     * Train on the entries in a random order, a Fisher-Yates shuffle with the random source.
+     * The entries are not copied, and the data set keeps its order.
+     */
+    public void trainOn(DataSet dataSet, NRandom random) {
+        List<DataEntry> shuffled = new ArrayList<>(dataSet.split);
+        for (int i = shuffled.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            shuffled.set(j, shuffled.set(i, shuffled.get(j)));
+        }
+        trainOn(shuffled);
+    }
+
+    private void trainOn(List<DataEntry> entries) {
         int t = 0, f = 0;
         if (!(layers[layers.length - 1] instanceof JudgeLayer)) {
             throw new RuntimeException("Last layer is not output layer");
         }
         final JudgeLayer judgeLayer = (JudgeLayer) layers[layers.length - 1];
 
-        for (DataEntry dataEntry : dataSet.split) {
+        for (DataEntry dataEntry : entries) {
             layers[0].input = dataEntry.values;
 
             // Catten Linger:
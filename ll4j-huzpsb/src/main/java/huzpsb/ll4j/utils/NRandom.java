@@ -25,6 +25,23 @@ public class NRandom {
         return nextGaussian() * std + mean;
     }
 
+    public int nextInt() {
+        return next(32);
+    }
+
+    /** Uniform int in [0, bound) */
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("Bound must be positive, got " + bound);
+        if ((bound & -bound) == bound) return (int) ((bound * (long) next(31)) >> 31);
+
+        int bits, value;
+        do {
+            bits = next(31);
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
     private int next(int bits) {
         seed = (seed * 0x5DEECE66DL + 0xBL) & (1L << 48) - 1;
         return (int) (seed >>> (48 - bits));
@@ -22,6 +22,9 @@ dependencies {
 
     // This dependency is used internally, and not exposed to consumers on their own compile classpath.
     implementation(libs.guava)
+
+    // MinRt reads the same text format, the tests check it against the runtime
+    testImplementation(project(":ll4j-huzpsb"))
 }
 
 testing {
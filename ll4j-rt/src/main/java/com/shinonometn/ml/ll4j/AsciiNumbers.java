@@ -0,0 +1,144 @@
+package com.shinonometn.ml.ll4j;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parse numbers straight from ASCII bytes, without creating Strings.
+ */
+final class AsciiNumbers {
+    private AsciiNumbers() {
+    }
+
+    /** Exact powers of ten, the largest power of ten that a double can represent exactly is 10^22 */
+    static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+            1e21, 1e22
+    };
+
+    /** Mantissa up to 2^53 is exact in a double */
+    static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Parse a decimal number in [from, to).
+     * <p>
+     * Numbers with an exact mantissa (at most 2^53) and a small decimal exponent, like "0.2431372549",
+     * are computed with one correctly rounded multiplication or division, so the result is the same as
+     * {@link Double#parseDouble(String)}. Anything else falls back to it.
+     *
+     * @throws NumberFormatException if it is not a number
+     */
+    static double parseDouble(final byte[] bytes, final int from, final int to) {
+        int pos = from;
+        if (pos >= to) throw new NumberFormatException("Empty number");
+
+        boolean negative = false;
+        if (bytes[pos] == '-' || bytes[pos] == '+') {
+            negative = bytes[pos] == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;      // Significant digits in mantissa
+        int exponent = 0;    // Decimal exponent of mantissa
+        boolean seenDigit = false;
+
+        // Integer part
+        for (; pos < to; pos++) {
+            final int d = bytes[pos] - '0';
+            if (d < 0 || d > 9) break;
+            seenDigit = true;
+            if (digits > 0 || d != 0) {
+                if (digits >= 18) return fallback(bytes, from, to);
+                mantissa = mantissa * 10 + d;
+                digits++;
+            }
+        }
+
+        // Fraction part
+        if (pos < to && bytes[pos] == '.') {
+            pos++;
+            for (; pos < to; pos++) {
+                final int d = bytes[pos] - '0';
+                if (d < 0 || d > 9) break;
+                seenDigit = true;
+                if (digits > 0 || d != 0) {
+                    if (digits >= 18) return fallback(bytes, from, to);
+                    mantissa = mantissa * 10 + d;
+                    digits++;
+                }
+                exponent--;
+            }
+        }
+
+        if (!seenDigit) return fallback(bytes, from, to);
+
+        // Exponent part
+        if (pos < to && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < to && (bytes[pos] == '-' || bytes[pos] == '+')) {
+                negativeExponent = bytes[pos] == '-';
+                pos++;
+            }
+            if (pos >= to) return fallback(bytes, from, to);
+
+            int value = 0;
+            for (; pos < to; pos++) {
+                final int d = bytes[pos] - '0';
+                if (d < 0 || d > 9) return fallback(bytes, from, to);
+                if (value > 10_000) return fallback(bytes, from, to);
+                value = value * 10 + d;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        // Something unexpected, such as "NaN" or a typo
+        if (pos != to) return fallback(bytes, from, to);
+
+        if (mantissa == 0) return negative ? -0.0 : 0.0;
+        if (mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) return fallback(bytes, from, to);
+
+        final double value = (exponent < 0)
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a decimal integer in [from, to)
+     *
+     * @throws NumberFormatException if it is not an integer
+     */
+    static int parseInt(final byte[] bytes, final int from, final int to) {
+        int pos = from;
+        if (pos >= to) throw new NumberFormatException("Empty number");
+
+        boolean negative = false;
+        if (bytes[pos] == '-' || bytes[pos] == '+') {
+            negative = bytes[pos] == '-';
+            pos++;
+            if (pos >= to) throw new NumberFormatException(asString(bytes, from, to));
+        }
+
+        long value = 0;
+        for (; pos < to; pos++) {
+            final int d = bytes[pos] - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("For input string: \"" + asString(bytes, from, to) + "\"");
+            value = value * 10 + d;
+            if (value > Integer.MAX_VALUE + 1L) throw new NumberFormatException("Out of range: " + asString(bytes, from, to));
+        }
+
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw new NumberFormatException("Out of range: " + asString(bytes, from, to));
+        return (int) value;
+    }
+
+    static String asString(final byte[] bytes, final int from, final int to) {
+        return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private static double fallback(final byte[] bytes, final int from, final int to) {
+        return Double.parseDouble(asString(bytes, from, to));
+    }
+}
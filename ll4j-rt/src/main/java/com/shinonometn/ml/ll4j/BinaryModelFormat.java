@@ -0,0 +1,333 @@
+package com.shinonometn.ml.ll4j;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+
+/**
+ * Versioned binary model format.
+ * <p>
+ * All numbers are little-endian.
+ * <pre>
+ * Header, 16 bytes
+ *   magic       4 bytes, "LL4J"
+ *   version     int32
+ *   count       int32, layer count
+ *   reserved    int32
+ *
+ * Layer header, 16 bytes, for each layer
+ *   type        1 byte, the layer type character ('D', 'Q', 'L', 'J')
+ *   precision   1 byte, data type code of the weight block (see {@link Precision}), 0 if no weights
+ *   flags       1 byte, bit 0 set if the layer has a bias for each output (version 2)
+ *   reserved    1 byte
+ *   input       int32, input size
+ *   output      int32, output size
+ *   length      int32, element count of the weight block
+ *
+ * Weight block, follows the layer header
+ *   length * precision size bytes, padded with zeros to a multiple of 8 bytes.
+ *   Dense weights are output-major, same as in memory, so no transpose is needed while loading.
+ *   Biases follow the weights, and are counted in length.
+ *
+ * Quantized dense layers ('Q')
+ *   The precision is the one of the scales, and length is the count of int8 weights.
+ *   The block is output + 1 scales (see {@link Layers#TYPE_QUANTIZED_DENSE}) and the biases if any,
+ *   then the int8 weights, output-major, padded with zeros to a multiple of 8 bytes as a whole.
+ * </pre>
+ * Models without bias are written as version 1, so readers that predate the flags can load them.
+ * Models are loaded through a memory-mapped buffer, and the weight blocks are bulk-copied from the page cache.
+ */
+public final class BinaryModelFormat {
+    private BinaryModelFormat() {
+    }
+
+    /** "LL4J" in little-endian */
+    static final int MAGIC = 0x4A344C4C;
+
+    public static final int VERSION = 2;
+
+    private static final int LAYER_HEADER_SIZE = 16;
+
+    /** Layer flag, the layer has a bias for each output */
+    static final int FLAG_BIAS = 1;
+
+    //================================================================
+
+    /**
+     * Check if a file starts with the binary model magic
+     */
+    public static boolean isBinaryModel(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) return false;
+            }
+            buffer.flip();
+            return buffer.getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Load a binary model file through a memory-mapped buffer
+     */
+    public static Model load(final Path path) throws IOException, MinRtException {
+        return load(path, Precision.Float64);
+    }
+
+    /**
+     * Load a binary model file, the model runs in the given precision whatever precision the file is stored in
+     */
+    public static Model load(final Path path, final Precision precision) throws IOException, MinRtException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new ModelFormatException("Model file is too large: " + size + " bytes");
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), precision);
+        }
+    }
+
+    /**
+     * Read a model from a buffer, from its position to its limit
+     */
+    public static Model read(final ByteBuffer source) throws MinRtException {
+        return read(source, Precision.Float64);
+    }
+
+    /**
+     * Read a model from a buffer, the model runs in the given precision
+     */
+    public static Model read(final ByteBuffer source, final Precision modelPrecision) throws MinRtException {
+        final ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC) throw new ModelFormatException("Not a binary model, wrong magic");
+
+            final int version = buffer.getInt();
+            if (version < 1 || version > VERSION) throw new ModelFormatException(String.format(
+                    "Unsupported model version %d, expected 1 to %d", version, VERSION
+            ));
+
+            final int count = buffer.getInt();
+            buffer.getInt(); // reserved
+
+            final LinkedList<Layer> layers = new LinkedList<>();
+            for (int i = 0; i < count; i++) {
+                final String type = String.valueOf((char) (buffer.get() & 0xFF));
+                final int code = buffer.get() & 0xFF;
+                final int flags = buffer.get() & 0xFF;
+                buffer.get(); // reserved
+                final int inputCount = buffer.getInt();
+                final int outputCount = buffer.getInt();
+                final int length = buffer.getInt();
+                if (inputCount < 0 || outputCount < 0 || length < 0) throw new ModelFormatException(String.format(
+                        "Negative size in the header of layer %s@%02d", type, layers.size()
+                ));
+
+                Model.checkInputSize(layers, type, inputCount);
+
+                final boolean quantized = Layers.TYPE_QUANTIZED_DENSE.equals(type);
+                final int biasCount = ((flags & FLAG_BIAS) != 0) ? outputCount : 0;
+                final Precision precision = Precision.ofCode(code);
+                if ((length > 0 || quantized) && precision == null) throw new ModelFormatException(String.format(
+                        "Unknown precision 0x%02x for layer %s@%02d", code, type, layers.size()
+                ));
+                // In long, so huge counts are reported as truncated data instead of overflowing
+                final long blockSize;
+                if (quantized) {
+                    blockSize = padded(((long) outputCount + 1 + biasCount) * precision.size + length);
+                } else {
+                    blockSize = (length == 0) ? 0 : padded((long) length * precision.size);
+                }
+                final int blockStart = buffer.position();
+                if (buffer.remaining() < blockSize) throw new BufferUnderflowException();
+
+                switch (type) {
+                    case Layers.TYPE_DENSE: {
+                        if (length != (long) inputCount * outputCount + biasCount) throw new ModelFormatException(String.format(
+                                "Size of the weight block is not equals to the capacity. (%d * %d + %d != %d)",
+                                inputCount, outputCount, biasCount, length
+                        ));
+                        if (modelPrecision == Precision.Float32) {
+                            final float[] data = readFloatWeights(buffer, precision, length);
+                            layers.add(Layers.denseOutputMajor(inputCount, outputCount, data, ForwardFunction.Dense));
+                        } else {
+                            final double[] data = readWeights(buffer, precision, length);
+                            layers.add(Layers.denseOutputMajor(inputCount, outputCount, data, ForwardFunction.Dense));
+                        }
+                        break;
+                    }
+
+                    case Layers.TYPE_QUANTIZED_DENSE: {
+                        if (length != (long) inputCount * outputCount) throw new ModelFormatException(String.format(
+                                "Size of the weight block is not equals to the capacity. (%d * %d != %d)",
+                                inputCount, outputCount, length
+                        ));
+                        final double[] scales = readWeights(buffer, precision, outputCount + 1 + biasCount);
+                        final byte[] data = new byte[length];
+                        buffer.position(blockStart + scales.length * precision.size);
+                        buffer.get(data);
+                        layers.add(Layers.quantizedDenseOutputMajor(inputCount, outputCount, data, scales)
+                                .withPrecision(modelPrecision));
+                        break;
+                    }
+
+                    case Layers.TYPE_LEAKY_RELU: {
+                        layers.add(Layers.leakyRelu(inputCount).withPrecision(modelPrecision));
+                        break;
+                    }
+
+                    case Layers.TYPE_JUDGE: {
+                        layers.add(Layers.judge(inputCount).withPrecision(modelPrecision));
+                        break;
+                    }
+
+                    default: {
+                        throw new UnsupportedLayerTypeException(type);
+                    }
+                }
+
+                // Move to the next layer header
+                buffer.position(blockStart + (int) blockSize);
+            }
+
+            return new Model(layers.toArray(new Layer[0]));
+        } catch (BufferUnderflowException e) {
+            throw new ModelFormatException("Unexpected end of model data");
+        }
+    }
+
+    /**
+     * Save a model in double precision
+     */
+    public static void write(final Model model, final Path path) throws IOException {
+        write(model, path, Precision.Float64);
+    }
+
+    /**
+     * Save a model with the given weight precision
+     */
+    public static void write(final Model model, final Path path, final Precision precision) throws IOException {
+        try (final FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+        )) {
+            write(model, channel, precision);
+        }
+    }
+
+    public static void write(final Model model, final WritableByteChannel channel, final Precision precision) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        boolean hasBias = false;
+        for (final Layer layer : model.layers) hasBias |= layer.hasBias();
+        buffer.putInt(MAGIC).putInt(hasBias ? VERSION : 1).putInt(model.layers.length).putInt(0);
+
+        for (final Layer layer : model.layers) {
+            if (layer.type.length() != 1) throw new IllegalArgumentException("Unsupported layer type: " + layer.type);
+
+            final int length = layer.getWeightCount();
+            // Quantized layers store their scales and biases in the given precision, then the int8 weights
+            final int scaleCount = (layer.floatData == null) ? layer.data.length : layer.floatData.length;
+            final int valueCount = layer.isQuantized() ? scaleCount : length;
+
+            ensureRemaining(channel, buffer, LAYER_HEADER_SIZE);
+            buffer.put((byte) layer.type.charAt(0))
+                    .put((byte) (valueCount == 0 ? 0 : precision.code))
+                    .put((byte) (layer.hasBias() ? FLAG_BIAS : 0))
+                    .put((byte) 0)
+                    .putInt(layer.getInputSize())
+                    .putInt(layer.getOutputSize())
+                    .putInt(length);
+
+            if (valueCount == 0) continue;
+
+            for (int i = 0; i < valueCount; i++) {
+                final double value = (layer.floatData == null) ? layer.data[i] : layer.floatData[i];
+                ensureRemaining(channel, buffer, precision.size);
+                if (precision == Precision.Float64) {
+                    buffer.putDouble(value);
+                } else {
+                    buffer.putFloat((float) value);
+                }
+            }
+
+            int blockSize = valueCount * precision.size;
+            if (layer.isQuantized()) {
+                for (int from = 0; from < length; from += buffer.capacity()) {
+                    final int size = Math.min(buffer.capacity(), length - from);
+                    ensureRemaining(channel, buffer, size);
+                    buffer.put(layer.quantized, from, size);
+                }
+                blockSize += length;
+            }
+
+            final int padding = padded(blockSize) - blockSize;
+            ensureRemaining(channel, buffer, padding);
+            for (int i = 0; i < padding; i++) buffer.put((byte) 0);
+        }
+
+        flush(channel, buffer);
+    }
+
+    /**
+     * Convert a text model file to the binary format
+     */
+    public static void convertTextModel(final Path textModel, final Path binaryModel, final Precision precision)
+            throws IOException, MinRtException {
+        final Model model;
+        try (final FileChannel channel = FileChannel.open(textModel, StandardOpenOption.READ)) {
+            model = Model.parse(channel);
+        }
+        write(model, binaryModel, precision);
+    }
+
+    //================================================================
+
+    private static double[] readWeights(final ByteBuffer buffer, final Precision precision, final int length) {
+        final double[] data = new double[length];
+        if (precision == Precision.Float64) {
+            final DoubleBuffer doubles = buffer.asDoubleBuffer();
+            doubles.get(data);
+        } else {
+            final FloatBuffer floats = buffer.asFloatBuffer();
+            for (int i = 0; i < length; i++) data[i] = floats.get(i);
+        }
+        return data;
+    }
+
+    private static float[] readFloatWeights(final ByteBuffer buffer, final Precision precision, final int length) {
+        final float[] data = new float[length];
+        if (precision == Precision.Float32) {
+            final FloatBuffer floats = buffer.asFloatBuffer();
+            floats.get(data);
+        } else {
+            final DoubleBuffer doubles = buffer.asDoubleBuffer();
+            for (int i = 0; i < length; i++) data[i] = (float) doubles.get(i);
+        }
+        return data;
+    }
+
+    private static int padded(final int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static long padded(final long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static void ensureRemaining(final WritableByteChannel channel, final ByteBuffer buffer, final int size) throws IOException {
+        if (buffer.remaining() < size) flush(channel, buffer);
+    }
+
+    private static void flush(final WritableByteChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,73 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Execution policy decides how a kernel runs over an index range:
+ * on the caller thread, split into chunks on a fork-join pool, or on a pool supplied by the caller.
+ */
+@FunctionalInterface
+public interface ExecutionPolicy {
+
+    /**
+     * Run a task over [0, size)
+     *
+     * @param size count of indexes
+     * @param cost approximate work of a single index, in multiply-adds
+     * @param task the task, will be called with disjoint ranges covering [0, size)
+     */
+    void execute(final int size, final int cost, final RangeTask task);
+
+    @FunctionalInterface
+    interface RangeTask {
+        /**
+         * Process indexes in [from, to)
+         */
+        void apply(final int from, final int to);
+    }
+
+    /**
+     * Clamp the work of an index to an int cost, large batches can have more than Integer.MAX_VALUE multiply-adds
+     */
+    static int cost(final long work) {
+        return (int) Math.min(Integer.MAX_VALUE, work);
+    }
+
+    //================================================================
+
+    /**
+     * Work below this many multiply-adds is not worth a fork-join dispatch
+     */
+    int DefaultThreshold = 32 * 1024;
+
+    /**
+     * Always run on the caller thread
+     */
+    ExecutionPolicy Sequential = (size, cost, task) -> task.apply(0, size);
+
+    /**
+     * Run small jobs on the caller thread. Larger jobs are split into chunks and run on
+     * the pool of the current fork-join worker thread, or on the common pool otherwise.
+     */
+    ExecutionPolicy Adaptive = adaptive(DefaultThreshold);
+
+    /**
+     * Same as {@link #Adaptive}, with a custom work threshold
+     */
+    static ExecutionPolicy adaptive(final int threshold) {
+        return new ForkJoinExecution(null, threshold);
+    }
+
+    /**
+     * Run large jobs on the given pool, so they don't compete with the common pool.
+     * Small jobs still run on the caller thread.
+     */
+    static ExecutionPolicy pinned(final ForkJoinPool pool) {
+        return pinned(pool, DefaultThreshold);
+    }
+
+    static ExecutionPolicy pinned(final ForkJoinPool pool, final int threshold) {
+        if (pool == null) throw new IllegalArgumentException("pool cannot be null");
+        return new ForkJoinExecution(pool, threshold);
+    }
+}
@@ -0,0 +1,84 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Chunked fork-join execution, see {@link ExecutionPolicy#adaptive(int)} and {@link ExecutionPolicy#pinned(ForkJoinPool)}
+ */
+final class ForkJoinExecution implements ExecutionPolicy {
+    /** Target pool, null means the pool of current context */
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    ForkJoinExecution(final ForkJoinPool pool, final int threshold) {
+        if (threshold <= 0) throw new IllegalArgumentException("threshold should be positive");
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void execute(final int size, final int cost, final RangeTask task) {
+        final long work = (long) size * Math.max(cost, 1);
+        if (size <= 1 || work <= threshold) {
+            task.apply(0, size);
+            return;
+        }
+
+        // Each chunk should do about `threshold` work
+        final int grain = Math.max(1, threshold / Math.max(cost, 1));
+        final Chunk chunk = new Chunk(task, 0, size, grain);
+
+        final Thread current = Thread.currentThread();
+        final ForkJoinPool currentPool = (current instanceof ForkJoinWorkerThread)
+                ? ((ForkJoinWorkerThread) current).getPool()
+                : null;
+
+        if (pool == null) {
+            if (currentPool != null) {
+                // Already inside a fork-join job, split it into the same pool
+                chunk.invoke();
+            } else if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+                ForkJoinPool.commonPool().invoke(chunk);
+            } else {
+                task.apply(0, size);
+            }
+            return;
+        }
+
+        if (currentPool == pool) {
+            chunk.invoke();
+        } else {
+            pool.invoke(chunk);
+        }
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        private final RangeTask task;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        Chunk(final RangeTask task, final int from, final int to, final int grain) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.apply(from, to);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            ForkJoinTask.invokeAll(
+                    new Chunk(task, from, middle, grain),
+                    new Chunk(task, middle, to, grain)
+            );
+        }
+    }
+}
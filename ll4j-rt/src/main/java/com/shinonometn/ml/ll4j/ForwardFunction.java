@@ -1,7 +1,5 @@
 package com.shinonometn.ml.ll4j;
 
-import java.util.stream.IntStream;
-
 public interface ForwardFunction {
     /**
      * Apply the function
@@ -12,74 +10,529 @@ public interface ForwardFunction {
      */
     void apply(final double[] input, final double[] weights, final double[] output);
 
+    /**
+     * Apply the function to a batch of samples.
+     * <p>
+     * Samples are stored row-major in flat arrays, the arrays may be larger than needed.
+     * The default implementation calls {@link #apply(double[], double[], double[])} on each sample.
+     *
+     * @param input      Input array, [batchSize][inputSize]
+     * @param inputSize  Size of each input sample
+     * @param weights    Weights array
+     * @param output     Output array, [batchSize][outputSize]
+     * @param outputSize Size of each output sample
+     * @param batchSize  Sample count
+     */
+    default void applyBatch(
+            final double[] input, final int inputSize,
+            final double[] weights,
+            final double[] output, final int outputSize,
+            final int batchSize
+    ) {
+        final double[] sampleInput = new double[inputSize];
+        final double[] sampleOutput = new double[outputSize];
+        for (int idxS = 0; idxS < batchSize; idxS++) {
+            System.arraycopy(input, idxS * inputSize, sampleInput, 0, inputSize);
+            apply(sampleInput, weights, sampleOutput);
+            System.arraycopy(sampleOutput, 0, output, idxS * outputSize, outputSize);
+        }
+    }
+
+    /**
+     * Apply the function to a batch of samples in single precision, for {@link Precision#Float32} layers.
+     * <p>
+     * The default implementation widens everything to double and calls
+     * {@link #applyBatch(double[], int, double[], double[], int, int)}, built-in functions override it.
+     */
+    default void applyBatch(
+            final float[] input, final int inputSize,
+            final float[] weights,
+            final float[] output, final int outputSize,
+            final int batchSize
+    ) {
+        final double[] wideInput = new double[inputSize * batchSize];
+        for (int i = 0; i < wideInput.length; i++) wideInput[i] = input[i];
+        final double[] wideWeights = new double[weights.length];
+        for (int i = 0; i < wideWeights.length; i++) wideWeights[i] = weights[i];
+        final double[] wideOutput = new double[outputSize * batchSize];
+
+        applyBatch(wideInput, inputSize, wideWeights, wideOutput, outputSize, batchSize);
+        for (int i = 0; i < wideOutput.length; i++) output[i] = (float) wideOutput[i];
+    }
+
+    /**
+     * Get a kernel doing this function and then {@link #LeakyRelu} on its output in one pass,
+     * or null if there is none. The built-in dense kernels have one, models use it in place of a dense layer
+     * and the LeakyRelu layer after it, see {@link Model}.
+     */
+    default ForwardFunction fuseLeakyRelu() {
+        return null;
+    }
+
     //================================================================
 
     /**
      * A dense layer do the following operation:
-     * output[j] = sum(input[i] * weights[i][j]) for i in [0, inputSize)
-     * where weights is a 2D array with shape [inputSize, outputSize]
+     * output[j] = sum(input[i] * weights[j][i]) for i in [0, inputSize)
+     * where weights is a 2D array with shape [outputSize, inputSize] (output-major),
      * but here we use a 1D array to represent it, so the index is calculated as:
-     * weights[i][j] = weights[i * outputSize + j]
+     * weights[j][i] = weights[j * inputSize + i]
+     * <p>
+     * If the weights array is longer than inputSize * outputSize, the bias of each output follows the weights
+     * and is added to its sum, see {@link Layers#denseWithBias(int, int)}.
+     * <p>
+     * Each output reads a contiguous row of weights. Outputs are computed in blocks of four,
+     * so one input value is loaded once for the whole block and the partial sums stay in registers.
+     * In batch mode the same block of weight rows is applied to every sample before moving on,
+     * so the rows are loaded from memory once per batch.
+     * <p>
+     * The kernel comes from {@link Kernels#current()}, this is the scalar one.
      */
-    ForwardFunction Dense = new ForwardFunction() {
-        @Override
-        public void apply(double[] input, double[] weights, double[] output) {
-            final int inputSize = input.length;
-            final int outputSize = output.length;
+    ForwardFunction Dense = dense(ExecutionPolicy.Adaptive);
 
-            IntStream.range(0, outputSize).parallel().forEach(idxO -> forEachOutput(
-                    idxO, inputSize, outputSize, input, weights, output
-            ));
-        }
+    /**
+     * Create a dense function that runs with the given execution policy
+     */
+    static ForwardFunction dense(final ExecutionPolicy policy) {
+        return Kernels.current().forwardDense(policy);
+    }
 
-        private void forEachOutput(
-                final int idxO,
-                final int iSize, final int oSize,
-                final double[] input, final double[] weights,
-                final double[] output
-        ) {
-            double sum = 0;
-            for (int idxI = 0; idxI < iSize; idxI++) {
-                sum += input[idxI] * weights[(idxI * oSize) + idxO];
+    /**
+     * Create the scalar dense function, see {@link #Dense}
+     */
+    static ForwardFunction scalarDense(final ExecutionPolicy policy) {
+        return scalarDense(policy, false);
+    }
+
+    /**
+     * Create the scalar dense function, with LeakyRelu applied to each sum before it is stored if fused
+     */
+    static ForwardFunction scalarDense(final ExecutionPolicy policy, final boolean leakyRelu) {
+        return new ForwardFunction() {
+            @Override
+            public ForwardFunction fuseLeakyRelu() {
+                return leakyRelu ? null : scalarDense(policy, true);
             }
-            output[idxO] = sum;
-        }
-    };
+
+            @Override
+            public void apply(double[] input, double[] weights, double[] output) {
+                applyBatch(input, input.length, weights, output, output.length, 1);
+            }
+
+            @Override
+            public void applyBatch(
+                    double[] input, int inputSize,
+                    double[] weights,
+                    double[] output, int outputSize,
+                    int batchSize
+            ) {
+                final int blockCount = (outputSize + 3) / 4;
+                final int bias = biasOffset(weights.length, inputSize, outputSize);
+
+                policy.execute(blockCount, ExecutionPolicy.cost(4L * inputSize * batchSize), (from, to) -> {
+                    for (int idxB = from; idxB < to; idxB++) forEachBlock(
+                            idxB, inputSize, outputSize, batchSize, input, weights, bias, output
+                    );
+                });
+            }
+
+            private void forEachBlock(
+                    final int idxB,
+                    final int iSize, final int oSize, final int bSize,
+                    final double[] input, final double[] weights, final int bias,
+                    final double[] output
+            ) {
+                final int idxO = idxB * 4;
+
+                // Tail block, not enough rows to fill the registers
+                if (idxO + 4 > oSize) {
+                    for (int o = idxO; o < oSize; o++) {
+                        final int row = o * iSize;
+                        for (int idxS = 0; idxS < bSize; idxS++) {
+                            final int in = idxS * iSize;
+                            double sum = 0;
+                            for (int idxI = 0; idxI < iSize; idxI++) {
+                                sum += input[in + idxI] * weights[row + idxI];
+                            }
+                            output[idxS * oSize + o] = finish(sum, weights, bias, o);
+                        }
+                    }
+                    return;
+                }
+
+                final int row0 = idxO * iSize;
+                final int row1 = row0 + iSize;
+                final int row2 = row1 + iSize;
+                final int row3 = row2 + iSize;
+
+                // The four rows stay in cache while they are applied to every sample
+                for (int idxS = 0; idxS < bSize; idxS++) {
+                    final int in = idxS * iSize;
+
+                    double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+                    for (int idxI = 0; idxI < iSize; idxI++) {
+                        final double value = input[in + idxI];
+                        sum0 += value * weights[row0 + idxI];
+                        sum1 += value * weights[row1 + idxI];
+                        sum2 += value * weights[row2 + idxI];
+                        sum3 += value * weights[row3 + idxI];
+                    }
+
+                    final int out = idxS * oSize + idxO;
+                    output[out] = finish(sum0, weights, bias, idxO);
+                    output[out + 1] = finish(sum1, weights, bias, idxO + 1);
+                    output[out + 2] = finish(sum2, weights, bias, idxO + 2);
+                    output[out + 3] = finish(sum3, weights, bias, idxO + 3);
+                }
+            }
+
+            /* Add the bias of an output if the layer has one, then the fused activation */
+            private double finish(final double sum, final double[] weights, final int bias, final int o) {
+                final double v = (bias < 0) ? sum : sum + weights[bias + o];
+                if (!leakyRelu || v > 0) return v;
+                return (v < 0) ? v * 0.01 : Double.MIN_NORMAL;
+            }
+
+            /* Same kernel in single precision, the sums are float too */
+            @Override
+            public void applyBatch(
+                    float[] input, int inputSize,
+                    float[] weights,
+                    float[] output, int outputSize,
+                    int batchSize
+            ) {
+                final int blockCount = (outputSize + 3) / 4;
+                final int bias = biasOffset(weights.length, inputSize, outputSize);
+
+                policy.execute(blockCount, ExecutionPolicy.cost(4L * inputSize * batchSize), (from, to) -> {
+                    for (int idxB = from; idxB < to; idxB++) forEachBlock(
+                            idxB, inputSize, outputSize, batchSize, input, weights, bias, output
+                    );
+                });
+            }
+
+            private void forEachBlock(
+                    final int idxB,
+                    final int iSize, final int oSize, final int bSize,
+                    final float[] input, final float[] weights, final int bias,
+                    final float[] output
+            ) {
+                final int idxO = idxB * 4;
+
+                if (idxO + 4 > oSize) {
+                    for (int o = idxO; o < oSize; o++) {
+                        final int row = o * iSize;
+                        for (int idxS = 0; idxS < bSize; idxS++) {
+                            final int in = idxS * iSize;
+                            float sum = 0;
+                            for (int idxI = 0; idxI < iSize; idxI++) {
+                                sum += input[in + idxI] * weights[row + idxI];
+                            }
+                            output[idxS * oSize + o] = finish(sum, weights, bias, o);
+                        }
+                    }
+                    return;
+                }
+
+                final int row0 = idxO * iSize;
+                final int row1 = row0 + iSize;
+                final int row2 = row1 + iSize;
+                final int row3 = row2 + iSize;
+
+                for (int idxS = 0; idxS < bSize; idxS++) {
+                    final int in = idxS * iSize;
+
+                    float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+                    for (int idxI = 0; idxI < iSize; idxI++) {
+                        final float value = input[in + idxI];
+                        sum0 += value * weights[row0 + idxI];
+                        sum1 += value * weights[row1 + idxI];
+                        sum2 += value * weights[row2 + idxI];
+                        sum3 += value * weights[row3 + idxI];
+                    }
+
+                    final int out = idxS * oSize + idxO;
+                    output[out] = finish(sum0, weights, bias, idxO);
+                    output[out + 1] = finish(sum1, weights, bias, idxO + 1);
+                    output[out + 2] = finish(sum2, weights, bias, idxO + 2);
+                    output[out + 3] = finish(sum3, weights, bias, idxO + 3);
+                }
+            }
+
+            private float finish(final float sum, final float[] weights, final int bias, final int o) {
+                final float v = (bias < 0) ? sum : sum + weights[bias + o];
+                if (!leakyRelu || v > 0) return v;
+                return (v < 0) ? v * 0.01f : Float.MIN_NORMAL;
+            }
+        };
+    }
+
+    /**
+     * Offset of the biases in the weights of a dense layer, -1 if the layer has none.
+     * See {@link Layers#denseWithBias(int, int)} for the layout.
+     */
+    static int biasOffset(final int weightCount, final int inputSize, final int outputSize) {
+        final int offset = inputSize * outputSize;
+        return (weightCount > offset) ? offset : -1;
+    }
+
+    //================================================================
+
+    /**
+     * A quantized dense layer does the same operation as {@link #Dense}, with int8 weights.
+     * <p>
+     * The input is quantized to int8 with the input scale found by calibration, the products are
+     * summed in int, and each sum is scaled back once: output[j] = sum[j] * inputScale * scale[j] (+ bias[j]).
+     * The weights array given to the function holds the scales, see {@link Layers#TYPE_QUANTIZED_DENSE},
+     * the int8 weights are bound to the function.
+     * <p>
+     * Blocks of four weight rows are widened to int once and applied to every sample of the batch,
+     * the int loops are vectorized by the JIT while mixed byte and int loops are not.
+     * Each call allocates the quantized input, the sums and the widened rows.
+     */
+    static ForwardFunction quantizedDense(final byte[] weights) {
+        return quantizedDense(weights, ExecutionPolicy.Adaptive);
+    }
+
+    /**
+     * Create a quantized dense function that runs with the given execution policy
+     */
+    static ForwardFunction quantizedDense(final byte[] weights, final ExecutionPolicy policy) {
+        return new ForwardFunction() {
+            @Override
+            public void apply(double[] input, double[] scales, double[] output) {
+                applyBatch(input, input.length, scales, output, output.length, 1);
+            }
+
+            @Override
+            public void applyBatch(
+                    double[] input, int inputSize,
+                    double[] scales,
+                    double[] output, int outputSize,
+                    int batchSize
+            ) {
+                final double inputScale = scales[outputSize];
+                final double reciprocal = 1 / inputScale;
+                final int[] values = new int[inputSize * batchSize];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (int) Math.max(-127, Math.min(127, Math.round(input[i] * reciprocal)));
+                }
+
+                final int[] sums = accumulate(values, inputSize, outputSize, batchSize);
+                final int bias = (scales.length > outputSize + 1) ? outputSize + 1 : -1;
+                for (int idxS = 0; idxS < batchSize; idxS++) {
+                    final int out = idxS * outputSize;
+                    for (int o = 0; o < outputSize; o++) output[out + o] = sums[out + o] * (inputScale * scales[o]);
+                    if (bias >= 0) for (int o = 0; o < outputSize; o++) output[out + o] += scales[bias + o];
+                }
+            }
+
+            @Override
+            public void applyBatch(
+                    float[] input, int inputSize,
+                    float[] scales,
+                    float[] output, int outputSize,
+                    int batchSize
+            ) {
+                final float inputScale = scales[outputSize];
+                final float reciprocal = 1 / inputScale;
+                final int[] values = new int[inputSize * batchSize];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Math.max(-127, Math.min(127, Math.round(input[i] * reciprocal)));
+                }
+
+                final int[] sums = accumulate(values, inputSize, outputSize, batchSize);
+                final int bias = (scales.length > outputSize + 1) ? outputSize + 1 : -1;
+                for (int idxS = 0; idxS < batchSize; idxS++) {
+                    final int out = idxS * outputSize;
+                    for (int o = 0; o < outputSize; o++) output[out + o] = sums[out + o] * (inputScale * scales[o]);
+                    if (bias >= 0) for (int o = 0; o < outputSize; o++) output[out + o] += scales[bias + o];
+                }
+            }
+
+            private int[] accumulate(final int[] values, final int inputSize, final int outputSize, final int batchSize) {
+                final int[] sums = new int[outputSize * batchSize];
+                final int blockCount = (outputSize + 3) / 4;
+
+                policy.execute(blockCount, ExecutionPolicy.cost(4L * inputSize * batchSize), (from, to) -> {
+                    final int[] rows = new int[4 * inputSize];
+                    for (int idxB = from; idxB < to; idxB++) forEachBlock(
+                            idxB, inputSize, outputSize, batchSize, values, rows, sums
+                    );
+                });
+                return sums;
+            }
+
+            /* Same blocking as the dense kernel. 127 * 127 * inputSize fits an int for any practical input size */
+            private void forEachBlock(
+                    final int idxB,
+                    final int iSize, final int oSize, final int bSize,
+                    final int[] input, final int[] rows,
+                    final int[] output
+            ) {
+                final int idxO = idxB * 4;
+                final int rowCount = Math.min(4, oSize - idxO);
+
+                final int start = idxO * iSize;
+                for (int i = 0; i < rowCount * iSize; i++) rows[i] = weights[start + i];
+
+                // Tail block, not enough rows to fill the registers
+                if (rowCount < 4) {
+                    for (int r = 0; r < rowCount; r++) {
+                        final int row = r * iSize;
+                        for (int idxS = 0; idxS < bSize; idxS++) {
+                            final int in = idxS * iSize;
+                            int sum = 0;
+                            for (int idxI = 0; idxI < iSize; idxI++) {
+                                sum += input[in + idxI] * rows[row + idxI];
+                            }
+                            output[idxS * oSize + idxO + r] = sum;
+                        }
+                    }
+                    return;
+                }
+
+                final int row1 = iSize;
+                final int row2 = row1 + iSize;
+                final int row3 = row2 + iSize;
+
+                for (int idxS = 0; idxS < bSize; idxS++) {
+                    final int in = idxS * iSize;
+
+                    int sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+                    for (int idxI = 0; idxI < iSize; idxI++) {
+                        final int value = input[in + idxI];
+                        sum0 += value * rows[idxI];
+                        sum1 += value * rows[row1 + idxI];
+                        sum2 += value * rows[row2 + idxI];
+                        sum3 += value * rows[row3 + idxI];
+                    }
+
+                    final int out = idxS * oSize + idxO;
+                    output[out] = sum0;
+                    output[out + 1] = sum1;
+                    output[out + 2] = sum2;
+                    output[out + 3] = sum3;
+                }
+            }
+        };
+    }
 
     //================================================================
     /**
      * What a LeakyRelu do is just check if each value is greater than 0
+     * <p>
+     * This is the scalar kernel, {@link #LeakyRelu} comes from {@link Kernels#current()}.
      */
-    ForwardFunction LeakyRelu = (input, trans, output) -> {
-        final int inputSize = input.length;
-
-        for (int i = 0; i < inputSize; i++) {
-            final double v = input[i];
-            if (v > 0) {
-                output[i] = v;
-            } else if (v < 0) {
-                output[i] = v * 0.01;
-            } else {
-                output[i] = Double.MIN_NORMAL;
+    ForwardFunction ScalarLeakyRelu = new ForwardFunction() {
+        @Override
+        public void apply(double[] input, double[] trans, double[] output) {
+            forEachValue(input, output, input.length);
+        }
+
+        @Override
+        public void applyBatch(
+                double[] input, int inputSize,
+                double[] weights,
+                double[] output, int outputSize,
+                int batchSize
+        ) {
+            // Input size equals to output size, the whole batch is just a longer array
+            forEachValue(input, output, inputSize * batchSize);
+        }
+
+        private void forEachValue(final double[] input, final double[] output, final int size) {
+            for (int i = 0; i < size; i++) {
+                final double v = input[i];
+                if (v > 0) {
+                    output[i] = v;
+                } else if (v < 0) {
+                    output[i] = v * 0.01;
+                } else {
+                    output[i] = Double.MIN_NORMAL;
+                }
+            }
+        }
+
+        @Override
+        public void applyBatch(
+                float[] input, int inputSize,
+                float[] weights,
+                float[] output, int outputSize,
+                int batchSize
+        ) {
+            final int size = inputSize * batchSize;
+            for (int i = 0; i < size; i++) {
+                final float v = input[i];
+                if (v > 0) {
+                    output[i] = v;
+                } else if (v < 0) {
+                    output[i] = v * 0.01f;
+                } else {
+                    output[i] = Float.MIN_NORMAL;
+                }
             }
         }
     };
 
+    ForwardFunction LeakyRelu = Kernels.current().forwardLeakyRelu();
+
     //================================================================
 
-    ForwardFunction MaxIndex = (input, trans, output) -> {
-        final int inputSize = input.length;
-        int maxIdx = 0;
-        for (int i = 0; i < inputSize; i++) {
-            final double v = input[i];
+    ForwardFunction MaxIndex = new ForwardFunction() {
+        @Override
+        public void apply(double[] input, double[] trans, double[] output) {
+            output[0] = forEachSample(input, 0, input.length);
+        }
 
-            if (Double.isNaN(v)) throw new RuntimeException(
-                    "input[" + i + "] is NaN! Plz reduce learning rate!"
-            );
+        @Override
+        public void applyBatch(
+                double[] input, int inputSize,
+                double[] weights,
+                double[] output, int outputSize,
+                int batchSize
+        ) {
+            for (int idxS = 0; idxS < batchSize; idxS++) {
+                output[idxS * outputSize] = forEachSample(input, idxS * inputSize, inputSize);
+            }
+        }
+
+        private int forEachSample(final double[] input, final int offset, final int inputSize) {
+            int maxIdx = 0;
+            for (int i = 0; i < inputSize; i++) {
+                final double v = input[offset + i];
+
+                if (Double.isNaN(v)) throw new RuntimeException(
+                        "input[" + i + "] is NaN! Plz reduce learning rate!"
+                );
+
+                if (v > input[offset + maxIdx]) maxIdx = i;
+            }
+            return maxIdx;
+        }
 
-            if (v > input[maxIdx]) maxIdx = i;
+        @Override
+        public void applyBatch(
+                float[] input, int inputSize,
+                float[] weights,
+                float[] output, int outputSize,
+                int batchSize
+        ) {
+            for (int idxS = 0; idxS < batchSize; idxS++) {
+                final int offset = idxS * inputSize;
+                int maxIdx = 0;
+                for (int i = 0; i < inputSize; i++) {
+                    final float v = input[offset + i];
+
+                    if (Float.isNaN(v)) throw new RuntimeException(
+                            "input[" + i + "] is NaN! Plz reduce learning rate!"
+                    );
+
+                    if (v > input[offset + maxIdx]) maxIdx = i;
+                }
+                output[idxS * outputSize] = maxIdx;
+            }
         }
-        output[0] = maxIdx;
     };
 
     /**
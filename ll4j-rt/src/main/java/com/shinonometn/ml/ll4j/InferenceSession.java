@@ -0,0 +1,122 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Inference session holds reusable activation buffers for classification jobs.
+ * <p>
+ * Two buffers sized to the widest layer are used in turn as input and output of each layer,
+ * so no array is allocated after the session is created. Note that layers large enough to be split
+ * by {@link ExecutionPolicy#Adaptive} still allocate fork-join tasks, use a model bound to
+ * {@link ExecutionPolicy#Sequential} if every allocation matters. Quantized layers allocate their int buffers
+ * on each call too.
+ * <p>
+ * A session is not thread-safe. It is cheap to create, keep one per worker thread
+ * (in a ThreadLocal or an object pool). Sessions of the same model can run concurrently.
+ */
+public final class InferenceSession {
+    private final Model model;
+    private final double[] front;
+    private final double[] back;
+    // Buffers of Float32 models, null for the others
+    private final float[] floatFront;
+    private final float[] floatBack;
+
+    InferenceSession(final Model model) {
+        this.model = model;
+
+        int widest = 0;
+        for (final Layer layer : model.steps) {
+            widest = Math.max(widest, Math.max(layer.getInputSize(), layer.getOutputSize()));
+        }
+        if (model.getPrecision() == Precision.Float32) {
+            this.front = null;
+            this.back = null;
+            this.floatFront = new float[widest];
+            this.floatBack = new float[widest];
+        } else {
+            this.front = new double[widest];
+            this.back = new double[widest];
+            this.floatFront = null;
+            this.floatBack = null;
+        }
+    }
+
+    /** Get the model of this session */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Do classification, write the result to output.
+     *
+     * @param input  model input, size should be the model input size
+     * @param output result destination, should not be smaller than the model output size
+     */
+    public void classifyInto(final double[] input, final double[] output) throws MinRtException {
+        final int inputSize = model.getInputSize();
+        if (input.length != inputSize) throw new MinRtException(String.format(
+                "Wrong input size for this model, expected %d, got %d", inputSize, input.length
+        ));
+
+        final int outputSize = model.getOutputSize();
+        if (output.length < outputSize) throw new MinRtException(String.format(
+                "Output buffer is too small for this model, expected %d, got %d", outputSize, output.length
+        ));
+
+        final MetricsListener metrics = model.metrics;
+        final long start = (metrics != null) ? System.nanoTime() : 0L;
+
+        if (floatFront != null) {
+            classifyFloat(input, output, metrics);
+        } else {
+            final Layer[] layers = model.steps;
+            final int last = layers.length - 1;
+
+            double[] iter = input;
+            for (int i = 0; i <= last; i++) {
+                final Layer layer = layers[i];
+                final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
+                final double[] next = (i == last) ? output : ((iter == front) ? back : front);
+                layer.function.applyBatch(
+                        /*      input = */ iter, layer.getInputSize(),
+                        /*    weights = */ layer.data,
+                        /*     output = */ next, layer.getOutputSize(),
+                        /* batch size = */ 1
+                );
+                if (metrics != null) {
+                    metrics.onLayer(MetricsListener.Phase.Forward, model.stepIndices[i], layer, 1, System.nanoTime() - layerStart);
+                }
+                iter = next;
+            }
+        }
+
+        if (metrics != null) metrics.onSamples(1, 0, System.nanoTime() - start);
+    }
+
+    /**
+     * Same as {@link #classifyInto(double[], double[])}, with float activations
+     */
+    private void classifyFloat(final double[] input, final double[] output, final MetricsListener metrics) {
+        final Layer[] layers = model.steps;
+
+        float[] iter = floatFront;
+        for (int i = 0; i < input.length; i++) iter[i] = (float) input[i];
+        for (int k = 0; k < layers.length; k++) {
+            final Layer layer = layers[k];
+            final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
+            final float[] next = (iter == floatFront) ? floatBack : floatFront;
+            layer.function.applyBatch(
+                    /*      input = */ iter, layer.getInputSize(),
+                    /*    weights = */ layer.floatData,
+                    /*     output = */ next, layer.getOutputSize(),
+                    /* batch size = */ 1
+            );
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Forward, model.stepIndices[k], layer, 1, System.nanoTime() - layerStart);
+            }
+            iter = next;
+        }
+
+        final int outputSize = model.getOutputSize();
+        for (int i = 0; i < outputSize; i++) output[i] = iter[i];
+    }
+}
@@ -0,0 +1,24 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Provider of the forward kernels used by the built-in layers.
+ * <p>
+ * Providers are found with {@link java.util.ServiceLoader}, the first supported one replaces the scalar kernels,
+ * see {@link Kernels}. Kernels of a provider should give the same results as the scalar ones,
+ * up to the rounding of a different summation order.
+ */
+public interface KernelProvider {
+    /** Name of the provider, it can be selected with the {@value Kernels#PropertyName} system property */
+    String getName();
+
+    /**
+     * Check if the kernels can run on this JVM. Unsupported providers are skipped.
+     */
+    boolean isSupported();
+
+    /** Kernel of dense layers, see {@link ForwardFunction#Dense} */
+    ForwardFunction forwardDense(ExecutionPolicy policy);
+
+    /** Kernel of LeakyRelu layers, see {@link ForwardFunction#LeakyRelu} */
+    ForwardFunction forwardLeakyRelu();
+}
@@ -0,0 +1,83 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Select the kernels of the built-in layers.
+ * <p>
+ * Kernel providers on the classpath are loaded once, on first use. The first provider that supports
+ * the running JVM is used, and the scalar kernels are the fallback. A provider that cannot be loaded,
+ * like one built for a newer JDK, is ignored.
+ * <p>
+ * Set the {@value #PropertyName} system property to the name of a provider to pick it,
+ * or to {@value #ScalarName} to always use the scalar kernels.
+ */
+public final class Kernels {
+    private Kernels() {
+    }
+
+    public static final String PropertyName = "ll4j.kernels";
+
+    public static final String ScalarName = "scalar";
+
+    //================================================================
+
+    private static final KernelProvider Scalar = new KernelProvider() {
+        @Override
+        public String getName() {
+            return ScalarName;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return true;
+        }
+
+        @Override
+        public ForwardFunction forwardDense(final ExecutionPolicy policy) {
+            return ForwardFunction.scalarDense(policy);
+        }
+
+        @Override
+        public ForwardFunction forwardLeakyRelu() {
+            return ForwardFunction.ScalarLeakyRelu;
+        }
+    };
+
+    private static final class Holder {
+        static final KernelProvider Current = load(KernelProvider.class, Scalar);
+    }
+
+    /**
+     * The kernels used by the built-in layers
+     */
+    public static KernelProvider current() {
+        return Holder.Current;
+    }
+
+    /**
+     * The scalar kernels, they run on any JVM
+     */
+    public static KernelProvider scalar() {
+        return Scalar;
+    }
+
+    /**
+     * Find the provider of a kernel service, see the class description
+     */
+    static <T extends KernelProvider> T load(final Class<T> service, final T fallback) {
+        final String wanted = System.getProperty(PropertyName);
+        if (ScalarName.equals(wanted)) return fallback;
+
+        try {
+            for (final T provider : ServiceLoader.load(service)) {
+                if (wanted != null && !wanted.equals(provider.getName())) continue;
+                if (provider.isSupported()) return provider;
+            }
+        } catch (ServiceConfigurationError | LinkageError e) {
+            // Fall through to the scalar kernels
+        }
+        return fallback;
+    }
+}
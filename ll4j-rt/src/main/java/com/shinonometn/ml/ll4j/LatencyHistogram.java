@@ -0,0 +1,112 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds, safe to record from many threads.
+ * <p>
+ * Buckets are powers of two, each split in 4 sub-buckets, so a percentile is at most 25% above the
+ * recorded value. Recording is a few atomic adds, it never allocates.
+ */
+public final class LatencyHistogram {
+    private static final int SubBucketBits = 2;
+    private static final int SubBucketCount = 1 << SubBucketBits;
+    private static final int BucketCount = SubBucketCount + (63 - SubBucketBits) * SubBucketCount;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BucketCount);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a duration, negative values count as zero
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** Sum of all durations */
+    public long getTotalNanos() {
+        return sum.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        final long n = count.sum();
+        return (n == 0) ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile
+     *
+     * @param percentile in [0, 100]
+     * @return 0 if nothing is recorded
+     */
+    public long getPercentileNanos(final double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException(
+                "Percentile should be in [0, 100], got " + percentile
+        );
+
+        long total = 0;
+        final long[] snapshot = new long[BucketCount];
+        for (int i = 0; i < BucketCount; i++) total += (snapshot[i] = counts.get(i));
+        if (total == 0) return 0;
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BucketCount; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(upperBoundOf(i), getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BucketCount; i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Count, mean, p50, p99 and max in microseconds
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "n=%d, mean=%.1f us, p50=%.1f us, p99=%.1f us, max=%.1f us",
+                getCount(), getMeanNanos() / 1000,
+                getPercentileNanos(50) / 1000.0, getPercentileNanos(99) / 1000.0, getMaxNanos() / 1000.0
+        );
+    }
+
+    //================================================================
+
+    static int indexOf(final long value) {
+        if (value < SubBucketCount) return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SubBucketBits)) & (SubBucketCount - 1);
+        return SubBucketCount + (exponent - SubBucketBits) * SubBucketCount + sub;
+    }
+
+    static long upperBoundOf(final int index) {
+        if (index < SubBucketCount) return index;
+        final int exponent = (index - SubBucketCount) / SubBucketCount + SubBucketBits;
+        final long sub = (index - SubBucketCount) % SubBucketCount;
+        final long width = 1L << (exponent - SubBucketBits);
+        return ((SubBucketCount + sub) * width) + width - 1;
+    }
+}
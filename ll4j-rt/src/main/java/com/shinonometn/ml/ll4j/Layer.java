@@ -4,16 +4,81 @@ package com.shinonometn.ml.ll4j;
  * Layer is a part of the Model
  */
 public class Layer {
+    private static final double[] NoDoubles = new double[0];
+
     public final String type;
     final int[] meta;
+    /** Weights of a Float64 layer, empty for Float32 layers */
     final double[] data;
+    /** Weights of a Float32 layer, null for Float64 layers */
+    final float[] floatData;
+    /** Int8 weights of a quantized layer, null for the others. The scales are in data or floatData */
+    final byte[] quantized;
     final ForwardFunction function;
+    /** Read-only layers never expose their data array */
+    final boolean frozen;
 
     Layer(final String type, final int[] meta, final double[] data, final ForwardFunction function) {
+        this(type, meta, data, function, false);
+    }
+
+    Layer(final String type, final int[] meta, final double[] data, final ForwardFunction function, final boolean frozen) {
+        this(type, meta, data, null, null, function, frozen);
+    }
+
+    Layer(final String type, final int[] meta, final float[] floatData, final ForwardFunction function, final boolean frozen) {
+        this(type, meta, NoDoubles, floatData, null, function, frozen);
+    }
+
+    Layer(final String type, final int[] meta, final byte[] quantized, final double[] scales, final ForwardFunction function) {
+        this(type, meta, scales, null, quantized, function, false);
+    }
+
+    private Layer(final String type,
+                  final int[] meta,
+                  final double[] data,
+                  final float[] floatData,
+                  final byte[] quantized,
+                  final ForwardFunction function,
+                  final boolean frozen) {
         this.type = type;
         this.data = data;
+        this.floatData = floatData;
+        this.quantized = quantized;
         this.meta = meta;
         this.function = function;
+        this.frozen = frozen;
+    }
+
+    /**
+     * Create a read-only copy of this layer, the data is copied.
+     * Int8 weights are shared, they are bound to the forward function and never handed out.
+     */
+    Layer freeze() {
+        if (frozen) return this;
+        return new Layer(
+                type, meta.clone(), data.clone(), (floatData == null) ? null : floatData.clone(), quantized, function, true
+        );
+    }
+
+    /**
+     * Create a layer with the same data and another forward function
+     */
+    Layer withFunction(final ForwardFunction function) {
+        return new Layer(type, meta, data, floatData, quantized, function, frozen);
+    }
+
+    /**
+     * Create a copy of this layer with weights in the given precision, or this layer if it is already in it
+     */
+    Layer withPrecision(final Precision precision) {
+        if (precision == getPrecision()) return this;
+        if (precision == Precision.Float32) {
+            final float[] result = new float[data.length];
+            for (int i = 0; i < result.length; i++) result[i] = (float) data[i];
+            return new Layer(type, meta.clone(), NoDoubles, result, quantized, function, frozen);
+        }
+        return new Layer(type, meta.clone(), widen(floatData), null, quantized, function, frozen);
     }
 
     public int getInputSize() {
@@ -24,7 +89,64 @@ public class Layer {
         return meta[1];
     }
 
+    /**
+     * Precision of the weights, and of the activations when the layer runs.
+     * For quantized layers it is the precision of the scales and activations.
+     */
+    public Precision getPrecision() {
+        return (floatData == null) ? Precision.Float64 : Precision.Float32;
+    }
+
+    /** Count of weights */
+    public int getWeightCount() {
+        if (quantized != null) return quantized.length;
+        return (floatData == null) ? data.length : floatData.length;
+    }
+
+    /** Memory taken by the weights, scales of quantized layers included */
+    public long getWeightBytes() {
+        long bytes = (long) data.length * Precision.Float64.size;
+        if (floatData != null) bytes += (long) floatData.length * Precision.Float32.size;
+        if (quantized != null) bytes += quantized.length;
+        return bytes;
+    }
+
+    public boolean isQuantized() {
+        return quantized != null;
+    }
+
+    /**
+     * Check if this is a dense layer with a bias for each output, see {@link Layers#denseWithBias(int, int)}
+     */
+    public boolean hasBias() {
+        final int length = (floatData == null) ? data.length : floatData.length;
+        if (Layers.TYPE_DENSE.equals(type)) return length > getInputSize() * getOutputSize();
+        if (Layers.TYPE_QUANTIZED_DENSE.equals(type)) return length > getOutputSize() + 1;
+        return false;
+    }
+
+    /**
+     * Get the layer data.
+     * <p>
+     * Dense layer weights are stored output-major: weight of input i to output j is at data[j * inputSize + i].
+     * The biases of a layer with bias follow the weights, bias of output j is at data[inputSize * outputSize + j].
+     * <p>
+     * Quantized layers return their scales instead, see {@link Layers#TYPE_QUANTIZED_DENSE}.
+     * <p>
+     * It returns the live array, except for layers of a frozen model and Float32 layers, which return a copy.
+     */
     public double[] getData() {
-        return data;
+        if (floatData != null) return widen(floatData);
+        return frozen ? data.clone() : data;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private static double[] widen(final float[] source) {
+        final double[] result = new double[source.length];
+        for (int i = 0; i < result.length; i++) result[i] = source[i];
+        return result;
     }
 }
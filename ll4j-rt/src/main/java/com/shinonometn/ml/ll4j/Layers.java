@@ -1,5 +1,7 @@
 package com.shinonometn.ml.ll4j;
 
+import java.util.Arrays;
+
 public final class Layers {
     private Layers() {
     }
@@ -10,9 +12,15 @@ public final class Layers {
 
     public static Layer dense(final int input, final int output) {
         final double[] data = new double[input * output];
-        return dense(input, output, data);
+        return denseOutputMajor(input, output, data, ForwardFunction.Dense);
     }
 
+    /**
+     * Create a dense layer.
+     *
+     * @param weights weights in [input][output] order, same as the text model format.
+     *                They will be copied to the output-major layout used by the layer.
+     */
     public static Layer dense(final int input, final int output, final double[] weights) {
         return dense(input, output, weights, ForwardFunction.Dense);
     }
@@ -22,11 +30,105 @@ public final class Layers {
                 "Size of the weight array is not equals to the capacity. (%d * %d != %d)",
                 input, output, weights.length
         ));
-        return new Layer(TYPE_DENSE, new int[]{input, output}, weights, function);
+        return denseOutputMajor(input, output, transpose(weights, input, output), function);
     }
 
     public static Layer dense(final int input, final int output, final ForwardFunction function) {
-        return dense(input, output, new double[input * output], function);
+        return denseOutputMajor(input, output, new double[input * output], function);
+    }
+
+    /**
+     * Create a dense layer with a bias for each output: output[j] = sum(input[i] * weights[j][i]) + bias[j].
+     * <p>
+     * The biases are stored in the layer data after the weights, so the data has
+     * inputSize * outputSize + outputSize values. Weights and biases start at zero.
+     */
+    public static Layer denseWithBias(final int input, final int output) {
+        return denseOutputMajor(input, output, new double[input * output + output], ForwardFunction.Dense);
+    }
+
+    /**
+     * Create a dense layer with a bias for each output, see {@link #denseWithBias(int, int)}.
+     *
+     * @param weights weights in [input][output] order, same as the text model format.
+     * @param biases  bias of each output
+     */
+    public static Layer dense(final int input, final int output, final double[] weights, final double[] biases) {
+        if (weights.length != (input * output) || biases.length != output) throw new IllegalArgumentException(String.format(
+                "Size of the weight or bias array is not equals to the capacity. (%d * %d != %d or %d != %d)",
+                input, output, weights.length, output, biases.length
+        ));
+        final double[] data = Arrays.copyOf(transpose(weights, input, output), weights.length + output);
+        System.arraycopy(biases, 0, data, weights.length, output);
+        return denseOutputMajor(input, output, data, ForwardFunction.Dense);
+    }
+
+    /**
+     * Create a dense layer on weights that are already in [output][input] order, followed by
+     * the biases if the layer has them. The array is used as-is.
+     */
+    static Layer denseOutputMajor(final int input, final int output, final double[] weights, final ForwardFunction function) {
+        return new Layer(TYPE_DENSE, new int[]{input, output}, weights, function);
+    }
+
+    /**
+     * Create a Float32 dense layer on weights that are already in [output][input] order.
+     * The array is used as-is.
+     */
+    static Layer denseOutputMajor(final int input, final int output, final float[] weights, final ForwardFunction function) {
+        return new Layer(TYPE_DENSE, new int[]{input, output}, weights, function, false);
+    }
+
+    /**
+     * Rebind the forward function of a layer to the given execution policy, the data is shared.
+     * Layers that have no parallel kernel are returned as-is.
+     */
+    static Layer withExecutionPolicy(final Layer layer, final ExecutionPolicy policy) {
+        if (TYPE_QUANTIZED_DENSE.equals(layer.type)) {
+            return layer.withFunction(ForwardFunction.quantizedDense(layer.quantized, policy));
+        }
+        if (!TYPE_DENSE.equals(layer.type)) return layer;
+        return layer.withFunction(ForwardFunction.dense(policy));
+    }
+
+    /**
+     * Transpose a row-major [rows][cols] matrix to [cols][rows]
+     */
+    static double[] transpose(final double[] source, final int rows, final int cols) {
+        final double[] result = new double[source.length];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                result[c * rows + r] = source[r * cols + c];
+            }
+        }
+        return result;
+    }
+
+    //================================================================
+
+    /**
+     * Dense layer with int8 weights, see {@link Quantizer}.
+     * <p>
+     * Weights are output-major like dense layers. The layer data holds the scales:
+     * the scale of each output row, then the scale of the input, so weight[j][i] = int8[j][i] * scale[j].
+     * Layers quantized from a dense layer with bias have the bias of each output after the scales.
+     */
+    public final static String TYPE_QUANTIZED_DENSE = "Q";
+
+    /**
+     * Create a quantized dense layer on int8 weights in [output][input] order.
+     * The arrays are used as-is.
+     *
+     * @param scales scale of each output, then the input scale, outputSize + 1 values,
+     *               then the bias of each output if the layer has them
+     */
+    static Layer quantizedDenseOutputMajor(final int input, final int output, final byte[] weights, final double[] scales) {
+        final boolean scalesFit = scales.length == output + 1 || scales.length == 2 * output + 1;
+        if (weights.length != input * output || !scalesFit) throw new IllegalArgumentException(String.format(
+                "Size of the weight or scale array is not equals to the capacity. (%d * %d != %d or %d + 1 (+ %d) != %d)",
+                input, output, weights.length, output, output, scales.length
+        ));
+        return new Layer(TYPE_QUANTIZED_DENSE, new int[]{input, output}, weights, scales, ForwardFunction.quantizedDense(weights));
     }
 
     //================================================================
@@ -0,0 +1,53 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Receives timings and counters from the hot paths of inference, training and data loading.
+ * <p>
+ * Listeners are opt-in, see {@link Model#withMetrics(MetricsListener)}. Without one the hot paths only check
+ * a field for null: no clock is read and no listener is called. Events may come from many threads at once,
+ * and they are sent inline, so a listener should only record and return. {@link MetricsRecorder} is the
+ * recording listener that comes with the library.
+ */
+public interface MetricsListener {
+
+    enum Phase {
+        Forward, Backward, Update
+    }
+
+    /**
+     * A layer finished one phase for a batch of samples
+     *
+     * @param phase      Forward, backward propagation or weight update
+     * @param layerIndex index of the layer in the model
+     * @param layer      the layer
+     * @param batchSize  sample count, 1 for the per-sample paths
+     * @param nanos      elapsed time
+     */
+    default void onLayer(Phase phase, int layerIndex, Layer layer, int batchSize, long nanos) {
+    }
+
+    /**
+     * Samples were classified or trained by one call
+     *
+     * @param count   sample count
+     * @param correct correct predictions before the update when training, 0 when classifying
+     * @param nanos   elapsed time of the call
+     */
+    default void onSamples(int count, int correct, long nanos) {
+    }
+
+    /**
+     * Arrays allocated by one call for activations and buffers. Allocations inside kernels are not counted.
+     */
+    default void onAllocation(int arrays, long bytes) {
+    }
+
+    /**
+     * Samples ready in a data loading queue, reported when the consumer takes from it
+     *
+     * @param queue name of the queue
+     * @param depth samples ready
+     */
+    default void onQueueDepth(String queue, int depth) {
+    }
+}
@@ -0,0 +1,211 @@
+package com.shinonometn.ml.ll4j;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link MetricsListener} that keeps latency histograms for each layer and phase, sample and allocation
+ * counters and the depth of the data loading queues. Safe to share among threads and models.
+ * <p>
+ * Values can be read in code or through JMX, see {@link #register(String)}.
+ */
+public final class MetricsRecorder implements MetricsListener, MetricsRecorderMXBean {
+    /** JMX domain of the recorders */
+    public static final String Domain = "com.shinonometn.ml.ll4j";
+
+    private static final int PhaseCount = Phase.values().length;
+
+    private static final class LayerStats {
+        final Phase phase;
+        final int index;
+        final String type;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        LayerStats(final Phase phase, final int index, final String type) {
+            this.phase = phase;
+            this.index = index;
+            this.type = type;
+        }
+    }
+
+    private static final class QueueStats {
+        volatile int last;
+        volatile int min = Integer.MAX_VALUE;
+    }
+
+    // Keyed by layer index * PhaseCount + phase, small keys are cached Integers
+    private final ConcurrentHashMap<Integer, LayerStats> layers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, QueueStats> queues = new ConcurrentHashMap<>();
+    private final LatencyHistogram calls = new LatencyHistogram();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder correct = new LongAdder();
+    private final LongAdder arrays = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile long startNanos = System.nanoTime();
+    private ObjectName objectName;
+
+    //================================================================
+
+    @Override
+    public void onLayer(final Phase phase, final int layerIndex, final Layer layer, final int batchSize, final long nanos) {
+        final Integer key = layerIndex * PhaseCount + phase.ordinal();
+        LayerStats stats = layers.get(key);
+        if (stats == null) stats = layers.computeIfAbsent(key, k -> new LayerStats(phase, layerIndex, layer.type));
+        stats.histogram.record(nanos);
+    }
+
+    @Override
+    public void onSamples(final int count, final int correct, final long nanos) {
+        samples.add(count);
+        this.correct.add(correct);
+        calls.record(nanos);
+    }
+
+    @Override
+    public void onAllocation(final int arrays, final long bytes) {
+        this.arrays.add(arrays);
+        this.bytes.add(bytes);
+    }
+
+    @Override
+    public void onQueueDepth(final String queue, final int depth) {
+        QueueStats stats = queues.get(queue);
+        if (stats == null) stats = queues.computeIfAbsent(queue, k -> new QueueStats());
+        stats.last = depth;
+        if (depth < stats.min) stats.min = depth;
+    }
+
+    //================================================================
+
+    @Override
+    public long getSampleCount() {
+        return samples.sum();
+    }
+
+    @Override
+    public long getCorrectCount() {
+        return correct.sum();
+    }
+
+    @Override
+    public double getSamplesPerSecond() {
+        final long elapsed = System.nanoTime() - startNanos;
+        return (elapsed <= 0) ? 0 : samples.sum() * 1e9 / elapsed;
+    }
+
+    /** Latency of the reporting calls */
+    public LatencyHistogram getCallHistogram() {
+        return calls;
+    }
+
+    @Override
+    public String getCallLatency() {
+        return calls.toString();
+    }
+
+    /**
+     * Latency of a layer in a phase
+     *
+     * @return null if nothing is recorded for it
+     */
+    public LatencyHistogram getLayerHistogram(final Phase phase, final int layerIndex) {
+        final LayerStats stats = layers.get(layerIndex * PhaseCount + phase.ordinal());
+        return (stats == null) ? null : stats.histogram;
+    }
+
+    @Override
+    public String[] getLayerLatencies() {
+        final List<LayerStats> sorted = new ArrayList<>(new TreeMap<>(layers).values());
+        final String[] lines = new String[sorted.size()];
+        for (int i = 0; i < lines.length; i++) {
+            final LayerStats stats = sorted.get(i);
+            lines[i] = String.format("%-8s %2d %s: %s", stats.phase, stats.index, stats.type, stats.histogram);
+        }
+        return lines;
+    }
+
+    @Override
+    public long getAllocatedArrays() {
+        return arrays.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Last depth reported by a queue, -1 if it has reported nothing
+     */
+    public int getQueueDepth(final String queue) {
+        final QueueStats stats = queues.get(queue);
+        return (stats == null) ? -1 : stats.last;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> result = new TreeMap<>();
+        queues.forEach((name, stats) -> result.put(name, stats.last));
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> getMinQueueDepths() {
+        final Map<String, Integer> result = new TreeMap<>();
+        queues.forEach((name, stats) -> result.put(name, stats.min));
+        return result;
+    }
+
+    /**
+     * Clear everything and restart the sample rate clock. Events recorded during a reset may be partly lost.
+     */
+    @Override
+    public void reset() {
+        for (final LayerStats stats : layers.values()) stats.histogram.reset();
+        queues.clear();
+        calls.reset();
+        samples.reset();
+        correct.reset();
+        arrays.reset();
+        bytes.reset();
+        startNanos = System.nanoTime();
+    }
+
+    //================================================================
+
+    /**
+     * Register this recorder to the platform MBean server, as {@value #Domain}:type=Metrics,name=[name]
+     */
+    public synchronized ObjectName register(final String name) {
+        if (objectName != null) throw new IllegalStateException("Metrics are registered as " + objectName);
+        try {
+            final ObjectName result = new ObjectName(Domain + ":type=Metrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, result);
+            objectName = result;
+            return result;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics " + name, e);
+        }
+    }
+
+    /**
+     * Remove this recorder from the platform MBean server, if it is registered
+     */
+    public synchronized void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister metrics " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link MetricsRecorder}, all values are since the last reset
+ */
+public interface MetricsRecorderMXBean {
+    long getSampleCount();
+
+    long getCorrectCount();
+
+    /** Samples per second of wall time */
+    double getSamplesPerSecond();
+
+    /** Latency of the reporting calls, like one classification or one training batch */
+    String getCallLatency();
+
+    /** One line for each layer and phase, with count, mean, p50, p99 and max */
+    String[] getLayerLatencies();
+
+    long getAllocatedArrays();
+
+    long getAllocatedBytes();
+
+    /** Last depth reported by each queue */
+    Map<String, Integer> getQueueDepths();
+
+    /** Lowest depth reported by each queue, 0 means the consumer had to wait */
+    Map<String, Integer> getMinQueueDepths();
+
+    void reset();
+}
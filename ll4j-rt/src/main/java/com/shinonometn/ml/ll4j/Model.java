@@ -1,5 +1,9 @@
 package com.shinonometn.ml.ll4j;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -7,12 +11,63 @@ import java.util.List;
 
 /**
  * Model is a cache for each classification job
+ * <p>
+ * Classification keeps no state in the model, so one model can serve many threads at once
+ * as long as nobody modifies the weights. Use {@link #freeze()} to get a model that guarantees it.
+ * <p>
+ * A dense layer followed by a LeakyRelu layer runs as one fused kernel, which applies the activation to
+ * each output as it is computed, so the activations are written once and need no buffer of their own.
+ * Metrics of the fused pair are reported on the dense layer.
  */
 public class Model {
     final Layer[] layers;
 
+    /** Layers run by classification, with the fused pairs replaced by the dense layer on the fused kernel */
+    final Layer[] steps;
+    /** Index of the layer of each step, for the metrics */
+    final int[] stepIndices;
+
+    /** Receives the timings of classification, null if disabled */
+    final MetricsListener metrics;
+
     Model(final Layer[] layers) {
+        this(layers, null);
+    }
+
+    Model(final Layer[] layers, final MetricsListener metrics) {
+        for (int i = 1; i < layers.length; i++) {
+            if (layers[i].getPrecision() != layers[0].getPrecision()) throw new IllegalArgumentException(String.format(
+                    "All layers should have the same precision, layer %d is %s but layer 0 is %s",
+                    i, layers[i].getPrecision(), layers[0].getPrecision()
+            ));
+        }
         this.layers = layers;
+        this.metrics = metrics;
+
+        final LinkedList<Layer> steps = new LinkedList<>();
+        final int[] stepIndices = new int[layers.length];
+        for (int k = 0; k < layers.length; k++) {
+            final ForwardFunction fused = canFuseLeakyRelu(layers, k) ? layers[k].function.fuseLeakyRelu() : null;
+            stepIndices[steps.size()] = k;
+            if (fused == null) {
+                steps.add(layers[k]);
+            } else {
+                steps.add(layers[k].withFunction(fused));
+                k++;
+            }
+        }
+        this.steps = steps.toArray(new Layer[0]);
+        this.stepIndices = Arrays.copyOf(stepIndices, steps.size());
+    }
+
+    /**
+     * Check if layer k is a dense layer and the next one is a LeakyRelu on its output
+     */
+    private static boolean canFuseLeakyRelu(final Layer[] layers, final int k) {
+        return k + 1 < layers.length
+                && Layers.TYPE_DENSE.equals(layers[k].type)
+                && Layers.TYPE_LEAKY_RELU.equals(layers[k + 1].type)
+                && layers[k + 1].getInputSize() == layers[k].getOutputSize();
     }
 
     /**
@@ -34,6 +89,90 @@ public class Model {
         return Collections.unmodifiableList(Arrays.asList(layers));
     }
 
+    /**
+     * Precision of the weights and of the activations during classification
+     */
+    public Precision getPrecision() {
+        return (layers.length == 0) ? Precision.Float64 : layers[0].getPrecision();
+    }
+
+    /**
+     * Create a copy of this model with the weights converted to the given precision, or this model
+     * if it is already in it.
+     * <p>
+     * A {@link Precision#Float32} model takes half of the memory and memory bandwidth of the weights, and
+     * runs all layers in single precision. Inputs and results are still double arrays.
+     */
+    public Model withPrecision(final Precision precision) {
+        if (precision == getPrecision()) return this;
+        final Layer[] result = new Layer[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            result[i] = layers[i].withPrecision(precision);
+        }
+        return new Model(result, metrics);
+    }
+
+    /**
+     * Create a model sharing the weights of this one, with all dense layers running on the given
+     * execution policy. Use {@link ExecutionPolicy#pinned(java.util.concurrent.ForkJoinPool)} to keep
+     * the classification jobs away from the common pool.
+     */
+    public Model withExecutionPolicy(final ExecutionPolicy policy) {
+        final Layer[] result = new Layer[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            result[i] = Layers.withExecutionPolicy(layers[i], policy);
+        }
+        return new Model(result, metrics);
+    }
+
+    /**
+     * Create a read-only copy of this model.
+     * <p>
+     * The weights are copied, and the layers of a frozen model only hand out copies of them,
+     * so nothing (including a {@code ModelTrainer}) can change them later.
+     * A frozen model is safe for concurrent classification from any number of threads.
+     */
+    public Model freeze() {
+        if (isFrozen()) return this;
+        final Layer[] result = new Layer[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            result[i] = layers[i].freeze();
+        }
+        return new Model(result, metrics);
+    }
+
+    /**
+     * Check if the model is read-only
+     */
+    public boolean isFrozen() {
+        for (final Layer layer : layers) {
+            if (!layer.frozen) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Create a model sharing the layers of this one, that reports the time of each layer and each call
+     * of classification to a listener. Sessions of the model report to it too.
+     *
+     * @param listener the listener, null to disable the metrics
+     */
+    public Model withMetrics(final MetricsListener listener) {
+        return new Model(layers, listener);
+    }
+
+    /** Get the metrics listener, null if disabled */
+    public MetricsListener getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Create an inference session with reusable buffers, see {@link InferenceSession}
+     */
+    public InferenceSession newSession() {
+        return new InferenceSession(this);
+    }
+
     //================================================================
 
     /**
@@ -56,26 +195,56 @@ public class Model {
 
             // Get input count, the second field is always input count
             final int inputCount = Integer.parseInt(tokens[pos++]); // Input Count
-            if (!layers.isEmpty()) { // If is not the first layer, check the input size
-                final int inputSize = layers.getLast().getOutputSize();
-                if (inputSize != inputCount) throw new LayerInputMismatchException(String.format(
-                        "Wrong input size for layer %s@%02d (expected %d, got %d)",
-                        type, layers.size(), inputCount, inputSize
-                ));
-            }
+            checkInputSize(layers, type, inputCount);
 
             switch (type) {
                 // Dense Layer
-                // Output count at 2
+                // Output count at 2, then the weights and the optional bias of each output
                 case "D": {
                     final int outputCount = Integer.parseInt(tokens[pos++]);
 
                     // Parse data
+                    // Text format is [input][output], transpose it to the output-major layout while reading
+                    final int weightCount = inputCount * outputCount;
                     final double[] data = new double[tokens.length - pos];
-                    for (int i = 0; i < data.length; i++)
-                        data[i] = Double.parseDouble(tokens[pos++]);
+                    if (data.length != weightCount && data.length != weightCount + outputCount) {
+                        throw new IllegalArgumentException(String.format(
+                                "Size of the weight array is not equals to the capacity. (%d * %d (+ %d) != %d)",
+                                inputCount, outputCount, outputCount, data.length
+                        ));
+                    }
+                    for (int idxI = 0; idxI < inputCount; idxI++)
+                        for (int idxO = 0; idxO < outputCount; idxO++)
+                            data[idxO * inputCount + idxI] = Double.parseDouble(tokens[pos++]);
+                    for (int idxO = weightCount; idxO < data.length; idxO++) data[idxO] = Double.parseDouble(tokens[pos++]);
+
+                    layers.add(Layers.denseOutputMajor(inputCount, outputCount, data, ForwardFunction.Dense));
+                    break;
+                }
+
+                // Quantized Dense Layer
+                // Output count at 2, then outputCount + 1 scales, the int8 weights in [input][output] order
+                // and the optional bias of each output
+                case "Q": {
+                    final int outputCount = Integer.parseInt(tokens[pos++]);
+
+                    final int weightCount = inputCount * outputCount;
+                    final int valueCount = tokens.length - pos - (outputCount + 1);
+                    if (valueCount != weightCount && valueCount != weightCount + outputCount) {
+                        throw new IllegalArgumentException(String.format(
+                                "Size of the weight array is not equals to the capacity. (%d * %d (+ %d) != %d)",
+                                inputCount, outputCount, outputCount, valueCount
+                        ));
+                    }
+                    final double[] scales = new double[outputCount + 1 + valueCount - weightCount];
+                    final byte[] data = new byte[weightCount];
+                    for (int idxO = 0; idxO <= outputCount; idxO++) scales[idxO] = Double.parseDouble(tokens[pos++]);
+                    for (int idxI = 0; idxI < inputCount; idxI++)
+                        for (int idxO = 0; idxO < outputCount; idxO++)
+                            data[idxO * inputCount + idxI] = Byte.parseByte(tokens[pos++]);
+                    for (int idxO = outputCount + 1; idxO < scales.length; idxO++) scales[idxO] = Double.parseDouble(tokens[pos++]);
 
-                    layers.add(Layers.dense(inputCount, outputCount, data));
+                    layers.add(Layers.quantizedDenseOutputMajor(inputCount, outputCount, data, scales));
                     break;
                 }
 
@@ -102,6 +271,37 @@ public class Model {
         return new Model(layers.toArray(new Layer[0]));
     }
 
+    /**
+     * Parse a text model from a stream.
+     * <p>
+     * Unlike {@link #parseLayers(String[])}, the text is tokenized in a small reusable buffer and the weights
+     * are parsed straight into the weight arrays, so no line or token strings are kept while loading.
+     * The stream is not closed.
+     */
+    public static Model parse(final InputStream input) throws IOException, MinRtException {
+        return parse(Channels.newChannel(input));
+    }
+
+    /**
+     * Parse a text model from a channel, see {@link #parse(InputStream)}
+     */
+    public static Model parse(final ReadableByteChannel channel) throws IOException, MinRtException {
+        return new TextModelReader(channel).read();
+    }
+
+    /**
+     * If is not the first layer, check the input size
+     */
+    static void checkInputSize(final LinkedList<Layer> layers, final String type, final int inputCount)
+            throws LayerInputMismatchException {
+        if (layers.isEmpty()) return;
+        final int inputSize = layers.getLast().getOutputSize();
+        if (inputSize != inputCount) throw new LayerInputMismatchException(String.format(
+                "Wrong input size for layer %s@%02d (expected %d, got %d)",
+                type, layers.size(), inputCount, inputSize
+        ));
+    }
+
     /**
      * Do classification with a parsed model
      */
@@ -111,16 +311,159 @@ public class Model {
                 "Wrong input size for this model, expected %d, got %d", inputSize, input.length
         ));
 
+        if (getPrecision() == Precision.Float32) return classifyFloatBatch(input, 1);
+
+        final MetricsListener metrics = this.metrics;
+        final long start = (metrics != null) ? System.nanoTime() : 0L;
+        long bytes = 0;
+
         double[] iter = input;
-        for (Layer layer : layers) {
+        for (int k = 0; k < steps.length; k++) {
+            final Layer layer = steps[k];
+            final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
             final double[] next = new double[layer.getOutputSize()];
             layer.function.apply(
                     /* input   = */ iter,
                     /* weights = */ layer.data,
                     /*  output = */ next
             );
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Forward, stepIndices[k], layer, 1, System.nanoTime() - layerStart);
+                bytes += next.length * 8L;
+            }
             iter = next;
         }
+
+        if (metrics != null) {
+            metrics.onAllocation(steps.length, bytes);
+            metrics.onSamples(1, 0, System.nanoTime() - start);
+        }
+        return iter;
+    }
+
+    /**
+     * Do classification on a batch of samples.
+     * <p>
+     * Samples go through each layer together, so dense layers run as a matrix-matrix multiply
+     * and each weight row is loaded once per batch instead of once per sample.
+     *
+     * @param inputs    samples stored row-major, [batchSize][inputSize]
+     * @param batchSize sample count
+     * @return results stored row-major, [batchSize][outputSize]
+     */
+    public double[] classifyBatch(final double[] inputs, final int batchSize) throws MinRtException {
+        final int inputSize = getInputSize();
+        if (batchSize < 0 || inputs.length != (long) inputSize * batchSize) throw new MinRtException(String.format(
+                "Wrong input size for this model, expected %d * %d, got %d", batchSize, inputSize, inputs.length
+        ));
+
+        // The activations of each layer are one array for the whole batch
+        for (final Layer layer : steps) batchArraySize(layer.getOutputSize(), batchSize);
+
+        if (getPrecision() == Precision.Float32) return classifyFloatBatch(inputs, batchSize);
+
+        final MetricsListener metrics = this.metrics;
+        final long start = (metrics != null) ? System.nanoTime() : 0L;
+        long bytes = 0;
+
+        double[] iter = inputs;
+        for (int k = 0; k < steps.length; k++) {
+            final Layer layer = steps[k];
+            final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
+            final int outputSize = layer.getOutputSize();
+            final double[] next = new double[outputSize * batchSize];
+            layer.function.applyBatch(
+                    /*      input = */ iter, layer.getInputSize(),
+                    /*    weights = */ layer.data,
+                    /*     output = */ next, outputSize,
+                    /* batch size = */ batchSize
+            );
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Forward, stepIndices[k], layer, batchSize, System.nanoTime() - layerStart);
+                bytes += next.length * 8L;
+            }
+            iter = next;
+        }
+
+        if (metrics != null) {
+            metrics.onAllocation(steps.length, bytes);
+            metrics.onSamples(batchSize, 0, System.nanoTime() - start);
+        }
         return iter;
     }
+
+    /**
+     * Run a batch through Float32 layers, the activations are float arrays
+     */
+    private double[] classifyFloatBatch(final double[] inputs, final int batchSize) {
+        final MetricsListener metrics = this.metrics;
+        final long start = (metrics != null) ? System.nanoTime() : 0L;
+
+        float[] iter = new float[inputs.length];
+        for (int i = 0; i < iter.length; i++) iter[i] = (float) inputs[i];
+        long bytes = iter.length * 4L;
+
+        for (int k = 0; k < steps.length; k++) {
+            final Layer layer = steps[k];
+            final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
+            final int outputSize = layer.getOutputSize();
+            final float[] next = new float[outputSize * batchSize];
+            layer.function.applyBatch(
+                    /*      input = */ iter, layer.getInputSize(),
+                    /*    weights = */ layer.floatData,
+                    /*     output = */ next, outputSize,
+                    /* batch size = */ batchSize
+            );
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Forward, stepIndices[k], layer, batchSize, System.nanoTime() - layerStart);
+                bytes += next.length * 4L;
+            }
+            iter = next;
+        }
+
+        final double[] result = new double[iter.length];
+        for (int i = 0; i < result.length; i++) result[i] = iter[i];
+
+        if (metrics != null) {
+            metrics.onAllocation(steps.length + 2, bytes + result.length * 8L);
+            metrics.onSamples(batchSize, 0, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * Do classification on a batch of samples, see {@link #classifyBatch(double[], int)}
+     */
+    public double[][] classifyBatch(final double[][] inputs) throws MinRtException {
+        final int inputSize = getInputSize();
+        final int batchSize = inputs.length;
+
+        final double[] packed = new double[batchArraySize(inputSize, batchSize)];
+        for (int i = 0; i < batchSize; i++) {
+            if (inputs[i].length != inputSize) throw new MinRtException(String.format(
+                    "Wrong input size for sample %d, expected %d, got %d", i, inputSize, inputs[i].length
+            ));
+            System.arraycopy(inputs[i], 0, packed, i * inputSize, inputSize);
+        }
+
+        final double[] results = classifyBatch(packed, batchSize);
+
+        final int outputSize = getOutputSize();
+        final double[][] unpacked = new double[batchSize][outputSize];
+        for (int i = 0; i < batchSize; i++) {
+            System.arraycopy(results, i * outputSize, unpacked[i], 0, outputSize);
+        }
+        return unpacked;
+    }
+
+    /**
+     * Size of an array holding a value vector for each sample of a batch
+     */
+    private static int batchArraySize(final int size, final int batchSize) throws MinRtException {
+        final long length = (long) size * batchSize;
+        if (length > Integer.MAX_VALUE) throw new MinRtException(String.format(
+                "Batch is too large for this model, %d * %d values do not fit in an array", batchSize, size
+        ));
+        return (int) length;
+    }
 }
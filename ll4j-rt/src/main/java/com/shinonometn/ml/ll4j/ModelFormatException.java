@@ -0,0 +1,7 @@
+package com.shinonometn.ml.ll4j;
+
+public final class ModelFormatException extends MinRtException {
+    public ModelFormatException(String message) {
+        super(message);
+    }
+}
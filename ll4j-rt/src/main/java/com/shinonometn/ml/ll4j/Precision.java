@@ -0,0 +1,28 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Floating point precision of stored weights.
+ * <p>
+ * Codes are the same as the data type codes used by the IDX (MNIST) file format.
+ */
+public enum Precision {
+    /* 0x0D */ Float32("float (4 bytes)", 4, 0x0D),
+    /* 0x0E */ Float64("double (8 bytes)", 8, 0x0E);
+
+    public final String description;
+    public final int size;
+    public final int code;
+
+    Precision(final String description, final int size, final int code) {
+        this.description = description;
+        this.size = size;
+        this.code = code;
+    }
+
+    static Precision ofCode(final int code) {
+        for (final Precision precision : values()) {
+            if (precision.code == code) return precision;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.Iterator;
+
+/**
+ * Post-training int8 quantization of dense layers.
+ * <p>
+ * Each output row of a dense layer gets its own scale, so a row with small weights keeps its precision
+ * next to a row with large ones. The input of each dense layer is quantized with one scale, found by
+ * running calibration samples through the model and recording the largest input value of the layer.
+ * Calibration samples should look like the real inputs, a few hundred samples of the training set are enough.
+ * <p>
+ * Weights of a quantized layer take 1 byte instead of 8 (or 4 in {@link Precision#Float32} models).
+ */
+public final class Quantizer {
+    private Quantizer() {
+    }
+
+    private static final int Int8Max = 127;
+
+    //================================================================
+
+    /**
+     * Create a copy of the model with all dense layers quantized to int8.
+     * Other layers are shared, the result keeps the precision of the model.
+     *
+     * @param calibration calibration samples, all of them are consumed
+     */
+    public static Model quantize(final Model model, final Iterator<double[]> calibration) throws MinRtException {
+        final Layer[] layers = model.withPrecision(Precision.Float64).layers;
+        final double[] inputRanges = calibrate(layers, calibration);
+
+        final Layer[] result = new Layer[layers.length];
+        for (int k = 0; k < layers.length; k++) {
+            final Layer layer = layers[k];
+            result[k] = Layers.TYPE_DENSE.equals(layer.type) ? quantizeDense(layer, inputRanges[k]) : layer;
+        }
+        return new Model(result, model.metrics).withPrecision(model.getPrecision());
+    }
+
+    //================================================================
+
+    /**
+     * Run the samples through the model and find the largest absolute input value of each layer
+     */
+    private static double[] calibrate(final Layer[] layers, final Iterator<double[]> calibration) throws MinRtException {
+        final int inputSize = layers[0].getInputSize();
+        final double[] ranges = new double[layers.length];
+
+        int count = 0;
+        while (calibration.hasNext()) {
+            final double[] sample = calibration.next();
+            if (sample.length != inputSize) throw new MinRtException(String.format(
+                    "Wrong input size of calibration sample %d, expected %d, got %d", count, inputSize, sample.length
+            ));
+
+            double[] iter = sample;
+            for (int k = 0; k < layers.length; k++) {
+                final Layer layer = layers[k];
+                for (final double value : iter) ranges[k] = Math.max(ranges[k], Math.abs(value));
+
+                final double[] next = new double[layer.getOutputSize()];
+                layer.function.apply(iter, layer.data, next);
+                iter = next;
+            }
+            count++;
+        }
+
+        if (count == 0) throw new IllegalArgumentException("No calibration sample");
+        return ranges;
+    }
+
+    private static Layer quantizeDense(final Layer layer, final double inputRange) {
+        final int inputSize = layer.getInputSize();
+        final int outputSize = layer.getOutputSize();
+        final double[] data = layer.data;
+
+        // Biases are kept in full precision after the scales
+        final byte[] weights = new byte[inputSize * outputSize];
+        final double[] scales = new double[layer.hasBias() ? 2 * outputSize + 1 : outputSize + 1];
+        for (int o = 0; o < outputSize; o++) {
+            final int row = o * inputSize;
+
+            double range = 0;
+            for (int i = 0; i < inputSize; i++) range = Math.max(range, Math.abs(data[row + i]));
+            final double scale = scaleOf(range);
+
+            for (int i = 0; i < inputSize; i++) weights[row + i] = (byte) Math.round(data[row + i] / scale);
+            scales[o] = scale;
+        }
+        scales[outputSize] = scaleOf(inputRange);
+        if (layer.hasBias()) System.arraycopy(data, weights.length, scales, outputSize + 1, outputSize);
+
+        return Layers.quantizedDenseOutputMajor(inputSize, outputSize, weights, scales);
+    }
+
+    /* An all-zero row or input gets scale 1, any scale works for zeros */
+    private static double scaleOf(final double range) {
+        return (range == 0) ? 1 : range / Int8Max;
+    }
+}
@@ -0,0 +1,279 @@
+package com.shinonometn.ml.ll4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Read the text model format straight from a byte channel.
+ * <p>
+ * Tokens are located in a reusable byte buffer and numbers are parsed in place by {@link AsciiNumbers},
+ * dense weights go directly into the preallocated output-major array. No line or token strings are created,
+ * so the memory used while loading is about the size of the weights.
+ */
+final class TextModelReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] bytes = buffer.array();
+
+    private int position = 0;      // Next byte to read
+    private int limit = 0;         // End of valid bytes
+    private boolean eof = false;
+
+    private int tokenStart = 0;    // Current token, [tokenStart, tokenEnd)
+    private int tokenEnd = 0;
+
+    private int line = 1;          // Current line number, for error messages
+
+    // Whether the last dense layer had biases. Layers of a model usually all have biases or none,
+    // so arrays are sized like the last layer, and only copied when the guess is wrong.
+    private boolean biased = false;
+
+    TextModelReader(final ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    Model read() throws IOException, MinRtException {
+        final LinkedList<Layer> layers = new LinkedList<>();
+
+        while (true) {
+            // Ignore empty lines
+            while (!nextToken()) {
+                if (!nextLine()) return new Model(layers.toArray(new Layer[0]));
+            }
+
+            // Read the type first
+            final String type = AsciiNumbers.asString(bytes, tokenStart, tokenEnd);
+
+            // Get input count, the second field is always input count
+            final int inputCount = nextInt("input count");
+            Model.checkInputSize(layers, type, inputCount);
+
+            switch (type) {
+                case Layers.TYPE_DENSE: {
+                    final int outputCount = nextInt("output count");
+                    final int weightCount = checkWeightCount(type, inputCount, outputCount);
+
+                    // Text format is [input][output], transpose it to the output-major layout while reading
+                    final double[] data = new double[weightCount + (biased ? outputCount : 0)];
+                    int count = 0;
+                    for (int idxI = 0; idxI < inputCount; idxI++) {
+                        for (int idxO = 0; idxO < outputCount; idxO++) {
+                            if (!nextToken()) throw weightCountMismatch(inputCount, outputCount, count);
+                            data[idxO * inputCount + idxI] = parseDouble();
+                            count++;
+                        }
+                    }
+                    // The biases are optional, there should be nothing else left on this line
+                    final double[] values = readBiases(data, weightCount, inputCount, outputCount);
+
+                    layers.add(Layers.denseOutputMajor(inputCount, outputCount, values, ForwardFunction.Dense));
+                    break;
+                }
+
+                case Layers.TYPE_QUANTIZED_DENSE: {
+                    final int outputCount = nextInt("output count");
+                    final int weightCount = checkWeightCount(type, inputCount, outputCount);
+
+                    // Scales of each output and of the input come first, the biases go after them
+                    final double[] scales = new double[outputCount + 1 + (biased ? outputCount : 0)];
+                    for (int idxO = 0; idxO <= outputCount; idxO++) {
+                        if (!nextToken()) throw new ModelFormatException(String.format("Missing scale at line %d", line));
+                        scales[idxO] = parseDouble();
+                    }
+
+                    final byte[] data = new byte[weightCount];
+                    int count = 0;
+                    for (int idxI = 0; idxI < inputCount; idxI++) {
+                        for (int idxO = 0; idxO < outputCount; idxO++) {
+                            if (!nextToken()) throw weightCountMismatch(inputCount, outputCount, count);
+                            data[idxO * inputCount + idxI] = parseInt8();
+                            count++;
+                        }
+                    }
+                    final double[] values = readBiases(scales, outputCount + 1, inputCount, outputCount);
+
+                    layers.add(Layers.quantizedDenseOutputMajor(inputCount, outputCount, data, values));
+                    break;
+                }
+
+                case Layers.TYPE_LEAKY_RELU: {
+                    layers.add(Layers.leakyRelu(inputCount));
+                    break;
+                }
+
+                case Layers.TYPE_JUDGE: {
+                    layers.add(Layers.judge(inputCount));
+                    break;
+                }
+
+                default: {
+                    throw new UnsupportedLayerTypeException(type);
+                }
+            }
+
+            // Skip anything else on this line, like parseLayers does
+            while (nextToken()) ;
+            if (!nextLine()) return new Model(layers.toArray(new Layer[0]));
+        }
+    }
+
+    //================================================================
+
+    /**
+     * Find the next token on the current line.
+     *
+     * @return false if the line (or the input) ends before a token
+     */
+    private boolean nextToken() throws IOException {
+        // Skip separators
+        while (true) {
+            if (position >= limit && !fill(false)) return false;
+            final byte b = bytes[position];
+            if (b == '\n') return false;
+            if (b != ' ' && b != '\t' && b != '\r') break;
+            position++;
+        }
+
+        tokenStart = position;
+        while (true) {
+            // The token may cross the end of buffer, fill() keeps it
+            if (position >= limit && !fill(true)) break;
+            final byte b = bytes[position];
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') break;
+            position++;
+        }
+        tokenEnd = position;
+        return true;
+    }
+
+    /**
+     * Move to the start of the next line
+     *
+     * @return false if there is no more input
+     */
+    private boolean nextLine() throws IOException {
+        while (true) {
+            if (position >= limit && !fill(false)) return false;
+            if (bytes[position++] == '\n') {
+                line++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Read more bytes. If a token is being scanned, it is moved to the start of buffer first.
+     *
+     * @return false if there is no more input
+     */
+    private boolean fill(final boolean keepToken) throws IOException {
+        if (eof) return false;
+
+        int keep = 0;
+        if (keepToken) {
+            keep = limit - tokenStart;
+            if (keep >= bytes.length) throw new IOException("Token too long at line " + line);
+            System.arraycopy(bytes, tokenStart, bytes, 0, keep);
+            tokenStart = 0;
+        }
+        position = keep;
+        limit = keep;
+
+        buffer.clear();
+        buffer.position(keep);
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit = buffer.position();
+        return true;
+    }
+
+    private int nextInt(final String name) throws IOException, MinRtException {
+        if (!nextToken()) throw new ModelFormatException(String.format("Missing %s at line %d", name, line));
+        try {
+            return AsciiNumbers.parseInt(bytes, tokenStart, tokenEnd);
+        } catch (NumberFormatException e) {
+            throw new ModelFormatException(String.format("Bad %s at line %d: %s", name, line, e.getMessage()));
+        }
+    }
+
+    private double parseDouble() throws MinRtException {
+        try {
+            return AsciiNumbers.parseDouble(bytes, tokenStart, tokenEnd);
+        } catch (NumberFormatException e) {
+            throw new ModelFormatException(String.format("Bad weight at line %d: %s", line, e.getMessage()));
+        }
+    }
+
+    private byte parseInt8() throws MinRtException {
+        final int value;
+        try {
+            value = AsciiNumbers.parseInt(bytes, tokenStart, tokenEnd);
+        } catch (NumberFormatException e) {
+            throw new ModelFormatException(String.format("Bad weight at line %d: %s", line, e.getMessage()));
+        }
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) throw new ModelFormatException(String.format(
+                "Bad weight at line %d: %d is out of int8 range", line, value
+        ));
+        return (byte) value;
+    }
+
+    /**
+     * Read the rest of a dense line, which is empty or the bias of each output, into the values from offset on.
+     * The values are sized like the last dense layer, see {@link #biased}.
+     *
+     * @param values weights or scales of the layer, then room for the biases if the last layer had them
+     * @param offset count of the weights or scales
+     * @return the values, copied only if the room for the biases was wrong
+     */
+    private double[] readBiases(final double[] values, final int offset, final int inputCount, final int outputCount)
+            throws IOException, MinRtException {
+        biased = nextToken();
+        final int length = biased ? offset + outputCount : offset;
+        final double[] result = (values.length == length) ? values : Arrays.copyOf(values, length);
+        if (!biased) return result;
+
+        int count = 0;
+        do {
+            if (count < outputCount) result[offset + count] = parseDouble();
+            count++;
+        } while (nextToken());
+        if (count != outputCount) throw weightCountMismatch(inputCount, outputCount, inputCount * outputCount + count);
+        return result;
+    }
+
+    /**
+     * Check the sizes of a dense layer before anything is allocated, they come straight from the file
+     *
+     * @return count of the weights
+     */
+    private int checkWeightCount(final String type, final int inputCount, final int outputCount) throws MinRtException {
+        if (inputCount <= 0 || outputCount <= 0) throw new ModelFormatException(String.format(
+                "Sizes of layer %s should be positive at line %d, got %d * %d", type, line, inputCount, outputCount
+        ));
+        // Room for the biases too
+        final long count = (long) inputCount * outputCount;
+        if (count + outputCount > Integer.MAX_VALUE) throw new ModelFormatException(String.format(
+                "Layer %s is too large at line %d: %d * %d", type, line, inputCount, outputCount
+        ));
+        return (int) count;
+    }
+
+    private ModelFormatException weightCountMismatch(final int inputCount, final int outputCount, final int count) {
+        return new ModelFormatException(String.format(
+                "Size of the weight array is not equals to the capacity at line %d. (%d * %d (+ %d) != %d)",
+                line, inputCount, outputCount, outputCount, count
+        ));
+    }
+}
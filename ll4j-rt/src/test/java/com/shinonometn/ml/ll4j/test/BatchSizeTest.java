@@ -0,0 +1,42 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.MinRtException;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.Precision;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestModels.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that batches whose activations do not fit in an array are rejected before any work is done
+ */
+public class BatchSizeTest {
+    // Times 65536 values, it is just past Integer.MAX_VALUE
+    private final static int HugeBatchSize = 32769;
+
+    @Test
+    public void wideOutputsAreRejected() throws Exception {
+        // One input widened to 65536 outputs, the inputs are small but the outputs are not
+        final Model model = createModel(new Random(1), 1, 1 << 16);
+        final double[] inputs = new double[HugeBatchSize];
+        assertThrows(MinRtException.class, () -> model.classifyBatch(inputs, HugeBatchSize));
+        final Model floatModel = model.withPrecision(Precision.Float32);
+        assertThrows(MinRtException.class, () -> floatModel.classifyBatch(inputs, HugeBatchSize));
+    }
+
+    @Test
+    public void wideInputsAreRejected() throws Exception {
+        // The same sample many times, only the packed batch would be huge
+        final Model model = createModel(new Random(2), 1 << 16, 1);
+        final double[][] samples = new double[HugeBatchSize][];
+        Arrays.fill(samples, new double[1 << 16]);
+        assertThrows(MinRtException.class, () -> model.classifyBatch(samples));
+
+        // A batch that fits still works
+        assertEquals(2, model.classifyBatch(Arrays.copyOf(samples, 2)).length);
+    }
+}
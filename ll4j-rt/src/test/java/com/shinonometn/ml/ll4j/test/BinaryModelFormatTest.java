@@ -0,0 +1,63 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.BinaryModelFormat;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.ModelFormatException;
+import com.shinonometn.ml.ll4j.Precision;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that broken layer headers are reported as format errors
+ */
+public class BinaryModelFormatTest {
+    // Offsets in the header of the first layer
+    private final static int InputCount = 20;
+    private final static int OutputCount = 24;
+    private final static int Length = 28;
+
+    private static ByteBuffer writeModel() throws Exception {
+        final Model model = Model.parseLayers(new String[]{"D 2 2 1 2 3 4", "L 2", "J 2"});
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryModelFormat.write(model, Channels.newChannel(bytes), Precision.Float64);
+        return ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void validModelIsRead() throws Exception {
+        final Model model = BinaryModelFormat.read(writeModel());
+        assertEquals(2, model.getInputSize());
+        assertEquals(3, model.getLayers().size());
+    }
+
+    @Test
+    public void negativeCountsAreRejected() throws Exception {
+        for (final int offset : new int[]{InputCount, OutputCount, Length}) {
+            final ByteBuffer buffer = writeModel();
+            buffer.putInt(offset, -1);
+            assertThrows(ModelFormatException.class, () -> BinaryModelFormat.read(buffer), "Offset " + offset);
+        }
+    }
+
+    @Test
+    public void hugeCountsAreRejected() throws Exception {
+        // 2^30 Float64 values is 2^33 bytes, the block size overflows int
+        final ByteBuffer buffer = writeModel();
+        buffer.putInt(InputCount, 1 << 15);
+        buffer.putInt(OutputCount, 1 << 15);
+        buffer.putInt(Length, 1 << 30);
+        assertThrows(ModelFormatException.class, () -> BinaryModelFormat.read(buffer));
+
+        // Counts whose product overflows int
+        final ByteBuffer product = writeModel();
+        product.putInt(InputCount, 1 << 16);
+        product.putInt(OutputCount, 1 << 16);
+        assertThrows(ModelFormatException.class, () -> BinaryModelFormat.read(product));
+    }
+}
@@ -0,0 +1,121 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.ExecutionPolicy;
+import com.shinonometn.ml.ll4j.InferenceSession;
+import com.shinonometn.ml.ll4j.Model;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.shinonometn.ml.ll4j.test.TestModels.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammer one frozen model from a large thread pool, and compare every result with the single-threaded output.
+ */
+public class ConcurrentClassificationTest {
+    private final static int ThreadCount = 256;
+    private final static int SampleCount = 64;
+    private final static int Rounds = 2;
+
+    @Test
+    public void frozenModelGivesSameResultsOnManyThreads() throws Exception {
+        final Random random = new Random(42);
+        final Model model = createModel(random, 784, 100, 100, 10).freeze();
+        assertTrue(model.isFrozen());
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Small threshold, so the kernels of the pinned model really split
+            final Model pinned = model.withExecutionPolicy(ExecutionPolicy.pinned(pool, 1024));
+            hammer(model, random);
+            hammer(pinned, random);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void frozenModelDoesNotExposeWeights() throws Exception {
+        final Random random = new Random(7);
+        final Model model = createModel(random, 784, 100, 100, 10);
+        final Model frozen = model.freeze();
+
+        final double[] sample = new double[784];
+        for (int i = 0; i < sample.length; i++) sample[i] = random.nextDouble();
+        final double[] expected = frozen.classification(sample);
+
+        // Neither the origin model nor the data handed out by the frozen one is shared
+        model.getLayers().get(0).getData()[0] += 100;
+        frozen.getLayers().get(0).getData()[1] += 100;
+
+        assertTrue(frozen.getLayers().get(0).isFrozen());
+        assertArrayEquals(expected, frozen.classification(sample));
+    }
+
+    private static void hammer(final Model model, final Random random) throws Exception {
+        final double[][] samples = new double[SampleCount][model.getInputSize()];
+        for (final double[] sample : samples) {
+            for (int i = 0; i < sample.length; i++) sample[i] = random.nextDouble();
+        }
+
+        // Single-threaded reference
+        final double[][] expected = new double[SampleCount][];
+        for (int i = 0; i < SampleCount; i++) expected[i] = model.classification(samples[i]);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(ThreadCount);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger mismatches = new AtomicInteger(0);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < ThreadCount; t++) {
+                final int offset = t;
+                futures.add(executor.submit(() -> {
+                    final InferenceSession session = model.newSession();
+                    final double[] output = new double[model.getOutputSize()];
+                    start.await();
+
+                    for (int r = 0; r < Rounds; r++) {
+                        for (int i = 0; i < SampleCount; i++) {
+                            final int index = (i + offset) % SampleCount;
+                            final double[] result;
+                            switch ((index + r) % 3) {
+                                case 0:
+                                    result = model.classification(samples[index]);
+                                    break;
+                                case 1:
+                                    session.classifyInto(samples[index], output);
+                                    result = output;
+                                    break;
+                                default:
+                                    result = model.classifyBatch(new double[][]{samples[index]})[0];
+                                    break;
+                            }
+                            if (!Arrays.equals(expected[index], result)) mismatches.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (final Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        assertEquals(0, mismatches.get(), "Concurrent results differ from the single-threaded output");
+    }
+}
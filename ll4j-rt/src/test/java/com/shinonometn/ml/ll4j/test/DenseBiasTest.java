@@ -0,0 +1,242 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.BinaryModelFormat;
+import com.shinonometn.ml.ll4j.InferenceSession;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.MinRtException;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.Precision;
+import com.shinonometn.ml.ll4j.Quantizer;
+import huzpsb.ll4j.minrt.Compiler;
+import huzpsb.ll4j.minrt.MinRt;
+import huzpsb.ll4j.minrt.MinRtProgram;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check dense layers with bias in all formats, MinRt included,
+ * and the fused Dense + LeakyRelu kernels against a plain computation.
+ */
+public class DenseBiasTest {
+    private final static int SampleCount = 64;
+    private final static int[] Sizes = {64, 30, 10};
+
+    /** Weights in [input][output] order followed by the biases, same as the text format */
+    private static double[][] createWeights(final Random random) {
+        final double[][] weights = new double[Sizes.length - 1][];
+        for (int k = 0; k < weights.length; k++) {
+            final int input = Sizes[k], output = Sizes[k + 1];
+            weights[k] = new double[input * output + output];
+            for (int i = 0; i < weights[k].length; i++) weights[k][i] = random.nextGaussian() / Math.sqrt(input);
+        }
+        return weights;
+    }
+
+    // The judge layer is left out so whole output vectors are compared
+    private static String[] toText(final double[][] weights, final boolean bias) {
+        final List<String> lines = new ArrayList<>();
+        for (int k = 0; k < weights.length; k++) {
+            final int input = Sizes[k], output = Sizes[k + 1];
+            final StringBuilder builder = new StringBuilder();
+            builder.append("D ").append(input).append(" ").append(output);
+            final int count = bias ? weights[k].length : input * output;
+            for (int i = 0; i < count; i++) builder.append(" ").append(weights[k][i]);
+            lines.add(builder.toString());
+            if (k + 1 < weights.length) lines.add("L " + output);
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /** The model computed one value at a time */
+    private static double[] classifyPlainly(final double[][] weights, final double[] sample) {
+        double[] iter = sample;
+        for (int k = 0; k < weights.length; k++) {
+            final int input = Sizes[k], output = Sizes[k + 1];
+            final double[] next = new double[output];
+            for (int o = 0; o < output; o++) {
+                double sum = 0;
+                for (int i = 0; i < input; i++) sum += iter[i] * weights[k][i * output + o];
+                sum += weights[k][input * output + o];
+                if (k + 1 < weights.length) sum = (sum > 0) ? sum : (sum < 0) ? sum * 0.01 : Double.MIN_NORMAL;
+                next[o] = sum;
+            }
+            iter = next;
+        }
+        return iter;
+    }
+
+    private static double[] createInputs(final Random random) {
+        final double[] inputs = new double[Sizes[0] * SampleCount];
+        for (int i = 0; i < inputs.length; i++) inputs[i] = random.nextGaussian();
+        return inputs;
+    }
+
+    private static void assertClose(final double[] expected, final double[] actual, final double tolerance) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], tolerance * Math.max(1, Math.abs(expected[i])), "Value " + i);
+        }
+    }
+
+    @Test
+    public void fusedKernelsAddBiasAndActivation() throws Exception {
+        final Random random = new Random(42);
+        final double[][] weights = createWeights(random);
+        final Model model = Model.parseLayers(toText(weights, true));
+        assertTrue(model.getLayers().get(0).hasBias());
+        assertFalse(model.getLayers().get(1).hasBias());
+
+        final int inputSize = model.getInputSize();
+        final int outputSize = model.getOutputSize();
+        final double[] inputs = createInputs(random);
+        final double[] batch = model.classifyBatch(inputs, SampleCount);
+        final double[] floatBatch = model.withPrecision(Precision.Float32).classifyBatch(inputs, SampleCount);
+
+        final InferenceSession session = model.newSession();
+        final double[] input = new double[inputSize];
+        final double[] output = new double[outputSize];
+        for (int idxS = 0; idxS < SampleCount; idxS++) {
+            System.arraycopy(inputs, idxS * inputSize, input, 0, inputSize);
+            final double[] expected = classifyPlainly(weights, input);
+
+            final double[] fromBatch = new double[outputSize];
+            System.arraycopy(batch, idxS * outputSize, fromBatch, 0, outputSize);
+            assertClose(expected, fromBatch, 1e-9);
+            assertClose(expected, model.classification(input), 1e-9);
+
+            session.classifyInto(input, output);
+            assertArrayEquals(model.classification(input), output);
+
+            final double[] fromFloatBatch = new double[outputSize];
+            System.arraycopy(floatBatch, idxS * outputSize, fromFloatBatch, 0, outputSize);
+            assertClose(expected, fromFloatBatch, 1e-3);
+        }
+    }
+
+    @Test
+    public void biasSurvivesAllFormats() throws Exception {
+        final Random random = new Random(7);
+        final String[] text = toText(createWeights(random), true);
+        final Model model = Model.parseLayers(text);
+        final double[] inputs = createInputs(random);
+        final double[] expected = model.classifyBatch(inputs, SampleCount);
+
+        final byte[] textBytes = String.join("\n", text).getBytes(StandardCharsets.US_ASCII);
+        final Model streamed = Model.parse(new ByteArrayInputStream(textBytes));
+        assertArrayEquals(expected, streamed.classifyBatch(inputs, SampleCount));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryModelFormat.write(model, Channels.newChannel(bytes), Precision.Float64);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(BinaryModelFormat.VERSION, buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+        final Model loaded = BinaryModelFormat.read(buffer);
+        assertTrue(loaded.getLayers().get(0).hasBias());
+        assertArrayEquals(expected, loaded.classifyBatch(inputs, SampleCount));
+    }
+
+    @Test
+    public void modelsWithoutBiasKeepTheFirstBinaryVersion() throws Exception {
+        final Random random = new Random(3);
+        final Model model = Model.parseLayers(toText(createWeights(random), false));
+        for (final Layer layer : model.getLayers()) assertFalse(layer.hasBias());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryModelFormat.write(model, Channels.newChannel(bytes), Precision.Float64);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(1, buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(4));
+
+        final double[] inputs = createInputs(random);
+        assertArrayEquals(model.classifyBatch(inputs, SampleCount), BinaryModelFormat.read(buffer).classifyBatch(inputs, SampleCount));
+    }
+
+    @Test
+    public void quantizedLayersKeepTheBias() throws Exception {
+        final Random random = new Random(11);
+        final Model model = Model.parseLayers(toText(createWeights(random), true));
+        final double[] inputs = createInputs(random);
+
+        final List<double[]> calibration = new ArrayList<>();
+        for (int idxS = 0; idxS < SampleCount; idxS++) {
+            final double[] sample = new double[model.getInputSize()];
+            System.arraycopy(inputs, idxS * sample.length, sample, 0, sample.length);
+            calibration.add(sample);
+        }
+        final Model quantized = Quantizer.quantize(model, calibration.iterator());
+        assertTrue(quantized.getLayers().get(0).hasBias());
+
+        final double[] expected = model.classifyBatch(inputs, SampleCount);
+        final double[] actual = quantized.classifyBatch(inputs, SampleCount);
+        double error = 0, scale = 0;
+        for (int i = 0; i < expected.length; i++) {
+            error = Math.max(error, Math.abs(expected[i] - actual[i]));
+            scale = Math.max(scale, Math.abs(expected[i]));
+        }
+        assertTrue(error < scale * 0.05, "Max error " + error + " of " + scale);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryModelFormat.write(quantized, Channels.newChannel(bytes), Precision.Float64);
+        final Model loaded = BinaryModelFormat.read(ByteBuffer.wrap(bytes.toByteArray()));
+        assertArrayEquals(actual, loaded.classifyBatch(inputs, SampleCount));
+    }
+
+    @Test
+    public void minRtReadsTheBias() throws Exception {
+        final Random random = new Random(13);
+        final double[][] weights = createWeights(random);
+        final List<String> lines = new ArrayList<>(Arrays.asList(toText(weights, true)));
+        lines.add("J " + Sizes[Sizes.length - 1]);
+        final String[] script = lines.toArray(new String[0]);
+        final MinRtProgram program = MinRt.compile(script);
+
+        final double[] inputs = createInputs(random);
+        final double[] input = new double[Sizes[0]];
+        for (int idxS = 0; idxS < SampleCount; idxS++) {
+            System.arraycopy(inputs, idxS * input.length, input, 0, input.length);
+            final double[] expected = classifyPlainly(weights, input);
+            int best = 0;
+            for (int i = 1; i < expected.length; i++) if (expected[i] > expected[best]) best = i;
+            assertEquals(best, MinRt.doAi(input, script), "Sample " + idxS);
+            assertEquals(best, program.doAi(input), "Sample " + idxS);
+        }
+
+        // The generated C adds the bias of each output
+        final Path from = Files.createTempFile("ll4j-minrt-", ".model");
+        final Path to = Files.createTempFile("ll4j-minrt-", ".c");
+        try {
+            Files.write(from, Arrays.asList("D 2 1 1 2 0.5", "J 1"));
+            Compiler.compile(from.toString(), to.toString());
+            final String code = new String(Files.readAllBytes(to), StandardCharsets.US_ASCII);
+            assertTrue(code.contains("l1[0] = l0[0] * 1 + l0[1] * 2 + 0.5;"), code);
+        } finally {
+            Files.delete(from);
+            Files.delete(to);
+        }
+
+        final String[] wrong = {"D 2 2 1 2 3 4 5", "J 2"};
+        assertThrows(RuntimeException.class, () -> MinRt.compile(wrong));
+        assertThrows(RuntimeException.class, () -> MinRt.doAi(new double[2], wrong));
+    }
+
+    @Test
+    public void wrongValueCountIsRejected() {
+        final String line = "D 2 2 1 2 3 4 5";
+        assertThrows(IllegalArgumentException.class, () -> Model.parseLayers(new String[]{line}));
+        assertThrows(MinRtException.class, () -> Model.parse(new ByteArrayInputStream(
+                line.getBytes(StandardCharsets.US_ASCII)
+        )));
+    }
+}
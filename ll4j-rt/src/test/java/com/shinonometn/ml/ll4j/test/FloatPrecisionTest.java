@@ -0,0 +1,88 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.BinaryModelFormat;
+import com.shinonometn.ml.ll4j.InferenceSession;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.Precision;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestModels.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare Float32 models with the Float64 models they are converted from.
+ */
+public class FloatPrecisionTest {
+    private final static int SampleCount = 256;
+
+    @Test
+    public void floatModelIsCloseToDoubleModel() throws Exception {
+        final Random random = new Random(42);
+        final Model model = createModel(random, 784, 100, 100, 10);
+        final Model floatModel = model.withPrecision(Precision.Float32);
+        assertEquals(Precision.Float64, model.getPrecision());
+        assertEquals(Precision.Float32, floatModel.getPrecision());
+        for (final Layer layer : floatModel.getLayers()) assertEquals(Precision.Float32, layer.getPrecision());
+
+        final double[] inputs = createInputs(random, model.getInputSize(), SampleCount);
+        final double[] expected = model.classifyBatch(inputs, SampleCount);
+        final double[] actual = floatModel.classifyBatch(inputs, SampleCount);
+
+        double scale = 0;
+        for (final double value : expected) scale = Math.max(scale, Math.abs(value));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], scale * 1e-4, "Output " + i);
+        }
+    }
+
+    @Test
+    public void floatPathsGiveSameResults() throws Exception {
+        final Random random = new Random(7);
+        final Model floatModel = createModel(random, 784, 100, 100, 10).withPrecision(Precision.Float32);
+        final int inputSize = floatModel.getInputSize();
+        final int outputSize = floatModel.getOutputSize();
+
+        final double[] inputs = createInputs(random, inputSize, SampleCount);
+        final double[] batch = floatModel.classifyBatch(inputs, SampleCount);
+
+        final InferenceSession session = floatModel.newSession();
+        final double[] input = new double[inputSize];
+        final double[] output = new double[outputSize];
+        for (int s = 0; s < SampleCount; s++) {
+            System.arraycopy(inputs, s * inputSize, input, 0, inputSize);
+
+            session.classifyInto(input, output);
+            final double[] single = floatModel.classification(input);
+            for (int o = 0; o < outputSize; o++) {
+                assertEquals(batch[s * outputSize + o], output[o], "Session output " + o + " of sample " + s);
+                assertEquals(batch[s * outputSize + o], single[o], "Single output " + o + " of sample " + s);
+            }
+        }
+    }
+
+    @Test
+    public void floatModelSurvivesBinaryFormat() throws Exception {
+        final Random random = new Random(3);
+        final Model floatModel = createModel(random, 784, 100, 100, 10).withPrecision(Precision.Float32);
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryModelFormat.write(floatModel, Channels.newChannel(output), Precision.Float32);
+        final Model loaded = BinaryModelFormat.read(ByteBuffer.wrap(output.toByteArray()), Precision.Float32);
+
+        assertEquals(Precision.Float32, loaded.getPrecision());
+        for (int k = 0; k < floatModel.getLayers().size(); k++) {
+            assertArrayEquals(floatModel.getLayers().get(k).getData(), loaded.getLayers().get(k).getData());
+        }
+
+        // Widening back keeps the float values
+        final Model wide = loaded.withPrecision(Precision.Float64);
+        assertEquals(Precision.Float64, wide.getPrecision());
+        assertArrayEquals(loaded.getLayers().get(0).getData(), wide.getLayers().get(0).getData());
+    }
+}
@@ -0,0 +1,129 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.InferenceSession;
+import com.shinonometn.ml.ll4j.LatencyHistogram;
+import com.shinonometn.ml.ll4j.MetricsListener.Phase;
+import com.shinonometn.ml.ll4j.MetricsRecorder;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.Precision;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestModels.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the events of the metrics listener, and that models give the same results with or without it.
+ */
+public class MetricsTest {
+    private final static int SampleCount = 64;
+
+    @Test
+    public void metricsDoNotChangeResults() throws Exception {
+        final Random random = new Random(42);
+        final Model model = createModel(random, 64, 32, 10);
+        final Model measured = model.withMetrics(new MetricsRecorder());
+        assertNull(model.getMetrics());
+        assertNotNull(measured.getMetrics());
+
+        final double[] inputs = createInputs(random, model.getInputSize(), SampleCount);
+        assertArrayEquals(model.classifyBatch(inputs, SampleCount), measured.classifyBatch(inputs, SampleCount));
+
+        final Model floatModel = model.withPrecision(Precision.Float32);
+        final Model floatMeasured = measured.withPrecision(Precision.Float32);
+        assertSame(measured.getMetrics(), floatMeasured.getMetrics());
+        assertArrayEquals(floatModel.classifyBatch(inputs, SampleCount), floatMeasured.classifyBatch(inputs, SampleCount));
+    }
+
+    @Test
+    public void recorderSeesEveryLayer() throws Exception {
+        final Random random = new Random(7);
+        final MetricsRecorder recorder = new MetricsRecorder();
+        final Model model = createModel(random, 64, 32, 10).withMetrics(recorder);
+        final int inputSize = model.getInputSize();
+        // The LeakyRelu runs fused into the dense layer before it, and is reported with it
+        final int[] steps = {0, 2};
+
+        final double[] inputs = createInputs(random, inputSize, SampleCount);
+        model.classifyBatch(inputs, SampleCount);
+        assertEquals(SampleCount, recorder.getSampleCount());
+        assertEquals(1, recorder.getCallHistogram().getCount());
+        assertTrue(recorder.getAllocatedArrays() >= steps.length);
+        for (final int k : steps) {
+            assertEquals(1, recorder.getLayerHistogram(Phase.Forward, k).getCount(), "Layer " + k);
+        }
+        assertNull(recorder.getLayerHistogram(Phase.Forward, 1));
+        assertNull(recorder.getLayerHistogram(Phase.Backward, 0));
+        assertEquals(steps.length, recorder.getLayerLatencies().length);
+
+        // Sessions reuse their buffers, nothing is allocated
+        recorder.reset();
+        final InferenceSession session = model.newSession();
+        final double[] input = new double[inputSize];
+        final double[] output = new double[model.getOutputSize()];
+        for (int idxS = 0; idxS < SampleCount; idxS++) {
+            System.arraycopy(inputs, idxS * inputSize, input, 0, inputSize);
+            session.classifyInto(input, output);
+        }
+        assertEquals(SampleCount, recorder.getSampleCount());
+        assertEquals(0, recorder.getCorrectCount());
+        assertEquals(0, recorder.getAllocatedArrays());
+        for (final int k : steps) {
+            assertEquals(SampleCount, recorder.getLayerHistogram(Phase.Forward, k).getCount(), "Layer " + k);
+        }
+    }
+
+    @Test
+    public void recorderReportsQueueDepths() {
+        final MetricsRecorder recorder = new MetricsRecorder();
+        assertEquals(-1, recorder.getQueueDepth("loader"));
+        recorder.onQueueDepth("loader", 5);
+        recorder.onQueueDepth("loader", 2);
+        recorder.onQueueDepth("loader", 9);
+        assertEquals(9, recorder.getQueueDepth("loader"));
+        assertEquals(Integer.valueOf(9), recorder.getQueueDepths().get("loader"));
+        assertEquals(Integer.valueOf(2), recorder.getMinQueueDepths().get("loader"));
+    }
+
+    @Test
+    public void recorderIsReadableInJmx() throws Exception {
+        final MetricsRecorder recorder = new MetricsRecorder();
+        final ObjectName name = recorder.register("MetricsTest");
+        try {
+            recorder.onSamples(10, 7, 1000);
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(10L, server.getAttribute(name, "SampleCount"));
+            assertEquals(7L, server.getAttribute(name, "CorrectCount"));
+            assertThrows(IllegalStateException.class, () -> new MetricsRecorder().register("MetricsTest"));
+        } finally {
+            recorder.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void histogramPercentilesAreBounded() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(50));
+        for (long value = 1; value <= 1000; value++) histogram.record(value * 1000);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_500, histogram.getMeanNanos(), 1e-9);
+
+        // Each value is in a bucket at most 25% wider than itself
+        final long p50 = histogram.getPercentileNanos(50);
+        final long p99 = histogram.getPercentileNanos(99);
+        assertTrue(p50 >= 500_000 && p50 <= 625_000, "p50 = " + p50);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 = " + p99);
+        assertEquals(1_000_000, histogram.getPercentileNanos(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+}
@@ -0,0 +1,151 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.BinaryModelFormat;
+import com.shinonometn.ml.ll4j.InferenceSession;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.Layers;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.Precision;
+import com.shinonometn.ml.ll4j.Quantizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestModels.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare int8 quantized models with the models they are quantized from.
+ */
+public class QuantizationTest {
+    private final static int SampleCount = 256;
+
+    private static List<double[]> createSamples(final Random random, final int inputSize) {
+        final double[] inputs = createInputs(random, inputSize, SampleCount);
+        final List<double[]> samples = new ArrayList<>();
+        for (int s = 0; s < SampleCount; s++) samples.add(Arrays.copyOfRange(inputs, s * inputSize, (s + 1) * inputSize));
+        return samples;
+    }
+
+    private static double[] pack(final List<double[]> samples, final int inputSize) {
+        final double[] packed = new double[samples.size() * inputSize];
+        for (int s = 0; s < samples.size(); s++) System.arraycopy(samples.get(s), 0, packed, s * inputSize, inputSize);
+        return packed;
+    }
+
+    @Test
+    public void quantizedModelIsCloseToDoubleModel() throws Exception {
+        final Random random = new Random(42);
+        final Model model = createModel(random, 784, 100, 10);
+        final List<double[]> samples = createSamples(random, model.getInputSize());
+
+        final Model quantized = Quantizer.quantize(model, samples.subList(0, 64).iterator());
+        assertEquals(Precision.Float64, quantized.getPrecision());
+
+        long bytes = 0, quantizedBytes = 0;
+        for (int k = 0; k < model.getLayers().size(); k++) {
+            final Layer layer = model.getLayers().get(k);
+            final Layer quantizedLayer = quantized.getLayers().get(k);
+            if (Layers.TYPE_DENSE.equals(layer.type)) {
+                assertEquals(Layers.TYPE_QUANTIZED_DENSE, quantizedLayer.type);
+                assertTrue(quantizedLayer.isQuantized());
+            }
+            bytes += layer.getWeightBytes();
+            quantizedBytes += quantizedLayer.getWeightBytes();
+        }
+        // Scales add a little to the int8 weights
+        assertTrue(quantizedBytes * 7 < bytes, quantizedBytes + " bytes against " + bytes);
+
+        final double[] inputs = pack(samples, model.getInputSize());
+        final double[] expected = model.classifyBatch(inputs, SampleCount);
+        final double[] actual = quantized.classifyBatch(inputs, SampleCount);
+
+        double scale = 0;
+        for (final double value : expected) scale = Math.max(scale, Math.abs(value));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], scale * 0.05, "Output " + i);
+        }
+    }
+
+    @Test
+    public void quantizedPathsGiveSameResults() throws Exception {
+        final Random random = new Random(7);
+        final Model model = createModel(random, 784, 100, 10);
+        final List<double[]> samples = createSamples(random, model.getInputSize());
+
+        for (final Precision precision : Precision.values()) {
+            final Model quantized = Quantizer.quantize(model.withPrecision(precision), samples.iterator());
+            assertEquals(precision, quantized.getPrecision());
+
+            final int inputSize = quantized.getInputSize();
+            final int outputSize = quantized.getOutputSize();
+            final double[] batch = quantized.classifyBatch(pack(samples, inputSize), SampleCount);
+
+            final InferenceSession session = quantized.newSession();
+            final double[] output = new double[outputSize];
+            for (int s = 0; s < SampleCount; s++) {
+                session.classifyInto(samples.get(s), output);
+                final double[] single = quantized.classification(samples.get(s));
+                for (int o = 0; o < outputSize; o++) {
+                    assertEquals(batch[s * outputSize + o], output[o], "Session output " + o + " of sample " + s);
+                    assertEquals(batch[s * outputSize + o], single[o], "Single output " + o + " of sample " + s);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void quantizedModelSurvivesBinaryFormat() throws Exception {
+        final Random random = new Random(3);
+        final Model model = createModel(random, 784, 100, 10);
+        final List<double[]> samples = createSamples(random, model.getInputSize());
+        final Model quantized = Quantizer.quantize(model, samples.iterator());
+        final double[] inputs = pack(samples, model.getInputSize());
+        final double[] expected = quantized.classifyBatch(inputs, SampleCount);
+
+        for (final Precision precision : Precision.values()) {
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            BinaryModelFormat.write(quantized, Channels.newChannel(output), precision);
+            final Model loaded = BinaryModelFormat.read(ByteBuffer.wrap(output.toByteArray()));
+
+            for (int k = 0; k < quantized.getLayers().size(); k++) {
+                assertEquals(quantized.getLayers().get(k).type, loaded.getLayers().get(k).type);
+            }
+            // Float32 scales round the results a little
+            final double[] actual = loaded.classifyBatch(inputs, SampleCount);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i], Math.abs(expected[i]) * 1e-6, "Output " + i);
+            }
+        }
+    }
+
+    @Test
+    public void textParsersReadQuantizedLayers() throws Exception {
+        // Output 0 scale 0.5, output 1 scale 0.25, input scale 0.1, weights in [input][output] order
+        final String[] lines = {"Q 2 2 0.5 0.25 0.1 10 -20 30 40", "L 2"};
+        final double[] input = {1.0, -0.5};
+        // Input is quantized to {10, -5}, both sums are negative and go through the leaky slope
+        final double[] expected = {
+                (10 * 10 + -5 * 30) * (0.1 * 0.5) * 0.01,
+                (10 * -20 + -5 * 40) * (0.1 * 0.25) * 0.01
+        };
+
+        final Model parsed = Model.parseLayers(lines);
+        final Model read = Model.parse(new ByteArrayInputStream(
+                String.join("\n", lines).getBytes(StandardCharsets.US_ASCII)
+        ));
+        for (final Model model : new Model[]{parsed, read}) {
+            assertEquals(Layers.TYPE_QUANTIZED_DENSE, model.getLayers().get(0).type);
+            assertEquals(4, model.getLayers().get(0).getWeightCount());
+            assertArrayEquals(expected, model.classification(input), 1e-12);
+        }
+    }
+}
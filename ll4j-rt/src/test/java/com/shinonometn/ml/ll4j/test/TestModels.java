@@ -0,0 +1,43 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.Model;
+
+import java.util.Random;
+
+/**
+ * Random models and inputs shared by the tests
+ */
+final class TestModels {
+    private TestModels() {
+    }
+
+    /** A dense layer line of the text format with random weights */
+    static String denseLayer(final Random random, final int input, final int output) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("D ").append(input).append(" ").append(output);
+        for (int i = 0; i < input * output; i++) {
+            builder.append(" ").append(random.nextGaussian() / Math.sqrt(input));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Create dense layers of the given sizes with a LeakyRelu between each two of them.
+     * The judge layer is left out so whole output vectors are compared.
+     */
+    static Model createModel(final Random random, final int... sizes) throws Exception {
+        final String[] lines = new String[sizes.length * 2 - 3];
+        for (int k = 0; k + 1 < sizes.length; k++) {
+            lines[k * 2] = denseLayer(random, sizes[k], sizes[k + 1]);
+            if (k + 2 < sizes.length) lines[k * 2 + 1] = "L " + sizes[k + 1];
+        }
+        return Model.parseLayers(lines);
+    }
+
+    /** Samples stored row-major, with pixel-like values in [0, 255] */
+    static double[] createInputs(final Random random, final int inputSize, final int sampleCount) {
+        final double[] inputs = new double[inputSize * sampleCount];
+        for (int i = 0; i < inputs.length; i++) inputs[i] = random.nextInt(256);
+        return inputs;
+    }
+}
@@ -0,0 +1,68 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.Model;
+import com.shinonometn.ml.ll4j.ModelFormatException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the streaming text reader against {@link Model#parseLayers(String[])}, and its checks of the layer sizes
+ */
+public class TextModelFormatTest {
+
+    private static Model parse(final String... lines) throws Exception {
+        return Model.parse(new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void layersWithAndWithoutBiasesAreMixed() throws Exception {
+        // Each dense layer has biases or not unlike the one before it
+        final String[] lines = {
+                "D 2 3 1 2 3 4 5 6",
+                "L 3",
+                "D 3 2 1 2 3 4 5 6 0.5 -0.5",
+                "L 2",
+                "D 2 2 1 2 3 4",
+                "L 2",
+                "Q 2 2 0.1 0.2 0.3 1 -2 3 -4 0.25 0.75",
+                "L 2",
+                "Q 2 2 0.1 0.2 0.3 1 -2 3 -4",
+                "J 2"
+        };
+        final Model expected = Model.parseLayers(lines);
+        final Model actual = parse(lines);
+        assertEquals(expected.getLayers().size(), actual.getLayers().size());
+        for (int k = 0; k < expected.getLayers().size(); k++) {
+            final Layer e = expected.getLayers().get(k);
+            final Layer a = actual.getLayers().get(k);
+            assertEquals(e.hasBias(), a.hasBias(), "Bias of layer " + k);
+            if (e.getData() != null) assertArrayEquals(e.getData(), a.getData(), "Layer " + k);
+        }
+
+        final double[] input = {0.5, -1};
+        assertArrayEquals(expected.classification(input), actual.classification(input));
+    }
+
+    @Test
+    public void badSizesAreRejected() {
+        final String[][] models = {
+                {"D -1 2 1 2", "J 2"},
+                {"D 2 -1 1 2", "J 2"},
+                {"D 0 2", "J 2"},
+                {"D 2 0", "J 0"},
+                {"Q 2 -1 0.1 0.2", "J 2"},
+                // The product overflows int, or wraps to a small positive size
+                {"D 65536 65536 1", "J 65536"},
+                {"D 65536 65537 1", "J 65537"},
+                {"Q 65536 65537 1", "J 65537"}
+        };
+        for (final String[] model : models) {
+            assertThrows(ModelFormatException.class, () -> parse(model), model[0]);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.shinonometn.ml.ll4j;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Forward kernels on the Vector API, see {@link VectorKernelProvider}
+ */
+final class VectorForward {
+    private VectorForward() {
+    }
+
+    static final VectorSpecies<Double> Doubles = DoubleVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Float> Floats = FloatVector.SPECIES_PREFERRED;
+
+    /** Vectors of one lane are slower than the scalar loops */
+    static boolean isUseful() {
+        return Doubles.length() > 1 && Floats.length() > 1;
+    }
+
+    //================================================================
+
+    /**
+     * Same blocking as {@link ForwardFunction#scalarDense(ExecutionPolicy)}, the inner loop keeps
+     * one vector of partial sums per weight row and reduces them at the end of the row.
+     * The bias and the fused LeakyRelu are applied to the reduced sums.
+     */
+    static ForwardFunction dense(final ExecutionPolicy policy, final boolean leakyRelu) {
+        return new ForwardFunction() {
+            @Override
+            public ForwardFunction fuseLeakyRelu() {
+                return leakyRelu ? null : dense(policy, true);
+            }
+
+            @Override
+            public void apply(double[] input, double[] weights, double[] output) {
+                applyBatch(input, input.length, weights, output, output.length, 1);
+            }
+
+            @Override
+            public void applyBatch(
+                    double[] input, int inputSize,
+                    double[] weights,
+                    double[] output, int outputSize,
+                    int batchSize
+            ) {
+                final int blockCount = (outputSize + 3) / 4;
+                final int bias = ForwardFunction.biasOffset(weights.length, inputSize, outputSize);
+
+                policy.execute(blockCount, ExecutionPolicy.cost(4L * inputSize * batchSize), (from, to) -> {
+                    for (int idxB = from; idxB < to; idxB++) forEachBlock(
+                            idxB, inputSize, outputSize, batchSize, input, weights, bias, output
+                    );
+                });
+            }
+
+            private void forEachBlock(
+                    final int idxB,
+                    final int iSize, final int oSize, final int bSize,
+                    final double[] input, final double[] weights, final int bias,
+                    final double[] output
+            ) {
+                final int idxO = idxB * 4;
+                final int bound = Doubles.loopBound(iSize);
+                final int step = Doubles.length();
+
+                // Tail block, one row at a time
+                if (idxO + 4 > oSize) {
+                    for (int o = idxO; o < oSize; o++) {
+                        final int row = o * iSize;
+                        for (int idxS = 0; idxS < bSize; idxS++) {
+                            final int in = idxS * iSize;
+                            DoubleVector acc = DoubleVector.zero(Doubles);
+                            int idxI = 0;
+                            for (; idxI < bound; idxI += step) {
+                                final DoubleVector value = DoubleVector.fromArray(Doubles, input, in + idxI);
+                                acc = value.fma(DoubleVector.fromArray(Doubles, weights, row + idxI), acc);
+                            }
+                            double sum = acc.reduceLanes(VectorOperators.ADD);
+                            for (; idxI < iSize; idxI++) sum += input[in + idxI] * weights[row + idxI];
+                            output[idxS * oSize + o] = finish(sum, weights, bias, o);
+                        }
+                    }
+                    return;
+                }
+
+                final int row0 = idxO * iSize;
+                final int row1 = row0 + iSize;
+                final int row2 = row1 + iSize;
+                final int row3 = row2 + iSize;
+
+                for (int idxS = 0; idxS < bSize; idxS++) {
+                    final int in = idxS * iSize;
+
+                    DoubleVector acc0 = DoubleVector.zero(Doubles);
+                    DoubleVector acc1 = acc0, acc2 = acc0, acc3 = acc0;
+                    int idxI = 0;
+                    for (; idxI < bound; idxI += step) {
+                        final DoubleVector value = DoubleVector.fromArray(Doubles, input, in + idxI);
+                        acc0 = value.fma(DoubleVector.fromArray(Doubles, weights, row0 + idxI), acc0);
+                        acc1 = value.fma(DoubleVector.fromArray(Doubles, weights, row1 + idxI), acc1);
+                        acc2 = value.fma(DoubleVector.fromArray(Doubles, weights, row2 + idxI), acc2);
+                        acc3 = value.fma(DoubleVector.fromArray(Doubles, weights, row3 + idxI), acc3);
+                    }
+
+                    double sum0 = acc0.reduceLanes(VectorOperators.ADD);
+                    double sum1 = acc1.reduceLanes(VectorOperators.ADD);
+                    double sum2 = acc2.reduceLanes(VectorOperators.ADD);
+                    double sum3 = acc3.reduceLanes(VectorOperators.ADD);
+                    for (; idxI < iSize; idxI++) {
+                        final double value = input[in + idxI];
+                        sum0 += value * weights[row0 + idxI];
+                        sum1 += value * weights[row1 + idxI];
+                        sum2 += value * weights[row2 + idxI];
+                        sum3 += value * weights[row3 + idxI];
+                    }
+
+                    final int out = idxS * oSize + idxO;
+                    output[out] = finish(sum0, weights, bias, idxO);
+                    output[out + 1] = finish(sum1, weights, bias, idxO + 1);
+                    output[out + 2] = finish(sum2, weights, bias, idxO + 2);
+                    output[out + 3] = finish(sum3, weights, bias, idxO + 3);
+                }
+            }
+
+            /* Same as the scalar kernel, see ForwardFunction#scalarDense(ExecutionPolicy, boolean) */
+            private double finish(final double sum, final double[] weights, final int bias, final int o) {
+                final double v = (bias < 0) ? sum : sum + weights[bias + o];
+                if (!leakyRelu || v > 0) return v;
+                return (v < 0) ? v * 0.01 : Double.MIN_NORMAL;
+            }
+
+            /* Same kernel in single precision */
+            @Override
+            public void applyBatch(
+                    float[] input, int inputSize,
+                    float[] weights,
+                    float[] output, int outputSize,
+                    int batchSize
+            ) {
+                final int blockCount = (outputSize + 3) / 4;
+                final int bias = ForwardFunction.biasOffset(weights.length, inputSize, outputSize);
+
+                policy.execute(blockCount, ExecutionPolicy.cost(4L * inputSize * batchSize), (from, to) -> {
+                    for (int idxB = from; idxB < to; idxB++) forEachBlock(
+                            idxB, inputSize, outputSize, batchSize, input, weights, bias, output
+                    );
+                });
+            }
+
+            private void forEachBlock(
+                    final int idxB,
+                    final int iSize, final int oSize, final int bSize,
+                    final float[] input, final float[] weights, final int bias,
+                    final float[] output
+            ) {
+                final int idxO = idxB * 4;
+                final int bound = Floats.loopBound(iSize);
+                final int step = Floats.length();
+
+                if (idxO + 4 > oSize) {
+                    for (int o = idxO; o < oSize; o++) {
+                        final int row = o * iSize;
+                        for (int idxS = 0; idxS < bSize; idxS++) {
+                            final int in = idxS * iSize;
+                            FloatVector acc = FloatVector.zero(Floats);
+                            int idxI = 0;
+                            for (; idxI < bound; idxI += step) {
+                                final FloatVector value = FloatVector.fromArray(Floats, input, in + idxI);
+                                acc = value.fma(FloatVector.fromArray(Floats, weights, row + idxI), acc);
+                            }
+                            float sum = acc.reduceLanes(VectorOperators.ADD);
+                            for (; idxI < iSize; idxI++) sum += input[in + idxI] * weights[row + idxI];
+                            output[idxS * oSize + o] = finish(sum, weights, bias, o);
+                        }
+                    }
+                    return;
+                }
+
+                final int row0 = idxO * iSize;
+                final int row1 = row0 + iSize;
+                final int row2 = row1 + iSize;
+                final int row3 = row2 + iSize;
+
+                for (int idxS = 0; idxS < bSize; idxS++) {
+                    final int in = idxS * iSize;
+
+                    FloatVector acc0 = FloatVector.zero(Floats);
+                    FloatVector acc1 = acc0, acc2 = acc0, acc3 = acc0;
+                    int idxI = 0;
+                    for (; idxI < bound; idxI += step) {
+                        final FloatVector value = FloatVector.fromArray(Floats, input, in + idxI);
+                        acc0 = value.fma(FloatVector.fromArray(Floats, weights, row0 + idxI), acc0);
+                        acc1 = value.fma(FloatVector.fromArray(Floats, weights, row1 + idxI), acc1);
+                        acc2 = value.fma(FloatVector.fromArray(Floats, weights, row2 + idxI), acc2);
+                        acc3 = value.fma(FloatVector.fromArray(Floats, weights, row3 + idxI), acc3);
+                    }
+
+                    float sum0 = acc0.reduceLanes(VectorOperators.ADD);
+                    float sum1 = acc1.reduceLanes(VectorOperators.ADD);
+                    float sum2 = acc2.reduceLanes(VectorOperators.ADD);
+                    float sum3 = acc3.reduceLanes(VectorOperators.ADD);
+                    for (; idxI < iSize; idxI++) {
+                        final float value = input[in + idxI];
+                        sum0 += value * weights[row0 + idxI];
+                        sum1 += value * weights[row1 + idxI];
+                        sum2 += value * weights[row2 + idxI];
+                        sum3 += value * weights[row3 + idxI];
+                    }
+
+                    final int out = idxS * oSize + idxO;
+                    output[out] = finish(sum0, weights, bias, idxO);
+                    output[out + 1] = finish(sum1, weights, bias, idxO + 1);
+                    output[out + 2] = finish(sum2, weights, bias, idxO + 2);
+                    output[out + 3] = finish(sum3, weights, bias, idxO + 3);
+                }
+            }
+
+            private float finish(final float sum, final float[] weights, final int bias, final int o) {
+                final float v = (bias < 0) ? sum : sum + weights[bias + o];
+                if (!leakyRelu || v > 0) return v;
+                return (v < 0) ? v * 0.01f : Float.MIN_NORMAL;
+            }
+        };
+    }
+
+    //================================================================
+
+    /**
+     * Same as {@link ForwardFunction#ScalarLeakyRelu}, exact zeros and NaNs become the smallest normal value.
+     * <p>
+     * Kernels are created on request rather than kept in static fields: creating one initializes
+     * {@link ForwardFunction}, which asks the provider for its kernels in turn.
+     */
+    static ForwardFunction leakyRelu() {
+        return new ForwardFunction() {
+            @Override
+            public void apply(double[] input, double[] trans, double[] output) {
+                forEachValue(input, output, input.length);
+            }
+
+            @Override
+            public void applyBatch(
+                    double[] input, int inputSize,
+                    double[] weights,
+                    double[] output, int outputSize,
+                    int batchSize
+            ) {
+                forEachValue(input, output, inputSize * batchSize);
+            }
+
+            private void forEachValue(final double[] input, final double[] output, final int size) {
+                final DoubleVector zeros = DoubleVector.broadcast(Doubles, Double.MIN_NORMAL);
+                final int bound = Doubles.loopBound(size);
+
+                int i = 0;
+                for (; i < bound; i += Doubles.length()) {
+                    final DoubleVector v = DoubleVector.fromArray(Doubles, input, i);
+                    final VectorMask<Double> positive = v.compare(VectorOperators.GT, 0);
+                    final VectorMask<Double> negative = v.compare(VectorOperators.LT, 0);
+                    zeros.blend(v, positive).blend(v.mul(0.01), negative).intoArray(output, i);
+                }
+                for (; i < size; i++) {
+                    final double v = input[i];
+                    if (v > 0) {
+                        output[i] = v;
+                    } else if (v < 0) {
+                        output[i] = v * 0.01;
+                    } else {
+                        output[i] = Double.MIN_NORMAL;
+                    }
+                }
+            }
+
+            @Override
+            public void applyBatch(
+                    float[] input, int inputSize,
+                    float[] weights,
+                    float[] output, int outputSize,
+                    int batchSize
+            ) {
+                final int size = inputSize * batchSize;
+                final FloatVector zeros = FloatVector.broadcast(Floats, Float.MIN_NORMAL);
+                final int bound = Floats.loopBound(size);
+
+                int i = 0;
+                for (; i < bound; i += Floats.length()) {
+                    final FloatVector v = FloatVector.fromArray(Floats, input, i);
+                    final VectorMask<Float> positive = v.compare(VectorOperators.GT, 0);
+                    final VectorMask<Float> negative = v.compare(VectorOperators.LT, 0);
+                    zeros.blend(v, positive).blend(v.mul(0.01f), negative).intoArray(output, i);
+                }
+                for (; i < size; i++) {
+                    final float v = input[i];
+                    if (v > 0) {
+                        output[i] = v;
+                    } else if (v < 0) {
+                        output[i] = v * 0.01f;
+                    } else {
+                        output[i] = Float.MIN_NORMAL;
+                    }
+                }
+            }
+        };
+    }
+}
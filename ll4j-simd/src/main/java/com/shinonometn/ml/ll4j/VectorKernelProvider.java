@@ -0,0 +1,57 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Kernels written with the Vector API (jdk.incubator.vector).
+ * <p>
+ * The provider is picked up automatically when this module is on the classpath of a JDK 17+ started with
+ * {@code --add-modules jdk.incubator.vector}. Without the module, or on a CPU without SIMD registers,
+ * it reports itself unsupported and the scalar kernels are used.
+ * <p>
+ * Element-wise kernels give exactly the same results as the scalar ones. Dense forward kernels sum
+ * in a different order, so their results differ by rounding.
+ * <p>
+ * This class does not touch the Vector API itself, so it can be loaded when the module is missing.
+ */
+public final class VectorKernelProvider implements TrainingKernelProvider {
+    public static final String Name = "vector";
+
+    @Override
+    public String getName() {
+        return Name;
+    }
+
+    @Override
+    public boolean isSupported() {
+        try {
+            return VectorForward.isUseful();
+        } catch (LinkageError e) {
+            // jdk.incubator.vector is not in the module graph
+            return false;
+        }
+    }
+
+    @Override
+    public ForwardFunction forwardDense(final ExecutionPolicy policy) {
+        return VectorForward.dense(policy, false);
+    }
+
+    @Override
+    public ForwardFunction forwardLeakyRelu() {
+        return VectorForward.leakyRelu();
+    }
+
+    @Override
+    public BackwardFunction backwardDense(final ExecutionPolicy policy) {
+        return VectorTraining.backwardDense(policy);
+    }
+
+    @Override
+    public BackwardFunction backwardLeakyRelu() {
+        return VectorTraining.backwardLeakyRelu();
+    }
+
+    @Override
+    public LayerAdjust.Updater denseUpdate(final ExecutionPolicy policy) {
+        return VectorTraining.denseUpdate(policy);
+    }
+}
@@ -0,0 +1,204 @@
+package com.shinonometn.ml.ll4j;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Training kernels on the Vector API, see {@link VectorKernelProvider}.
+ * <p>
+ * All of them are element-wise, each value is computed with the same operations in the same order
+ * as the scalar kernels, so the results are exactly the same.
+ */
+final class VectorTraining {
+    private VectorTraining() {
+    }
+
+    private static final VectorSpecies<Double> Doubles = VectorForward.Doubles;
+
+    //================================================================
+
+    /**
+     * Same chunks as {@link BackwardFunction#scalarDense(ExecutionPolicy)}
+     */
+    static BackwardFunction backwardDense(final ExecutionPolicy policy) {
+        return new BackwardFunction() {
+            private static final int CHUNK_SIZE = 64;
+
+            @Override
+            public void apply(double[] input, Layer layer, double[] errors, double[] output) {
+                applyBatch(input, layer, errors, output, 1);
+            }
+
+            @Override
+            public void applyBatch(double[] input, Layer layer, double[] errors, double[] output, int batchSize) {
+                final int inputSize = layer.getInputSize();
+                final int outputSize = layer.getOutputSize();
+                final int chunkCount = (inputSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+                policy.execute(chunkCount, ExecutionPolicy.cost((long) CHUNK_SIZE * outputSize * batchSize), (from, to) -> {
+                    for (int idxC = from; idxC < to; idxC++) forEachChunk(
+                            /*        Input chunk  */ idxC * CHUNK_SIZE, Math.min(inputSize, (idxC + 1) * CHUNK_SIZE),
+                            /* Layer size and data */ inputSize, outputSize, layer.data,
+                            /*   Lower layer error */ errors,
+                            /*        Error output */ output,
+                            /*          Batch size */ batchSize
+                    );
+                });
+            }
+
+            private void forEachChunk(
+                    final int from, final int to,
+                    final int iSize, final int oSize, final double[] weights,
+                    final double[] errors,
+                    final double[] output,
+                    final int batchSize
+            ) {
+                for (int idxS = 0; idxS < batchSize; idxS++) {
+                    final int base = idxS * iSize;
+                    for (int idxI = from; idxI < to; idxI++) output[base + idxI] = 0;
+                }
+
+                for (int idxO = 0; idxO < oSize; idxO++) {
+                    final int row = idxO * iSize;
+                    for (int idxS = 0; idxS < batchSize; idxS++) {
+                        final double err = errors[idxS * oSize + idxO];
+                        addScaled(output, idxS * iSize + from, weights, row + from, err, to - from);
+                    }
+                }
+            }
+        };
+    }
+
+    //================================================================
+
+    /**
+     * Same as {@link BackwardFunction#ScalarLeakyRelu}, created on request like {@link VectorForward#leakyRelu()}
+     */
+    static BackwardFunction backwardLeakyRelu() {
+        return new BackwardFunction() {
+            @Override
+            public void apply(double[] input, Layer layer, double[] errors, double[] output) {
+                forEachValue(input, errors, output, layer.getOutputSize());
+            }
+
+            @Override
+            public void applyBatch(double[] input, Layer layer, double[] errors, double[] output, int batchSize) {
+                forEachValue(input, errors, output, layer.getOutputSize() * batchSize);
+            }
+
+            private void forEachValue(final double[] input, final double[] errors, final double[] output, final int size) {
+                final DoubleVector zeros = DoubleVector.broadcast(Doubles, Double.MIN_NORMAL);
+                final int bound = Doubles.loopBound(size);
+
+                int i = 0;
+                for (; i < bound; i += Doubles.length()) {
+                    final DoubleVector v = DoubleVector.fromArray(Doubles, input, i);
+                    final DoubleVector e = DoubleVector.fromArray(Doubles, errors, i);
+                    final VectorMask<Double> positive = v.compare(VectorOperators.GT, 0);
+                    final VectorMask<Double> negative = v.compare(VectorOperators.LT, 0);
+                    zeros.blend(e, positive).blend(e.mul(0.01), negative).intoArray(output, i);
+                }
+                for (; i < size; i++) {
+                    final double v = input[i];
+                    if (v > 0) {
+                        output[i] = errors[i];
+                    } else if (v < 0) {
+                        output[i] = errors[i] * 0.01;
+                    } else {
+                        output[i] = Double.MIN_NORMAL;
+                    }
+                }
+            }
+        };
+    }
+
+    //================================================================
+
+    /**
+     * Same as {@link AdjustFunctions#scalarDenseUpdate(ExecutionPolicy)}
+     */
+    static LayerAdjust.Updater denseUpdate(final ExecutionPolicy policy) {
+        return new LayerAdjust.Updater() {
+            @Override
+            public void apply(double[] inputs, Layer layer, double[] errors, double lr) {
+                final int inputSize = layer.getInputSize();
+                final double[] weights = layer.data;
+
+                policy.execute(layer.getOutputSize(), inputSize, (from, to) -> {
+                    for (int idxO = from; idxO < to; idxO++) {
+                        subtractScaled(weights, idxO * inputSize, inputs, 0, lr * errors[idxO], inputSize);
+                    }
+                });
+            }
+
+            @Override
+            public void accumulate(double[] inputs, Layer layer, double[] errors, int batchSize, double[] gradient) {
+                final int inputSize = layer.getInputSize();
+                final int outputSize = layer.getOutputSize();
+
+                policy.execute(outputSize, ExecutionPolicy.cost((long) inputSize * batchSize), (from, to) -> {
+                    for (int idxO = from; idxO < to; idxO++) {
+                        final int row = idxO * inputSize;
+                        for (int idxS = 0; idxS < batchSize; idxS++) {
+                            final double error = errors[idxS * outputSize + idxO];
+                            if (error == 0) continue;
+                            addScaled(gradient, row, inputs, idxS * inputSize, error, inputSize);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void applyGradient(Layer layer, double[] gradient, double lr) {
+                final int inputSize = layer.getInputSize();
+
+                policy.execute(layer.getOutputSize(), inputSize, (from, to) -> applyGradient(
+                        layer, gradient, from * inputSize, to * inputSize, lr
+                ));
+            }
+
+            @Override
+            public void applyGradient(Layer layer, double[] gradient, int from, int to, double lr) {
+                subtractScaled(layer.data, from, gradient, from, lr, to - from);
+            }
+        };
+    }
+
+    //================================================================
+
+    /**
+     * target[i] += factor * source[i], for length values from the given offsets
+     */
+    private static void addScaled(
+            final double[] target, final int targetOffset,
+            final double[] source, final int sourceOffset,
+            final double factor, final int length
+    ) {
+        final int bound = Doubles.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += Doubles.length()) {
+            final DoubleVector s = DoubleVector.fromArray(Doubles, source, sourceOffset + i);
+            DoubleVector.fromArray(Doubles, target, targetOffset + i).add(s.mul(factor)).intoArray(target, targetOffset + i);
+        }
+        for (; i < length; i++) target[targetOffset + i] += factor * source[sourceOffset + i];
+    }
+
+    /**
+     * target[i] -= factor * source[i], for length values from the given offsets
+     */
+    private static void subtractScaled(
+            final double[] target, final int targetOffset,
+            final double[] source, final int sourceOffset,
+            final double factor, final int length
+    ) {
+        final int bound = Doubles.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += Doubles.length()) {
+            final DoubleVector s = DoubleVector.fromArray(Doubles, source, sourceOffset + i);
+            DoubleVector.fromArray(Doubles, target, targetOffset + i).sub(s.mul(factor)).intoArray(target, targetOffset + i);
+        }
+        for (; i < length; i++) target[targetOffset + i] -= factor * source[sourceOffset + i];
+    }
+}
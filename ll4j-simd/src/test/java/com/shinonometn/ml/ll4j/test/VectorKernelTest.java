@@ -0,0 +1,164 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.BackwardFunction;
+import com.shinonometn.ml.ll4j.ExecutionPolicy;
+import com.shinonometn.ml.ll4j.ForwardFunction;
+import com.shinonometn.ml.ll4j.Kernels;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.LayerAdjust;
+import com.shinonometn.ml.ll4j.Layers;
+import com.shinonometn.ml.ll4j.TrainingKernelProvider;
+import com.shinonometn.ml.ll4j.TrainingKernels;
+import com.shinonometn.ml.ll4j.VectorKernelProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare the Vector API kernels with the scalar ones.
+ * Sizes are picked so that the loops have vector parts and scalar tails.
+ */
+public class VectorKernelTest {
+    private final static int[][] Sizes = {{1, 1}, {7, 3}, {37, 13}, {100, 10}, {784, 100}};
+    private final static int BatchSize = 5;
+
+    private final TrainingKernelProvider scalar = TrainingKernels.scalar();
+    private final TrainingKernelProvider vector = new VectorKernelProvider();
+
+    private static double[] randomArray(final Random random, final int size) {
+        final double[] array = new double[size];
+        for (int i = 0; i < size; i++) array[i] = random.nextGaussian();
+        return array;
+    }
+
+    /* Positive, negative, zeros and NaN */
+    private static double[] activations(final Random random, final int size) {
+        final double[] array = randomArray(random, size);
+        for (int i = 0; i < size; i += 5) array[i] = 0;
+        for (int i = 3; i < size; i += 11) array[i] = -0.0;
+        for (int i = 4; i < size; i += 17) array[i] = Double.NaN;
+        return array;
+    }
+
+    private static float[] narrow(final double[] source) {
+        final float[] result = new float[source.length];
+        for (int i = 0; i < result.length; i++) result[i] = (float) source[i];
+        return result;
+    }
+
+    @Test
+    public void vectorKernelsAreSelected() {
+        assertTrue(vector.isSupported());
+        assertEquals(VectorKernelProvider.Name, Kernels.current().getName());
+        assertEquals(VectorKernelProvider.Name, TrainingKernels.current().getName());
+    }
+
+    @Test
+    public void denseForwardIsCloseToScalar() {
+        final Random random = new Random(42);
+        final ForwardFunction expected = scalar.forwardDense(ExecutionPolicy.Sequential);
+        final ForwardFunction actual = vector.forwardDense(ExecutionPolicy.Sequential);
+
+        for (final int[] size : Sizes) {
+            final int inputSize = size[0], outputSize = size[1];
+            final double[] weights = randomArray(random, inputSize * outputSize);
+            final double[] input = randomArray(random, inputSize * BatchSize);
+
+            final double[] wanted = new double[outputSize * BatchSize];
+            final double[] got = new double[outputSize * BatchSize];
+            expected.applyBatch(input, inputSize, weights, wanted, outputSize, BatchSize);
+            actual.applyBatch(input, inputSize, weights, got, outputSize, BatchSize);
+            for (int i = 0; i < wanted.length; i++) {
+                assertEquals(wanted[i], got[i], 1e-12 * inputSize, "Double output " + i + " of " + inputSize + "x" + outputSize);
+            }
+
+            final float[] wantedFloat = new float[outputSize * BatchSize];
+            final float[] gotFloat = new float[outputSize * BatchSize];
+            expected.applyBatch(narrow(input), inputSize, narrow(weights), wantedFloat, outputSize, BatchSize);
+            actual.applyBatch(narrow(input), inputSize, narrow(weights), gotFloat, outputSize, BatchSize);
+            for (int i = 0; i < wantedFloat.length; i++) {
+                assertEquals(wantedFloat[i], gotFloat[i], 1e-5f * inputSize, "Float output " + i + " of " + inputSize + "x" + outputSize);
+            }
+        }
+    }
+
+    @Test
+    public void leakyReluIsExact() {
+        final Random random = new Random(7);
+        final double[] input = activations(random, 1000);
+        final double[] errors = randomArray(random, 1000);
+
+        final double[] wanted = new double[input.length];
+        final double[] got = new double[input.length];
+        scalar.forwardLeakyRelu().applyBatch(input, 100, new double[0], wanted, 100, 10);
+        vector.forwardLeakyRelu().applyBatch(input, 100, new double[0], got, 100, 10);
+        assertArrayEquals(wanted, got);
+
+        final float[] wantedFloat = new float[input.length];
+        final float[] gotFloat = new float[input.length];
+        scalar.forwardLeakyRelu().applyBatch(narrow(input), 100, new float[0], wantedFloat, 100, 10);
+        vector.forwardLeakyRelu().applyBatch(narrow(input), 100, new float[0], gotFloat, 100, 10);
+        assertArrayEquals(wantedFloat, gotFloat);
+
+        final Layer layer = Layers.leakyRelu(100);
+        scalar.backwardLeakyRelu().applyBatch(input, layer, errors, wanted, 10);
+        vector.backwardLeakyRelu().applyBatch(input, layer, errors, got, 10);
+        assertArrayEquals(wanted, got);
+    }
+
+    @Test
+    public void denseBackwardIsExact() {
+        final Random random = new Random(3);
+        final BackwardFunction expected = scalar.backwardDense(ExecutionPolicy.Sequential);
+        final BackwardFunction actual = vector.backwardDense(ExecutionPolicy.Sequential);
+
+        for (final int[] size : Sizes) {
+            final int inputSize = size[0], outputSize = size[1];
+            final Layer layer = Layers.dense(inputSize, outputSize, randomArray(random, inputSize * outputSize));
+            final double[] input = randomArray(random, inputSize * BatchSize);
+            final double[] errors = randomArray(random, outputSize * BatchSize);
+
+            final double[] wanted = new double[inputSize * BatchSize];
+            final double[] got = new double[inputSize * BatchSize];
+            expected.applyBatch(input, layer, errors, wanted, BatchSize);
+            actual.applyBatch(input, layer, errors, got, BatchSize);
+            assertArrayEquals(wanted, got, inputSize + "x" + outputSize);
+        }
+    }
+
+    @Test
+    public void denseUpdateIsExact() {
+        final Random random = new Random(11);
+        final LayerAdjust.Updater expected = scalar.denseUpdate(ExecutionPolicy.Sequential);
+        final LayerAdjust.Updater actual = vector.denseUpdate(ExecutionPolicy.Sequential);
+
+        for (final int[] size : Sizes) {
+            final int inputSize = size[0], outputSize = size[1];
+            final double[] weights = randomArray(random, inputSize * outputSize);
+            final Layer wanted = Layers.dense(inputSize, outputSize, weights);
+            final Layer got = Layers.dense(inputSize, outputSize, weights);
+
+            final double[] input = randomArray(random, inputSize * BatchSize);
+            final double[] errors = randomArray(random, outputSize * BatchSize);
+            for (int i = 0; i < errors.length; i += 4) errors[i] = 0;
+
+            // One sample
+            expected.apply(input, wanted, errors, 0.01);
+            actual.apply(input, got, errors, 0.01);
+            assertArrayEquals(wanted.getData(), got.getData(), "Apply " + inputSize + "x" + outputSize);
+
+            // Mini-batch
+            final double[] wantedGradient = new double[weights.length];
+            final double[] gotGradient = new double[weights.length];
+            expected.accumulate(input, wanted, errors, BatchSize, wantedGradient);
+            actual.accumulate(input, got, errors, BatchSize, gotGradient);
+            assertArrayEquals(wantedGradient, gotGradient, "Accumulate " + inputSize + "x" + outputSize);
+
+            expected.applyGradient(wanted, wantedGradient, 0.01);
+            actual.applyGradient(got, gotGradient, 0.01);
+            assertArrayEquals(wanted.getData(), got.getData(), "Gradient " + inputSize + "x" + outputSize);
+        }
+    }
+}
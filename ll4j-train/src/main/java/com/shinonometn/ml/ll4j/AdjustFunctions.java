@@ -1,7 +1,6 @@
 package com.shinonometn.ml.ll4j;
 
 import java.util.Arrays;
-import java.util.stream.IntStream;
 
 /**
  * Layer function is a function that accept layer weights, and processing iteration result
@@ -16,34 +15,134 @@ public final class AdjustFunctions {
     static final LayerAdjust.Updater Noop = (input, layer, error, learningRate) -> {
     };
 
-    static final LayerAdjust.Updater DenseUpdate = new LayerAdjust.Updater() {
+    /**
+     * Plain SGD on a dense layer: weights[j][i] -= learningRate * errors[j] * inputs[i].
+     * Weights are output-major, so each output updates one contiguous row.
+     * <p>
+     * The kernel comes from {@link TrainingKernels#current()}, this is the scalar one.
+     */
+    static final LayerAdjust.Updater DenseUpdate = denseUpdate(ExecutionPolicy.Adaptive);
 
-        @Override
-        public void apply(double[] inputs, Layer layer, double[] errors, double lr) {
-            final int inputSize = layer.getInputSize();
+    /**
+     * Create a dense update function that runs with the given execution policy
+     */
+    static LayerAdjust.Updater denseUpdate(final ExecutionPolicy policy) {
+        return TrainingKernels.current().denseUpdate(policy);
+    }
 
-            IntStream.range(0, inputSize).parallel().forEach(idxI -> forEachInput(
-                    /*       Connection Index */ idxI,
-                    /*        Layer size info */ layer.getOutputSize(),
-                    /*           Layer inputs */ inputs,
-                    /* Weights to be adjusted */ layer.data,
-                    /*                 Errors */ errors,
-                    /*          Learning rate */ lr
-            ));
-        }
+    /**
+     * Create the scalar dense update function, see {@link #DenseUpdate}
+     */
+    static LayerAdjust.Updater scalarDenseUpdate(final ExecutionPolicy policy) {
+        return new LayerAdjust.Updater() {
+
+            @Override
+            public void apply(double[] inputs, Layer layer, double[] errors, double lr) {
+                final int inputSize = layer.getInputSize();
+
+                policy.execute(layer.getOutputSize(), inputSize, (from, to) -> {
+                    for (int idxO = from; idxO < to; idxO++) forEachOutput(
+                            /*       Connection Index */ idxO,
+                            /*        Layer size info */ inputSize,
+                            /*           Layer inputs */ inputs,
+                            /* Weights to be adjusted */ layer.data,
+                            /*                 Errors */ errors,
+                            /*          Learning rate */ lr
+                    );
+                });
+            }
 
-        private void forEachInput(
-                final int idxI,
-                final int oSize,
-                final double[] input, final double[] weights,
-                final double[] errors, final double lr
-        ) {
-            for (int idxO = 0; idxO < oSize; idxO++) {
-                final double delta = lr * errors[idxO] * input[idxI];
-                weights[(idxI * oSize) + idxO] -= delta;
+            private void forEachOutput(
+                    final int idxO,
+                    final int iSize,
+                    final double[] input, final double[] weights,
+                    final double[] errors, final double lr
+            ) {
+                final double rate = lr * errors[idxO];
+                final int row = idxO * iSize;
+                for (int idxI = 0; idxI < iSize; idxI++) {
+                    final double delta = rate * input[idxI];
+                    weights[row + idxI] -= delta;
+                }
             }
-        }
-    };
+
+            @Override
+            public void accumulate(double[] inputs, Layer layer, double[] errors, int batchSize, double[] gradient) {
+                final int inputSize = layer.getInputSize();
+                final int outputSize = layer.getOutputSize();
+
+                // Each output owns a gradient row, so rows can be split without conflicts
+                policy.execute(outputSize, ExecutionPolicy.cost((long) inputSize * batchSize), (from, to) -> {
+                    for (int idxO = from; idxO < to; idxO++) {
+                        final int row = idxO * inputSize;
+                        for (int idxS = 0; idxS < batchSize; idxS++) {
+                            final double error = errors[idxS * outputSize + idxO];
+                            if (error == 0) continue;
+                            final int base = idxS * inputSize;
+                            for (int idxI = 0; idxI < inputSize; idxI++) {
+                                gradient[row + idxI] += error * inputs[base + idxI];
+                            }
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void applyGradient(Layer layer, double[] gradient, double lr) {
+                final int inputSize = layer.getInputSize();
+
+                policy.execute(layer.getOutputSize(), inputSize, (from, to) -> applyGradient(
+                        layer, gradient, from * inputSize, to * inputSize, lr
+                ));
+            }
+        };
+    }
+    /**
+     * Add the update of the biases to the updater of a dense layer with bias, see {@link Layers#denseWithBias(int, int)}.
+     * The updater only touches the weight rows, a bias is a weight whose input is always 1:
+     * bias[j] -= learningRate * errors[j].
+     */
+    static LayerAdjust.Updater withBias(final LayerAdjust.Updater weights) {
+        return new LayerAdjust.Updater() {
+            @Override
+            public void apply(double[] inputs, Layer layer, double[] errors, double lr) {
+                weights.apply(inputs, layer, errors, lr);
+
+                final double[] data = layer.data;
+                final int bias = layer.getInputSize() * layer.getOutputSize();
+                for (int idxO = 0; idxO < layer.getOutputSize(); idxO++) data[bias + idxO] -= lr * errors[idxO];
+            }
+
+            @Override
+            public void accumulate(double[] inputs, Layer layer, double[] errors, int batchSize, double[] gradient) {
+                weights.accumulate(inputs, layer, errors, batchSize, gradient);
+
+                final int outputSize = layer.getOutputSize();
+                final int bias = layer.getInputSize() * outputSize;
+                for (int idxS = 0; idxS < batchSize; idxS++) {
+                    final int base = idxS * outputSize;
+                    for (int idxO = 0; idxO < outputSize; idxO++) gradient[bias + idxO] += errors[base + idxO];
+                }
+            }
+
+            @Override
+            public void applyGradient(Layer layer, double[] gradient, double lr) {
+                weights.applyGradient(layer, gradient, lr);
+                weights.applyGradient(layer, gradient, layer.getInputSize() * layer.getOutputSize(), layer.data.length, lr);
+            }
+
+            @Override
+            public void applyGradient(Layer layer, double[] gradient, int from, int to, double lr) {
+                weights.applyGradient(layer, gradient, from, to, lr);
+            }
+
+            @Override
+            public void beginStep() {
+                weights.beginStep();
+            }
+        };
+    }
+
     //================================================================
 
     /* LeakyRelu has no weight to update */
@@ -59,9 +158,14 @@ public final class AdjustFunctions {
     static final NRandom random = new NRandom(System.nanoTime());
 
     // According to the source code, it has been used as initializer
+    // Biases start at zero
     public static Layer fillWithGaussianRandom(final Layer layer) {
         final double[] input = layer.data;
-        fillWithGaussianRandom(input);
+        final int weightCount = layer.hasBias() ? layer.getInputSize() * layer.getOutputSize() : input.length;
+        for (int i = 0; i < weightCount; i++) {
+            input[i] = random.nextGaussian(0, 1.0 / Math.sqrt(weightCount));
+        }
+        Arrays.fill(input, weightCount, input.length, 0.0);
         return layer;
     }
 
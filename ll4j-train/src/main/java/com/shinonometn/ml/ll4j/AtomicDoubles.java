@@ -0,0 +1,46 @@
+package com.shinonometn.ml.ll4j;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+
+/**
+ * Lock-free adds to the elements of a shared double array.
+ * <p>
+ * Java 8 has neither atomic double arrays nor VarHandles, and the weights must stay in the plain array of the
+ * layer, so each add is a compare-and-set loop of {@link Unsafe} over the raw bits of the element.
+ * Other threads may still read the elements with plain reads.
+ */
+final class AtomicDoubles {
+    private AtomicDoubles() {
+    }
+
+    private static final Unsafe unsafe;
+    private static final long base;
+    private static final int shift;
+
+    static {
+        try {
+            final Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        base = unsafe.arrayBaseOffset(double[].class);
+        shift = Integer.numberOfTrailingZeros(unsafe.arrayIndexScale(double[].class));
+    }
+
+    /**
+     * Add a value to an element, no add of another thread is lost. The index is not checked.
+     */
+    static void add(final double[] array, final int index, final double delta) {
+        final long offset = base + ((long) index << shift);
+        long bits;
+        do {
+            bits = unsafe.getLongVolatile(array, offset);
+        } while (!unsafe.compareAndSwapLong(
+                array, offset, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + delta)
+        ));
+    }
+}
@@ -1,7 +1,5 @@
 package com.shinonometn.ml.ll4j;
 
-import java.util.stream.IntStream;
-
 public interface BackwardFunction {
 
     /**
@@ -15,55 +13,210 @@ public interface BackwardFunction {
      */
     void apply(final double[] input, final Layer layer, final double[] errors, final double[] output);
 
-    BackwardFunction MaxIndex = (input, x, errors, output) -> {
-        final int max = (int) errors[0];
-        for (int i = 0; i < output.length; i++) {
-            if (i == max) {
-                output[i] = input[i] - 1;
-            } else {
-                output[i] = input[i];
-            }
+    /**
+     * Do backward propagation on a batch of samples.
+     * <p>
+     * Samples are stored row-major in flat arrays, the arrays may be larger than needed.
+     * Inputs and input errors are [batchSize][layer input size], errors are [batchSize][layer output size].
+     * The default implementation calls {@link #apply(double[], Layer, double[], double[])} on each sample.
+     *
+     * @param input     the inputs from forward propagation
+     * @param layer     current layer
+     * @param errors    output errors of the layer
+     * @param output    input errors of the layer
+     * @param batchSize sample count
+     */
+    default void applyBatch(
+            final double[] input,
+            final Layer layer,
+            final double[] errors,
+            final double[] output,
+            final int batchSize
+    ) {
+        final int inputSize = layer.getInputSize();
+        final int outputSize = layer.getOutputSize();
+        final double[] sampleInput = new double[inputSize];
+        final double[] sampleErrors = new double[outputSize];
+        final double[] sampleOutput = new double[inputSize];
+        for (int idxS = 0; idxS < batchSize; idxS++) {
+            System.arraycopy(input, idxS * inputSize, sampleInput, 0, inputSize);
+            System.arraycopy(errors, idxS * outputSize, sampleErrors, 0, outputSize);
+            apply(sampleInput, layer, sampleErrors, sampleOutput);
+            System.arraycopy(sampleOutput, 0, output, idxS * inputSize, inputSize);
         }
-    };
+    }
 
-    BackwardFunction Dense = new BackwardFunction() {
+    //================================================================
+
+    BackwardFunction MaxIndex = new BackwardFunction() {
         @Override
         public void apply(double[] input, Layer layer, double[] errors, double[] output) {
-            final int inputSize = layer.getInputSize();
+            forEachSample(input, 0, output.length, (int) errors[0], output);
+        }
 
-            IntStream.range(0, inputSize).parallel().forEach(idxI -> forEachInput(
-                    /*        Input index  */ idxI,
-                    /* Layer size and data */ layer.getInputSize(), layer.getOutputSize(), layer.data,
-                    /*   Lower layer error */ errors,
-                    /*        Error output */ output
-            ));
+        @Override
+        public void applyBatch(double[] input, Layer layer, double[] errors, double[] output, int batchSize) {
+            final int inputSize = layer.getInputSize();
+            final int outputSize = layer.getOutputSize();
+            for (int idxS = 0; idxS < batchSize; idxS++) {
+                forEachSample(input, idxS * inputSize, inputSize, (int) errors[idxS * outputSize], output);
+            }
         }
 
-        private void forEachInput(
-                final int idxI,
-                final int iSize, final int oSize, final double[] weights,
-                final double[] errors,
+        private void forEachSample(
+                final double[] input, final int offset, final int size,
+                final int max,
                 final double[] output
         ) {
-            double err = 0;
-            for (int idxO = 0; idxO < oSize; idxO++) {
-                err += errors[idxO] * weights[(idxO * iSize) + idxI];
+            for (int i = 0; i < size; i++) {
+                if (i == max) {
+                    output[offset + i] = input[offset + i] - 1;
+                } else {
+                    output[offset + i] = input[offset + i];
+                }
             }
-            output[idxI] = err;
         }
     };
 
-    BackwardFunction LeakyRelu = (input, layer, errors, output) -> {
-        final int outputSize = layer.getOutputSize();
-        for (int i = 0; i < outputSize; i++) {
-            final double v = input[i];
-            if (v > 0) {
-                output[i] = errors[i];
-            } else if (v < 0) {
-                output[i] = errors[i] * 0.01;
-            } else {
-                // if it is exactly zero, just let it be a very small value
-                output[i] = Double.MIN_NORMAL;
+    //================================================================
+
+    /**
+     * Error of input i is sum(errors[j] * weights[j][i]) for j in [0, outputSize).
+     * <p>
+     * Weights are output-major, so the inputs are split into chunks and each chunk walks the
+     * weight rows in order, reading a contiguous slice of every row.
+     * In a batch, each slice is used by all samples before moving to the next row.
+     * <p>
+     * The kernel comes from {@link TrainingKernels#current()}, this is the scalar one.
+     */
+    BackwardFunction Dense = dense(ExecutionPolicy.Adaptive);
+
+    /**
+     * Create a dense backward function that runs with the given execution policy
+     */
+    static BackwardFunction dense(final ExecutionPolicy policy) {
+        return TrainingKernels.current().backwardDense(policy);
+    }
+
+    /**
+     * Create the scalar dense backward function, see {@link #Dense}
+     */
+    static BackwardFunction scalarDense(final ExecutionPolicy policy) {
+        return new BackwardFunction() {
+            private static final int CHUNK_SIZE = 64;
+
+            @Override
+            public void apply(double[] input, Layer layer, double[] errors, double[] output) {
+                applyBatch(input, layer, errors, output, 1);
+            }
+
+            @Override
+            public void applyBatch(double[] input, Layer layer, double[] errors, double[] output, int batchSize) {
+                final int inputSize = layer.getInputSize();
+                final int outputSize = layer.getOutputSize();
+                final int chunkCount = (inputSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+                policy.execute(chunkCount, ExecutionPolicy.cost((long) CHUNK_SIZE * outputSize * batchSize), (from, to) -> {
+                    for (int idxC = from; idxC < to; idxC++) forEachChunk(
+                            /*        Input chunk  */ idxC * CHUNK_SIZE, Math.min(inputSize, (idxC + 1) * CHUNK_SIZE),
+                            /* Layer size and data */ inputSize, outputSize, layer.data,
+                            /*   Lower layer error */ errors,
+                            /*        Error output */ output,
+                            /*          Batch size */ batchSize
+                    );
+                });
+            }
+
+            private void forEachChunk(
+                    final int from, final int to,
+                    final int iSize, final int oSize, final double[] weights,
+                    final double[] errors,
+                    final double[] output,
+                    final int batchSize
+            ) {
+                for (int idxS = 0; idxS < batchSize; idxS++) {
+                    final int base = idxS * iSize;
+                    for (int idxI = from; idxI < to; idxI++) output[base + idxI] = 0;
+                }
+
+                for (int idxO = 0; idxO < oSize; idxO++) {
+                    final int row = idxO * iSize;
+                    for (int idxS = 0; idxS < batchSize; idxS++) {
+                        final double err = errors[idxS * oSize + idxO];
+                        final int base = idxS * iSize;
+                        for (int idxI = from; idxI < to; idxI++) {
+                            output[base + idxI] += err * weights[row + idxI];
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    //================================================================
+
+    /**
+     * The scalar kernel, {@link #LeakyRelu} comes from {@link TrainingKernels#current()}
+     */
+    BackwardFunction ScalarLeakyRelu = new BackwardFunction() {
+        @Override
+        public void apply(double[] input, Layer layer, double[] errors, double[] output) {
+            forEachValue(input, errors, output, layer.getOutputSize());
+        }
+
+        @Override
+        public void applyBatch(double[] input, Layer layer, double[] errors, double[] output, int batchSize) {
+            // Input size equals to output size, the whole batch is just a longer array
+            forEachValue(input, errors, output, layer.getOutputSize() * batchSize);
+        }
+
+        private void forEachValue(final double[] input, final double[] errors, final double[] output, final int size) {
+            for (int i = 0; i < size; i++) {
+                final double v = input[i];
+                if (v > 0) {
+                    output[i] = errors[i];
+                } else if (v < 0) {
+                    output[i] = errors[i] * 0.01;
+                } else {
+                    // if it is exactly zero, just let it be a very small value
+                    output[i] = Double.MIN_NORMAL;
+                }
+            }
+        }
+    };
+
+    BackwardFunction LeakyRelu = TrainingKernels.current().backwardLeakyRelu();
+
+    /**
+     * Backward of a LeakyRelu fused into the dense layer before it, see {@link ForwardFunction#fuseLeakyRelu()}.
+     * <p>
+     * The input of a fused LeakyRelu is not stored, so the input given here is its output. The output has
+     * the sign of the input, and exact zeros and NaNs came out as the smallest normal value, so the errors are
+     * the same as {@link #LeakyRelu} except for inputs too close to zero to tell.
+     */
+    BackwardFunction FusedLeakyRelu = new BackwardFunction() {
+        @Override
+        public void apply(double[] output, Layer layer, double[] errors, double[] result) {
+            forEachValue(output, errors, result, layer.getOutputSize());
+        }
+
+        @Override
+        public void applyBatch(double[] output, Layer layer, double[] errors, double[] result, int batchSize) {
+            forEachValue(output, errors, result, layer.getOutputSize() * batchSize);
+        }
+
+        private void forEachValue(final double[] output, final double[] errors, final double[] result, final int size) {
+            for (int i = 0; i < size; i++) {
+                final double v = output[i];
+                if (v == Double.MIN_NORMAL) {
+                    result[i] = Double.MIN_NORMAL;
+                } else if (v > 0) {
+                    result[i] = errors[i];
+                } else if (v < 0) {
+                    result[i] = errors[i] * 0.01;
+                } else {
+                    result[i] = Double.MIN_NORMAL;
+                }
             }
         }
     };
@@ -0,0 +1,216 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Buffers for mini-batch training.
+ * <p>
+ * Activations and errors are stored row-major, [batchSize][layer size], and grow to the largest batch seen.
+ * Gradients have the same layout as the layer weights, they are kept between batches and cleared after each update.
+ * <p>
+ * A dense layer followed by a LeakyRelu runs on the fused kernel like in {@link Model}, the output of the dense
+ * layer is not stored and the LeakyRelu runs backward from its own output, see {@link BackwardFunction#FusedLeakyRelu}.
+ * The forward time of the pair is reported on the dense layer.
+ * <p>
+ * With a metrics listener, the backward time of a layer includes the accumulation of its gradient.
+ */
+final class BatchWorkspace {
+    private final LayerAdjust[] adjusters;
+
+    /**
+     * values[0] is the batch input, values[k + 1] is the output of layer k, null if layer k is fused with the next one
+     */
+    double[][] values;
+
+    /**
+     * errors[k] is the input error of layer k
+     */
+    double[][] errors;
+
+    /**
+     * The expected answers, [batchSize][model output size]
+     */
+    double[] answers;
+
+    /**
+     * Weight gradient of each layer, null if the layer has no weights
+     */
+    final double[][] gradients;
+
+    private int capacity = 0;
+
+    /**
+     * Fused kernel of layer k and the LeakyRelu after it, null if layer k is not fused
+     */
+    private final ForwardFunction[] fused;
+
+    /** Receives the timings of the layers, null if disabled */
+    MetricsListener metrics;
+
+    BatchWorkspace(final LayerAdjust[] adjusters) {
+        this.adjusters = adjusters;
+        this.values = new double[adjusters.length + 1][];
+        this.errors = new double[adjusters.length][];
+        this.gradients = new double[adjusters.length][];
+        this.fused = new ForwardFunction[adjusters.length];
+        for (int k = 0; k < adjusters.length; k++) {
+            final Layer layer = adjusters[k].layer;
+            final int size = layer.data.length;
+            if (size > 0) gradients[k] = new double[size];
+
+            final boolean fusable = k + 1 < adjusters.length
+                    && Layers.TYPE_DENSE.equals(layer.type)
+                    && Layers.TYPE_LEAKY_RELU.equals(adjusters[k + 1].layer.type);
+            if (fusable) fused[k] = layer.function.fuseLeakyRelu();
+        }
+    }
+
+    /**
+     * Make sure that all buffers can hold a batch
+     */
+    void ensureCapacity(final int batchSize) {
+        if (batchSize <= capacity) return;
+
+        values[0] = new double[adjusters[0].getInputSize() * batchSize];
+        for (int k = 0; k < adjusters.length; k++) {
+            values[k + 1] = (fused[k] != null) ? null : new double[adjusters[k].getOutputSize() * batchSize];
+            errors[k] = new double[adjusters[k].getInputSize() * batchSize];
+        }
+        answers = new double[adjusters[adjusters.length - 1].getOutputSize() * batchSize];
+        capacity = batchSize;
+
+        if (metrics != null) {
+            long size = values[0].length + answers.length;
+            int count = 2;
+            for (int k = 0; k < adjusters.length; k++) {
+                if (values[k + 1] != null) {
+                    size += values[k + 1].length;
+                    count++;
+                }
+                size += errors[k].length;
+                count++;
+            }
+            metrics.onAllocation(count, size * 8);
+        }
+    }
+
+    void clearGradient(final int layerIndex) {
+        Arrays.fill(gradients[layerIndex], 0.0);
+    }
+
+    /**
+     * Drop the gradients of a batch that failed halfway, so they do not leak into the next batch
+     */
+    void clearGradients() {
+        for (int k = 0; k < gradients.length; k++) if (gradients[k] != null) clearGradient(k);
+    }
+
+    /**
+     * Run forward and backward propagation on a batch, and add the weight gradients to the gradient buffers.
+     * The weights are not changed. Entries should be checked by {@link ModelTrainer#checkLabeledData(DataSet.Entry)}.
+     *
+     * @return correct prediction count of this batch
+     */
+    int accumulate(final List<? extends DataSet.Entry> entries) {
+        final MetricsListener metrics = this.metrics;
+        final int batchSize = entries.size();
+        ensureCapacity(batchSize);
+
+        // Set data
+        final int inputSize = adjusters[0].getInputSize();
+        final int answerSize = adjusters[adjusters.length - 1].getOutputSize();
+        int idxS = 0;
+        for (final DataSet.Entry entry : entries) {
+            System.arraycopy(entry.values, 0, values[0], idxS * inputSize, inputSize);
+            System.arraycopy(entry.getLabel(), 0, answers, idxS * answerSize, answerSize);
+            idxS++;
+        }
+
+        // Forward propagation, layer by layer for the whole batch. A fused pair writes the output of the LeakyRelu
+        for (int k = 0; k < adjusters.length; k++) {
+            final Layer layer = adjusters[k].layer;
+            final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
+            final boolean isFused = fused[k] != null;
+            final ForwardFunction function = isFused ? fused[k] : layer.function;
+            function.applyBatch(
+                    /*      input = */ values[k], layer.getInputSize(),
+                    /*    weights = */ layer.data,
+                    /*     output = */ values[isFused ? k + 2 : k + 1], layer.getOutputSize(),
+                    /* batch size = */ batchSize
+            );
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Forward, k, layer, batchSize, System.nanoTime() - layerStart);
+            }
+            if (isFused) k++;
+        }
+
+        // log the correct count
+        final double[] outputResults = values[adjusters.length];
+        int correct = 0;
+        for (idxS = 0; idxS < batchSize; idxS++) {
+            boolean isCorrect = true;
+            for (int i = 0; i < answerSize; i++) {
+                final int idx = idxS * answerSize + i;
+                if (outputResults[idx] != answers[idx]) {
+                    isCorrect = false;
+                    break;
+                }
+            }
+            if (isCorrect) correct++;
+        }
+
+        // Backward propagation, accumulate the gradients with the weights before the update
+        try {
+            backward(batchSize);
+        } catch (RuntimeException e) {
+            clearGradients();
+            throw e;
+        }
+
+        return correct;
+    }
+
+    private void backward(final int batchSize) {
+        final MetricsListener metrics = this.metrics;
+        double[] upperError = answers;
+        for (int k = adjusters.length - 1; k >= 0; k--) {
+            final LayerAdjust adjuster = adjusters[k];
+            final double[] input = values[k];
+            final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
+
+            // Errors of the model input are never used
+            if (k > 0 && fused[k - 1] != null) {
+                // The input of a fused LeakyRelu is not stored, it runs backward from its output
+                BackwardFunction.FusedLeakyRelu.applyBatch(
+                        /*     output = */ values[k + 1],
+                        /*      layer = */ adjuster.layer,
+                        /*     errors = */ upperError,
+                        /*     result = */ errors[k],
+                        /* batch size = */ batchSize
+                );
+            } else if (k > 0) {
+                adjuster.function.applyBatch(
+                        /*      input = */ input,
+                        /*      layer = */ adjuster.layer,
+                        /*     errors = */ upperError,
+                        /*     output = */ errors[k],
+                        /* batch size = */ batchSize
+                );
+            }
+
+            if (gradients[k] != null) adjuster.updater.accumulate(
+                    /*      input = */ input,
+                    /*      layer = */ adjuster.layer,
+                    /*     errors = */ upperError,
+                    /* batch size = */ batchSize,
+                    /*   gradient = */ gradients[k]
+            );
+
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Backward, k, adjuster.layer, batchSize, System.nanoTime() - layerStart);
+            }
+            upperError = errors[k];
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.shinonometn.ml.ll4j;
+
+import com.shinonometn.ml.ll4j.DataSet.LabelEntry;
+import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Labeled data set held in memory in one array.
+ * <p>
+ * Features of all samples are packed row by row, as unsigned bytes if all values are integers in [0, 255]
+ * (like MNIST pixels) and as floats otherwise. So a 784 pixel sample takes 784 bytes instead of a
+ * {@code double[784]} of 6 KiB. Values are converted to doubles, and multiplied by the scale,
+ * only when a sample is copied out, usually into the reusable array of a {@link Sample}.
+ */
+public final class CompactDataSet {
+    private final int count;
+    private final int featureCount;
+    private final int[] labels;
+    private final byte[] bytes;     // Null if the features are floats
+    private final float[] floats;   // Null if the features are bytes
+    private final double scale;
+
+    private CompactDataSet(final int count,
+                           final int featureCount,
+                           final int[] labels,
+                           final byte[] bytes,
+                           final float[] floats,
+                           final double scale) {
+        this.count = count;
+        this.featureCount = featureCount;
+        this.labels = labels;
+        this.bytes = bytes;
+        this.floats = floats;
+        this.scale = scale;
+    }
+
+    /** Sample count */
+    public int size() {
+        return count;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /** True if the features are stored as unsigned bytes */
+    public boolean isByteFeatures() {
+        return bytes != null;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /** Bytes used by the labels and features */
+    public long getByteSize() {
+        final long features = (bytes != null) ? bytes.length : (long) floats.length * 4;
+        return features + (long) labels.length * 4;
+    }
+
+    /**
+     * A view of the same samples, features are multiplied by the scale when copied out
+     */
+    public CompactDataSet withScale(final double scale) {
+        return new CompactDataSet(count, featureCount, labels, bytes, floats, scale);
+    }
+
+    public int getLabel(final int index) {
+        checkIndex(index);
+        return labels[index];
+    }
+
+    /**
+     * Copy the scaled features of a sample to an array
+     */
+    public void copyTo(final int index, final double[] dest) {
+        checkIndex(index);
+        if (dest.length < featureCount) throw new IllegalArgumentException(String.format(
+                "Destination size %d is less than feature count %d", dest.length, featureCount
+        ));
+
+        final int offset = index * featureCount;
+        final double scale = this.scale;
+        if (bytes != null) {
+            for (int i = 0; i < featureCount; i++) dest[i] = (bytes[offset + i] & 0xFF) * scale;
+        } else {
+            for (int i = 0; i < featureCount; i++) dest[i] = floats[offset + i] * scale;
+        }
+    }
+
+    /**
+     * A reusable entry for this data set, call {@link Sample#load(int)} to fill it
+     */
+    public Sample newSample() {
+        return new Sample();
+    }
+
+    /**
+     * View this data set as an {@link IndexedDataSet}. Samples are loaded into a ring of {@code poolSize}
+     * reusable {@link Sample}s, so a sample stays valid until {@code poolSize} more samples are taken.
+     * Use a pool at least as large as the training batch.
+     */
+    public IndexedDataSet<Sample> asIndexed(final int poolSize) {
+        if (poolSize < 1) throw new IllegalArgumentException("Pool size should be at least 1, got " + poolSize);
+        final Sample[] pool = new Sample[poolSize];
+        for (int i = 0; i < poolSize; i++) pool[i] = new Sample();
+
+        return new IndexedDataSet<Sample>() {
+            private int next = 0;
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+            @Override
+            public Sample get(final int index) {
+                final Sample sample = pool[next];
+                next = (next + 1) % poolSize;
+                return sample.load(index);
+            }
+        };
+    }
+
+    /**
+     * Iterate all samples, each one in a new {@link LabelEntry}
+     */
+    public SampleIterator<LabelEntry> iterator() {
+        return new SampleIterator<LabelEntry>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public LabelEntry next() {
+                if (index >= count) throw new NoSuchElementException();
+                final double[] values = new double[featureCount];
+                copyTo(index, values);
+                return new LabelEntry(labels[index++], values);
+            }
+
+            @Override
+            public void close() {
+                index = count;
+            }
+        };
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException(String.format(
+                "Sample index %d out of range [0, %d)", index, count
+        ));
+    }
+
+    //================================================================
+
+    /**
+     * An entry whose value and label arrays are reused, each {@link #load(int)} overwrites them
+     */
+    public final class Sample extends DataSet.Entry {
+        private final double[] label = new double[1];
+        private int index = -1;
+
+        private Sample() {
+            super(new double[featureCount]);
+        }
+
+        /**
+         * Fill this entry with a sample
+         *
+         * @return this entry
+         */
+        public Sample load(final int index) {
+            copyTo(index, values);
+            label[0] = labels[index];
+            this.index = index;
+            return this;
+        }
+
+        /** Index of the loaded sample, -1 if none is loaded */
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public double[] getLabel() {
+            return label;
+        }
+
+        public int getLabelValue() {
+            return (int) label[0];
+        }
+
+        @Override
+        public int getLabelSize() {
+            return 1;
+        }
+    }
+
+    //================================================================
+
+    /**
+     * Read all samples of an iterator into memory, then close it
+     */
+    public static CompactDataSet load(final SampleIterator<LabelEntry> samples) throws IOException {
+        try {
+            final Builder builder = new Builder();
+            while (samples.hasNext()) {
+                final LabelEntry entry = samples.next();
+                builder.add(entry.getLabelValue(), entry.values);
+            }
+            return builder.build();
+        } finally {
+            samples.close();
+        }
+    }
+
+    /**
+     * Collects samples, starts with byte features and switches to floats on the first value that does not fit
+     */
+    public static final class Builder {
+        private int count = 0;
+        private int featureCount = -1;
+        private int[] labels = new int[1024];
+        private byte[] bytes = new byte[0];
+        private float[] floats = null;
+
+        public Builder add(final int label, final double[] values) {
+            if (featureCount < 0) {
+                featureCount = values.length;
+                bytes = new byte[featureCount * 1024];
+            }
+            if (values.length != featureCount) throw new IllegalArgumentException(String.format(
+                    "Sample %d has %d features, expected %d", count, values.length, featureCount
+            ));
+
+            if (count == labels.length) {
+                if ((long) count * 2 * featureCount > Integer.MAX_VALUE) throw new IllegalStateException(
+                        "Too many samples for one array: " + count
+                );
+                labels = Arrays.copyOf(labels, count * 2);
+                if (floats == null) bytes = Arrays.copyOf(bytes, count * 2 * featureCount);
+                else floats = Arrays.copyOf(floats, count * 2 * featureCount);
+            }
+
+            final int offset = count * featureCount;
+            if (floats == null) {
+                for (int i = 0; i < featureCount; i++) {
+                    final double value = values[i];
+                    if (value < 0 || value > 255 || value != (int) value) {
+                        switchToFloats();
+                        break;
+                    }
+                    bytes[offset + i] = (byte) (int) value;
+                }
+            }
+            if (floats != null) {
+                for (int i = 0; i < featureCount; i++) floats[offset + i] = (float) values[i];
+            }
+
+            labels[count++] = label;
+            return this;
+        }
+
+        private void switchToFloats() {
+            floats = new float[labels.length * featureCount];
+            final int size = count * featureCount;
+            for (int i = 0; i < size; i++) floats[i] = bytes[i] & 0xFF;
+            bytes = null;
+        }
+
+        public CompactDataSet build() {
+            final int features = Math.max(featureCount, 0);
+            final int size = count * features;
+            return new CompactDataSet(
+                    count,
+                    features,
+                    Arrays.copyOf(labels, count),
+                    (floats == null) ? Arrays.copyOf(bytes, size) : null,
+                    (floats == null) ? null : Arrays.copyOf(floats, size),
+                    1.0
+            );
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.shinonometn.ml.ll4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data-parallel mini-batch training on a {@link ModelTrainer}.
+ * <p>
+ * Each batch is split into shards, one for each worker. Workers run forward and backward propagation
+ * on their shard with their own activation, error and gradient buffers, reading the shared weights.
+ * Then the gradients are reduced in stripes: each worker sums one slice of every gradient over all workers
+ * and updates the weights in that slice. So the weights are updated once per batch, and no two threads
+ * ever write the same element.
+ * <p>
+ * The kernels of a worker run sequentially, all the parallelism comes from the shards.
+ * The calling thread works as the first worker. Not thread-safe, one batch at a time.
+ */
+public final class DataParallelTrainer implements Closeable {
+    private final ModelTrainer trainer;
+    private final BatchWorkspace[] workspaces;
+    private final ExecutorService executor;
+
+    private DataParallelTrainer(final ModelTrainer trainer, final int workerCount) {
+        this.trainer = trainer;
+
+        // Workers share the weights, but use sequential kernels
+        final Layer[] layers = new Layer[trainer.adjusters.length];
+        for (int k = 0; k < layers.length; k++) {
+            layers[k] = Layers.withExecutionPolicy(trainer.adjusters[k].layer, ExecutionPolicy.Sequential);
+        }
+        this.workspaces = new BatchWorkspace[workerCount];
+        for (int w = 0; w < workerCount; w++) {
+            workspaces[w] = new BatchWorkspace(
+                    ModelTrainer.createAdjustersForLayers(layers, ExecutionPolicy.Sequential)
+            );
+        }
+
+        this.executor = (workerCount == 1) ? null : newWorkerPool(workerCount - 1, "ll4j-trainer-");
+    }
+
+    public ModelTrainer getTrainer() {
+        return trainer;
+    }
+
+    public int getWorkerCount() {
+        return workspaces.length;
+    }
+
+    /** Receives the timings of training, null if disabled */
+    private volatile MetricsListener metrics;
+
+    /**
+     * Report the time of each layer, of each stripe update and of each batch to a listener.
+     * Layer times come from all workers, see {@link MetricsListener}.
+     *
+     * @param listener the listener, null to disable the metrics
+     */
+    public void setMetricsListener(final MetricsListener listener) {
+        this.metrics = listener;
+        for (final BatchWorkspace workspace : workspaces) workspace.metrics = listener;
+    }
+
+    /**
+     * Run a mini-batch adjust iteration on all workers, see {@link ModelTrainer#adjustBatch(List, double)}.
+     *
+     * @param entries      Data entries, with the sample data and a correct label
+     * @param learningRate learning rate of this network
+     * @return correct prediction count of this batch, made before the update
+     */
+    public int adjustBatch(final List<? extends DataSet.Entry> entries, double learningRate) {
+        // Check the learning rate
+        if (Double.isNaN(learningRate) || learningRate <= 0.0) {
+            learningRate = ModelTrainer.DefaultLearningRate;
+        }
+
+        final int batchSize = entries.size();
+        if (batchSize == 0) return 0;
+
+        for (final DataSet.Entry entry : entries) trainer.checkLabeledData(entry);
+
+        final MetricsListener metrics = this.metrics;
+        final long start = (metrics != null) ? System.nanoTime() : 0L;
+
+        // Forward and backward propagation, one shard for each worker
+        final int workerCount = workspaces.length;
+        final List<Callable<Integer>> shards = new ArrayList<>(workerCount);
+        for (int w = 0; w < workerCount; w++) {
+            final BatchWorkspace workspace = workspaces[w];
+            final int from = (int) ((long) batchSize * w / workerCount);
+            final int to = (int) ((long) batchSize * (w + 1) / workerCount);
+            shards.add(() -> (from == to) ? 0 : workspace.accumulate(entries.subList(from, to)));
+        }
+        final int[] counts;
+        try {
+            counts = runOnWorkers(executor, shards);
+        } catch (RuntimeException e) {
+            // The shards that succeeded have gradients of a batch that will never be applied
+            for (final BatchWorkspace workspace : workspaces) workspace.clearGradients();
+            throw e;
+        }
+        int correct = 0;
+        for (final int count : counts) correct += count;
+
+        // Reduce the gradients and update the weights, one stripe for each worker
+        for (final LayerAdjust adjuster : trainer.adjusters) adjuster.updater.beginStep();
+        final double lr = learningRate;
+        final List<Callable<Integer>> stripes = new ArrayList<>(workerCount);
+        for (int w = 0; w < workerCount; w++) {
+            final int stripe = w;
+            stripes.add(() -> {
+                reduceAndUpdate(stripe, lr, metrics, batchSize);
+                return 0;
+            });
+        }
+        runOnWorkers(executor, stripes);
+
+        if (metrics != null) metrics.onSamples(batchSize, correct, System.nanoTime() - start);
+        return correct;
+    }
+
+    /**
+     * Sum a stripe of the gradients into the first workspace, apply it, then clear the stripe in all workspaces
+     */
+    private void reduceAndUpdate(
+            final int stripe, final double learningRate,
+            final MetricsListener metrics, final int batchSize
+    ) {
+        final int workerCount = workspaces.length;
+        final LayerAdjust[] adjusters = trainer.adjusters;
+
+        for (int k = 0; k < adjusters.length; k++) {
+            final double[] sum = workspaces[0].gradients[k];
+            if (sum == null) continue;
+
+            final int from = (int) ((long) sum.length * stripe / workerCount);
+            final int to = (int) ((long) sum.length * (stripe + 1) / workerCount);
+            if (from == to) continue;
+
+            final long updateStart = (metrics != null) ? System.nanoTime() : 0L;
+            for (int w = 1; w < workerCount; w++) {
+                final double[] gradient = workspaces[w].gradients[k];
+                for (int i = from; i < to; i++) {
+                    sum[i] += gradient[i];
+                    gradient[i] = 0;
+                }
+            }
+
+            adjusters[k].updater.applyGradient(adjusters[k].layer, sum, from, to, learningRate);
+            for (int i = from; i < to; i++) sum[i] = 0;
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Update, k, adjusters[k].layer, batchSize, System.nanoTime() - updateStart);
+            }
+        }
+    }
+
+    /**
+     * Daemon threads for the workers other than the calling thread
+     */
+    static ExecutorService newWorkerPool(final int threadCount, final String namePrefix) {
+        final AtomicInteger threadIndex = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(threadCount, r -> {
+            final Thread thread = new Thread(r, namePrefix + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run the first task on the calling thread and the others on the pool, then wait for all of them
+     */
+    static int[] runOnWorkers(final ExecutorService executor, final List<Callable<Integer>> tasks) {
+        final List<Future<Integer>> futures = new ArrayList<>(tasks.size() - 1);
+        for (int i = 1; i < tasks.size(); i++) futures.add(executor.submit(tasks.get(i)));
+
+        final int[] results = new int[tasks.size()];
+        RuntimeException failure = null;
+        try {
+            results[0] = tasks.get(0).call();
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Exception e) {
+            failure = new RuntimeException(e);
+        }
+
+        // Always wait for all tasks, workspaces must not be used by two batches at once
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            while (true) {
+                try {
+                    results[i + 1] = futures.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = (e.getCause() instanceof RuntimeException)
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (failure != null) throw failure;
+        return results;
+    }
+
+    /**
+     * Stop the worker threads
+     */
+    @Override
+    public void close() {
+        if (executor != null) executor.shutdown();
+    }
+
+    //================================================================
+
+    /**
+     * Create a data-parallel trainer with a worker for each processor
+     */
+    public static DataParallelTrainer on(final ModelTrainer trainer) {
+        return on(trainer, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a data-parallel trainer. The weights are shared with the trainer.
+     */
+    public static DataParallelTrainer on(final ModelTrainer trainer, final int workerCount) {
+        if (workerCount < 1) throw new IllegalArgumentException("Worker count should be at least 1, got " + workerCount);
+        return new DataParallelTrainer(trainer, workerCount);
+    }
+}
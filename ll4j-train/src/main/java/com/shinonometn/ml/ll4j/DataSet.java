@@ -2,10 +2,10 @@ package com.shinonometn.ml.ll4j;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Scanner;
 
 public final class DataSet {
     private DataSet() {
@@ -64,6 +64,24 @@ public final class DataSet {
             return label.length;
         }
 
+        /**
+         * Create an entry, the values array is not copied
+         */
+        public static LabelEntry of(final int label, final double[] values) {
+            return new LabelEntry(label, values);
+        }
+
+        /**
+         * Create an entry from a CSV row, the label comes first
+         */
+        static LabelEntry ofRow(final NumericCsvReader reader, final double[] row, final int count) throws IOException {
+            final int label = (int) row[0];
+            if (label != row[0]) throw new IOException(String.format(
+                    "Label at line %d is not an integer: %s", reader.getLineNumber(), row[0]
+            ));
+            return new LabelEntry(label, Arrays.copyOfRange(row, 1, count));
+        }
+
         //================================================================
 
         public static SampleIterator<LabelEntry> createCSVIterator(String path) throws IOException {
@@ -71,40 +89,31 @@ public final class DataSet {
         }
 
         public static SampleIterator<LabelEntry> createCSVIterator(String path, boolean skipHeader) throws IOException {
-            final Scanner scanner = new Scanner(Files.newInputStream(Paths.get(path)));
+            final NumericCsvReader reader = NumericCsvReader.open(Paths.get(path));
 
-            if (skipHeader) scanner.nextLine(); // Skip the csv header
-
-            // Empty iterator
-            if (!scanner.hasNextLine()) return new SampleIterator<LabelEntry>() {
-                @Override
-                public void close() {}
-
-                @Override
-                public boolean hasNext() {
-                    return false;
-                }
-
-                @Override
-                public LabelEntry next() {
-                    return null;
-                }
-            };
+            if (skipHeader) reader.skipLine(); // Skip the csv header
 
             return new SampleIterator<LabelEntry>() {
+                // Row buffer, sized by the first row
+                private double[] row;
                 private LabelEntry entry = fetch();
 
                 private LabelEntry fetch() {
-                    if (!scanner.hasNextLine()) return null;
-
-                    final String line = scanner.nextLine().trim();
-                    if (line.isEmpty()) return null;
-
-                    final String[] v = line.split(",");
-                    final double[] buffer = new double[v.length - 1];
-                    for (int i = 1; i < v.length; i++) buffer[i - 1] = Double.parseDouble(v[i]);
-                    final int label = Integer.parseInt(v[0]);
-                    return new LabelEntry(label, buffer);
+                    try {
+                        final int count;
+                        if (row == null) {
+                            row = reader.readRow();
+                            if (row == null) return null;
+                            count = row.length;
+                        } else {
+                            count = reader.readRow(row);
+                            if (count < 0) return null;
+                        }
+
+                        return ofRow(reader, row, count);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
                 }
 
                 @Override
@@ -120,8 +129,8 @@ public final class DataSet {
                 }
 
                 @Override
-                public void close() {
-                    scanner.close();
+                public void close() throws IOException {
+                    reader.close();
                 }
             };
         }
@@ -0,0 +1,194 @@
+package com.shinonometn.ml.ll4j;
+
+import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Visit order of the samples of an {@link IndexedDataSet}, a new order for each epoch.
+ * <p>
+ * Shuffled orders come from {@link NRandom}, so the same seed gives the same orders. Up to
+ * {@link #FisherYatesLimit} samples the orders are Fisher-Yates shuffles of an index array. Above that,
+ * or with {@link #permutation(int, long)}, each order is a pseudo-random bijection of [0, size):
+ * a 4 round Feistel network with new keys for each epoch, walking the cycle until the result is in range.
+ * It needs no memory for the indexes, but the orders are not uniformly distributed among all permutations.
+ */
+public final class EpochSampler {
+    /** Largest data set shuffled with an index array */
+    public static final int FisherYatesLimit = 1 << 24;
+
+    private static final int Rounds = 4;
+
+    private final int size;
+    private final NRandom random;
+    private final int[] indexes;      // Fisher-Yates, null for the others
+    private final boolean shuffled;
+    private int epoch = 0;
+
+    // Feistel network over [0, 4^halfBits)
+    private final int halfBits;
+    private final long halfMask;
+
+    private EpochSampler(final int size, final NRandom random, final boolean shuffled, final boolean indexed) {
+        if (size < 0) throw new IllegalArgumentException("Size should not be negative, got " + size);
+        this.size = size;
+        this.random = random;
+        this.shuffled = shuffled;
+
+        if (indexed) {
+            indexes = new int[size];
+            for (int i = 0; i < size; i++) indexes[i] = i;
+        } else {
+            indexes = null;
+        }
+
+        int bits = 2;
+        while (bits < 32 && (1L << bits) < size) bits++;
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Count of epochs started */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Start a new epoch, the order of the last epoch should not be used any more
+     *
+     * @return indexes of this epoch, each index in [0, size) once
+     */
+    public PrimitiveIterator.OfInt nextEpoch() {
+        epoch++;
+        if (!shuffled) return new Positions(i -> i);
+
+        if (indexes != null) {
+            // Shuffle the order of the last epoch again
+            for (int i = size - 1; i > 0; i--) {
+                final int j = random.nextInt(i + 1);
+                final int t = indexes[i];
+                indexes[i] = indexes[j];
+                indexes[j] = t;
+            }
+            return new Positions(i -> indexes[i]);
+        }
+
+        final int[] keys = new int[Rounds];
+        for (int r = 0; r < Rounds; r++) keys[r] = random.nextInt();
+        return new Positions(i -> permute(i, keys));
+    }
+
+    /**
+     * Start a new epoch, samples are taken from the data set in the order of the epoch
+     */
+    public <T> SampleIterator<T> nextEpoch(final IndexedDataSet<T> data) {
+        if (data.size() != size) throw new IllegalArgumentException(String.format(
+                "Data set has %d samples, but the sampler is for %d", data.size(), size
+        ));
+        final PrimitiveIterator.OfInt order = nextEpoch();
+        return new SampleIterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return order.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return data.get(order.nextInt());
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        };
+    }
+
+    //================================================================
+
+    private interface IndexMap {
+        int indexAt(int position);
+    }
+
+    private final class Positions implements PrimitiveIterator.OfInt {
+        private final IndexMap map;
+        private int position = 0;
+
+        Positions(final IndexMap map) {
+            this.map = map;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < size;
+        }
+
+        @Override
+        public int nextInt() {
+            if (position >= size) throw new NoSuchElementException();
+            return map.indexAt(position++);
+        }
+    }
+
+    /**
+     * Encrypt until the value is in [0, size). The network is a bijection of [0, 4^halfBits),
+     * so following the cycle from a value in range always comes back in range.
+     */
+    private int permute(final int position, final int[] keys) {
+        long value = position;
+        do {
+            value = encrypt(value, keys);
+        } while (value >= size);
+        return (int) value;
+    }
+
+    private long encrypt(final long value, final int[] keys) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (int r = 0; r < Rounds; r++) {
+            final long next = left ^ (round(right, keys[r]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    private static long round(final long half, final int key) {
+        // Finalizer of MurmurHash3
+        int h = (int) half * 0x9E3779B9 ^ key;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & 0xFFFFFFFFL;
+    }
+
+    //================================================================
+
+    /**
+     * Visit the samples in their order, every epoch
+     */
+    public static EpochSampler sequential(final int size) {
+        return new EpochSampler(size, null, false, false);
+    }
+
+    /**
+     * Visit the samples in a new random order each epoch
+     */
+    public static EpochSampler shuffled(final int size, final long seed) {
+        return new EpochSampler(size, new NRandom(seed), true, size <= FisherYatesLimit);
+    }
+
+    /**
+     * Visit the samples in a new pseudo-random permutation each epoch, without an index array
+     */
+    public static EpochSampler permutation(final int size, final long seed) {
+        return new EpochSampler(size, new NRandom(seed), true, false);
+    }
+}
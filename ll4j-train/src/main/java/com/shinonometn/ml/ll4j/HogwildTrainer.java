@@ -0,0 +1,251 @@
+package com.shinonometn.ml.ll4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.shinonometn.ml.ll4j.Layers.*;
+
+/**
+ * Asynchronous SGD on a {@link ModelTrainer}, without locks (Hogwild).
+ * <p>
+ * Each worker takes samples from a shared order and runs the per-sample path of
+ * {@link ModelTrainer#adjust(DataSet.Entry, double)} with its own activation and error buffers.
+ * The weights are shared: workers read them while others are updating them, and update them right after
+ * each sample. So a worker may compute its gradient from weights that are a few updates old.
+ * This pays off when each sample touches few weights, like sparse inputs. With dense inputs the updates
+ * collide more often, compare with {@link DataParallelTrainer} before using it.
+ * <p>
+ * Dense layers are updated in one of the {@link UpdateMode}s. The kernels of a worker run sequentially,
+ * the calling thread works as the first worker. Not thread-safe, one call at a time.
+ */
+public final class HogwildTrainer implements Closeable {
+
+    /**
+     * How workers write the shared weights of dense layers
+     */
+    public enum UpdateMode {
+        /**
+         * Plain writes, no synchronization at all. Two workers updating the same weight at once may lose one
+         * of the updates, and on a 32-bit JVM a weight may even be torn. Weights are updated by the current kernels.
+         */
+        Relaxed,
+
+        /**
+         * Atomic writes without locks: each weight is added to with a compare-and-set, so no update is lost,
+         * but reads are plain. Rows of the weights are split into stripes and workers start on different
+         * stripes, so they seldom retry on the same weights.
+         */
+        Striped
+    }
+
+    /** Samples taken from the shared order at once */
+    private static final int ChunkSize = 16;
+
+    /** Most stripes of a dense layer */
+    private static final int MaxStripeCount = 64;
+
+    private final ModelTrainer trainer;
+    private final UpdateMode mode;
+    private final ModelTrainer[] workers;
+    private final ExecutorService executor;
+
+    private HogwildTrainer(final ModelTrainer trainer, final int workerCount, final UpdateMode mode) {
+        this.trainer = trainer;
+        this.mode = mode;
+
+        // Workers share the weights, but use sequential kernels
+        final LayerAdjust[] adjusters = trainer.adjusters;
+        final Layer[] layers = new Layer[adjusters.length];
+        final int[] stripeCounts = new int[adjusters.length];
+        for (int k = 0; k < layers.length; k++) {
+            layers[k] = Layers.withExecutionPolicy(adjusters[k].layer, ExecutionPolicy.Sequential);
+            if (mode == UpdateMode.Striped && layers[k].type.equals(TYPE_DENSE)) {
+                stripeCounts[k] = Math.min(layers[k].getOutputSize(), MaxStripeCount);
+            }
+        }
+
+        final Model model = new Model(layers);
+        this.workers = new ModelTrainer[workerCount];
+        for (int w = 0; w < workerCount; w++) {
+            final LayerAdjust[] workerAdjusters = ModelTrainer.createAdjustersForLayers(layers, ExecutionPolicy.Sequential);
+            for (int k = 0; k < workerAdjusters.length; k++) {
+                if (stripeCounts[k] == 0) continue;
+                final LayerAdjust.Updater updater = stripedDenseUpdate(stripeCounts[k], w);
+                workerAdjusters[k] = new LayerAdjust(layers[k], updater, workerAdjusters[k].function);
+            }
+            workers[w] = new ModelTrainer(workerAdjusters, model);
+        }
+
+        this.executor = (workerCount == 1) ? null : DataParallelTrainer.newWorkerPool(workerCount - 1, "ll4j-hogwild-");
+    }
+
+    public ModelTrainer getTrainer() {
+        return trainer;
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public UpdateMode getUpdateMode() {
+        return mode;
+    }
+
+    /**
+     * Report the time of each layer and each sample of all workers to a listener, see {@link MetricsListener}
+     *
+     * @param listener the listener, null to disable the metrics
+     */
+    public void setMetricsListener(final MetricsListener listener) {
+        for (final ModelTrainer worker : workers) worker.setMetricsListener(listener);
+    }
+
+    /**
+     * Adjust on every entry once, each entry is taken by one of the workers.
+     *
+     * @param entries      Data entries, with the sample data and a correct label. They are read from many threads.
+     * @param learningRate learning rate of this network
+     * @return correct prediction count, each made before the update of its sample
+     */
+    public int adjust(final List<? extends DataSet.Entry> entries, final double learningRate) {
+        for (final DataSet.Entry entry : entries) trainer.checkLabeledData(entry);
+
+        // Chunks are claimed by moving a shared cursor
+        final int size = entries.size();
+        final AtomicInteger cursor = new AtomicInteger(0);
+        final ChunkSource chunks = chunk -> {
+            final int from = cursor.getAndAdd(chunk.length);
+            final int count = Math.max(Math.min(chunk.length, size - from), 0);
+            for (int i = 0; i < count; i++) chunk[i] = from + i;
+            return count;
+        };
+        return run(chunks, learningRate, worker -> entries::get);
+    }
+
+    /**
+     * Adjust on samples of a data set, in the given order. Each worker loads samples into its own entry.
+     *
+     * @param data         Data set
+     * @param order        Sample indexes, like an epoch of an {@link EpochSampler}
+     * @param learningRate learning rate of this network
+     * @return correct prediction count, each made before the update of its sample
+     */
+    public int adjust(final CompactDataSet data, final PrimitiveIterator.OfInt order, final double learningRate) {
+        final CompactDataSet.Sample[] samples = new CompactDataSet.Sample[workers.length];
+        for (int w = 0; w < samples.length; w++) samples[w] = data.newSample();
+        if (samples.length > 0 && data.size() > 0) trainer.checkLabeledData(samples[0].load(0));
+
+        return run(chunk -> takeChunk(order, chunk), learningRate, worker -> samples[worker]::load);
+    }
+
+    //================================================================
+
+    private interface ChunkSource {
+        /** Fill the chunk with the next sample indexes, return the count, 0 at the end */
+        int take(int[] chunk);
+    }
+
+    private interface SampleSource {
+        DataSet.Entry get(int index);
+    }
+
+    private interface SampleSourceFactory {
+        SampleSource forWorker(int worker);
+    }
+
+    private int run(final ChunkSource chunks, final double learningRate, final SampleSourceFactory sources) {
+        final List<Callable<Integer>> tasks = new ArrayList<>(workers.length);
+        for (int w = 0; w < workers.length; w++) {
+            final ModelTrainer worker = workers[w];
+            final SampleSource source = sources.forWorker(w);
+            tasks.add(() -> {
+                final int[] chunk = new int[ChunkSize];
+                int correct = 0;
+                while (true) {
+                    final int size = chunks.take(chunk);
+                    if (size == 0) return correct;
+                    for (int i = 0; i < size; i++) {
+                        if (worker.adjust(source.get(chunk[i]), learningRate) > 0) correct++;
+                    }
+                }
+            });
+        }
+
+        int correct = 0;
+        for (final int count : DataParallelTrainer.runOnWorkers(executor, tasks)) correct += count;
+        return correct;
+    }
+
+    /**
+     * Take the next indexes of a shared order. An iterator is not thread-safe by itself, so the order is locked
+     * once for each chunk.
+     */
+    private static int takeChunk(final PrimitiveIterator.OfInt order, final int[] chunk) {
+        synchronized (order) {
+            int size = 0;
+            while (size < chunk.length && order.hasNext()) chunk[size++] = order.nextInt();
+            return size;
+        }
+    }
+
+    /**
+     * Same update as the scalar dense update with atomic adds, one stripe of rows at a time,
+     * starting from a different stripe for each worker. The bias of a row is updated with it.
+     */
+    private static LayerAdjust.Updater stripedDenseUpdate(final int stripeCount, final int worker) {
+        return (inputs, layer, errors, lr) -> {
+            final int inputSize = layer.getInputSize();
+            final int outputSize = layer.getOutputSize();
+            final double[] weights = layer.data;
+            final int bias = layer.hasBias() ? inputSize * outputSize : -1;
+
+            for (int n = 0; n < stripeCount; n++) {
+                final int stripe = (worker + n) % stripeCount;
+                final int from = (int) ((long) outputSize * stripe / stripeCount);
+                final int to = (int) ((long) outputSize * (stripe + 1) / stripeCount);
+                for (int idxO = from; idxO < to; idxO++) {
+                    final double rate = lr * errors[idxO];
+                    final int row = idxO * inputSize;
+                    for (int idxI = 0; idxI < inputSize; idxI++) {
+                        AtomicDoubles.add(weights, row + idxI, -(rate * inputs[idxI]));
+                    }
+                    if (bias >= 0) AtomicDoubles.add(weights, bias + idxO, -rate);
+                }
+            }
+        };
+    }
+
+    /**
+     * Stop the worker threads
+     */
+    @Override
+    public void close() {
+        if (executor != null) executor.shutdown();
+    }
+
+    //================================================================
+
+    /**
+     * Create a Hogwild trainer with a worker for each processor and relaxed updates
+     */
+    public static HogwildTrainer on(final ModelTrainer trainer) {
+        return on(trainer, Runtime.getRuntime().availableProcessors(), UpdateMode.Relaxed);
+    }
+
+    /**
+     * Create a Hogwild trainer. The weights are shared with the trainer.
+     */
+    public static HogwildTrainer on(final ModelTrainer trainer, final int workerCount, final UpdateMode mode) {
+        if (workerCount < 1) throw new IllegalArgumentException("Worker count should be at least 1, got " + workerCount);
+        if (mode == null) throw new IllegalArgumentException("Update mode should not be null");
+        if (trainer.getOptimizer() != Optimizer.Sgd) throw new IllegalArgumentException(
+                "Hogwild workers only update with plain SGD, the trainer has another optimizer"
+        );
+        return new HogwildTrainer(trainer, workerCount, mode);
+    }
+}
@@ -0,0 +1,31 @@
+package com.shinonometn.ml.ll4j;
+
+import java.util.List;
+
+/**
+ * Data set with random access to its samples, see {@link EpochSampler}
+ */
+public interface IndexedDataSet<T> {
+    /** Sample count */
+    int size();
+
+    /** Get a sample, index in [0, size) */
+    T get(int index);
+
+    /**
+     * View a list as a data set, samples are not copied
+     */
+    static <T> IndexedDataSet<T> of(final List<T> samples) {
+        return new IndexedDataSet<T>() {
+            @Override
+            public int size() {
+                return samples.size();
+            }
+
+            @Override
+            public T get(final int index) {
+                return samples.get(index);
+            }
+        };
+    }
+}
@@ -45,18 +45,107 @@ public class LayerAdjust {
          * @param learningRate How aggressive the layer update should be
          */
         void apply(final double[] input, final Layer layer, final double[] error, final double learningRate);
+
+        /**
+         * Add the weight gradient of a batch of samples to a gradient buffer, for mini-batch training.
+         * <p>
+         * Samples are stored row-major in flat arrays, the arrays may be larger than needed.
+         * The gradient has the same layout as the layer weights. Layers without weights have nothing to do,
+         * the default adds the gradient of the output-major weights of a dense layer:
+         * gradient[j][i] += error[j] * input[i] for each sample. Biases are left to {@link AdjustFunctions#withBias(Updater)}.
+         *
+         * @param input     Inputs of this layer, [batchSize][layer input size]
+         * @param layer     The layer
+         * @param error     Errors of this layer, [batchSize][layer output size]
+         * @param batchSize Sample count
+         * @param gradient  Gradient buffer that the gradient of the batch is added to
+         */
+        default void accumulate(
+                final double[] input,
+                final Layer layer,
+                final double[] error,
+                final int batchSize,
+                final double[] gradient
+        ) {
+            if (layer.data.length == 0) return;
+
+            final int inputSize = layer.getInputSize();
+            final int outputSize = layer.getOutputSize();
+            for (int idxS = 0; idxS < batchSize; idxS++) {
+                final int base = idxS * inputSize;
+                for (int idxO = 0; idxO < outputSize; idxO++) {
+                    final double e = error[idxS * outputSize + idxO];
+                    if (e == 0) continue;
+                    final int row = idxO * inputSize;
+                    for (int idxI = 0; idxI < inputSize; idxI++) gradient[row + idxI] += e * input[base + idxI];
+                }
+            }
+        }
+
+        /**
+         * Apply an accumulated gradient to the layer weights: weights[k] -= learningRate * gradient[k]
+         *
+         * @param layer        The layer that containing weights to be updated
+         * @param gradient     Gradient from {@link #accumulate(double[], Layer, double[], int, double[])}
+         * @param learningRate How aggressive the layer update should be
+         */
+        default void applyGradient(final Layer layer, final double[] gradient, final double learningRate) {
+            applyGradient(layer, gradient, 0, layer.data.length, learningRate);
+        }
+
+        /**
+         * Apply an accumulated gradient to a range of the layer weights, [from, to).
+         * Different ranges of one layer may be updated from different threads at the same time.
+         * A weight update made of ranges starts with {@link #beginStep()}.
+         */
+        default void applyGradient(
+                final Layer layer,
+                final double[] gradient,
+                final int from, final int to,
+                final double learningRate
+        ) {
+            final double[] weights = layer.data;
+            for (int k = from; k < to; k++) {
+                weights[k] -= learningRate * gradient[k];
+            }
+        }
+
+        /**
+         * Start a weight update that is applied in ranges, on the thread that hands out the ranges.
+         * Updaters that count steps, like Adam, count them here. {@link #apply(double[], Layer, double[], double)}
+         * and the whole-layer applyGradient start their own step.
+         */
+        default void beginStep() {
+        }
     }
 
     //================================================================
 
     static LayerAdjust createAdjuster(Layer layer) {
+        return createAdjuster(layer, ExecutionPolicy.Adaptive);
+    }
+
+    static LayerAdjust createAdjuster(Layer layer, ExecutionPolicy policy) {
+        return createAdjuster(layer, policy, Optimizer.Sgd);
+    }
+
+    static LayerAdjust createAdjuster(Layer layer, ExecutionPolicy policy, Optimizer optimizer) {
+        if (layer.frozen) throw new IllegalArgumentException(String.format(
+                "Layer %s is read-only and cannot be trained", layer.type
+        ));
+        if (layer.getPrecision() != Precision.Float64) throw new IllegalArgumentException(String.format(
+                "Layer %s is %s, only Float64 layers can be trained", layer.type, layer.getPrecision()
+        ));
+
         final Updater updater;
         final BackwardFunction function;
         switch (layer.type) {
-            case TYPE_DENSE:
-                updater = AdjustFunctions.DenseUpdate;
-                function = BackwardFunction.Dense;
+            case TYPE_DENSE: {
+                final Updater sgd = AdjustFunctions.denseUpdate(policy);
+                updater = optimizer.newUpdater(layer, layer.hasBias() ? AdjustFunctions.withBias(sgd) : sgd, policy);
+                function = BackwardFunction.dense(policy);
                 break;
+            }
             case TYPE_JUDGE:
                 updater = AdjustFunctions.JudgeUpdate;
                 function = BackwardFunction.MaxIndex;
@@ -5,12 +5,14 @@ import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 import static com.shinonometn.ml.ll4j.Layers.*;
 
 public class ModelTrainer {
     final LayerAdjust[] adjusters;
     final Model model;
+    final Optimizer optimizer;
 
     private final HashMap<Object, double[]> outputCache = new HashMap<>();
     private final HashMap<Object, double[]> errorCache = new HashMap<>();
@@ -36,9 +38,14 @@ public class ModelTrainer {
     }
 
     ModelTrainer(LayerAdjust[] adjusters, Model model) {
+        this(adjusters, model, Optimizer.Sgd);
+    }
+
+    ModelTrainer(LayerAdjust[] adjusters, Model model, Optimizer optimizer) {
 
         this.adjusters = adjusters;
         this.model = model;
+        this.optimizer = optimizer;
 
         // Create input
         final double[] input = new double[model.getInputSize()];
@@ -52,26 +59,53 @@ public class ModelTrainer {
     }
 
     void setLabeledData(final DataSet.Entry dataEntry) {
+        checkLabeledData(dataEntry);
+
+        // Set input
         final double[] input = dataEntry.values;
-        final int inputSize = input.length;
-        final double[] modelInput = getInput();
-        if (inputSize != getInput().length) throw new IllegalArgumentException(String.format(
+        System.arraycopy(input, 0, getInput(), 0, input.length);
+
+        // Set the answer
+        dataEntry.setValueTo(getAnswer());
+    }
+
+    void checkLabeledData(final DataSet.Entry dataEntry) {
+        final int inputSize = dataEntry.values.length;
+        final int modelInputSize = model.getInputSize();
+        if (inputSize != modelInputSize) throw new IllegalArgumentException(String.format(
                 "Input data size does not equal to the model input size: %d, expected: %d",
-                inputSize, modelInput.length
+                inputSize, modelInputSize
         ));
 
         final int outputSize = dataEntry.getLabelSize();
-        final double[] answer = getAnswer();
-        if (outputSize != answer.length) throw new IllegalArgumentException(String.format(
+        final int answerSize = model.getOutputSize();
+        if (outputSize != answerSize) throw new IllegalArgumentException(String.format(
                 "Label dimensions does not equals to the model output: %d, expected: %d",
-                outputSize, answer.length
+                outputSize, answerSize
         ));
+    }
 
-        // Set input
-        System.arraycopy(input, 0, modelInput, 0, inputSize);
+    /** Receives the timings of training, null if disabled */
+    private MetricsListener metrics;
 
-        // Set the answer
-        dataEntry.setValueTo(answer);
+    /**
+     * Report the time of each layer and each call of {@link #adjust(DataSet.Entry, double)} and
+     * {@link #adjustBatch(List, double)} to a listener, see {@link MetricsListener}
+     *
+     * @param listener the listener, null to disable the metrics
+     */
+    public void setMetricsListener(final MetricsListener listener) {
+        this.metrics = listener;
+    }
+
+    /** Get the metrics listener, null if disabled */
+    public MetricsListener getMetricsListener() {
+        return metrics;
+    }
+
+    /** Get the optimizer of the dense layers */
+    public Optimizer getOptimizer() {
+        return optimizer;
     }
 
     public Model toModel() {
@@ -82,6 +116,13 @@ public class ModelTrainer {
         return new Model(layers);
     }
 
+    /**
+     * Create a model of the trained weights in the given precision. A Float32 model has its own copy of the weights.
+     */
+    public Model toModel(final Precision precision) {
+        return toModel().withPrecision(precision);
+    }
+
     //================================================================
     abstract static class Step {
 
@@ -169,6 +210,9 @@ public class ModelTrainer {
             learningRate = DefaultLearningRate;
         }
 
+        final MetricsListener metrics = this.metrics;
+        final long start = (metrics != null) ? System.nanoTime() : 0L;
+
         // Set data
         setLabeledData(entry);
 
@@ -188,8 +232,10 @@ public class ModelTrainer {
          * And the latest layer's output is the final result. We need those indeterminate results for the
          * network updating.
          */
-        for (final LayerAdjust adjuster : adjusters) {
+        for (int k = 0; k < adjusters.length; k++) {
+            final LayerAdjust adjuster = adjusters[k];
             final Layer currentLayer = adjuster.layer;
+            final long layerStart = (metrics != null) ? System.nanoTime() : 0L;
 
             final Step currentStep = new Step.Adjust(this, adjuster);
             final double[] input = steps.getFirst().getValues();
@@ -201,6 +247,9 @@ public class ModelTrainer {
                     /* Destination of the outputs   */ output
             );
 
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Forward, k, currentLayer, 1, System.nanoTime() - layerStart);
+            }
             steps.push(currentStep);
         }
 
@@ -222,6 +271,7 @@ public class ModelTrainer {
          * do calculation and update together.
          */
         double[] upperError = expectedResults;
+        int layerIndex = adjusters.length - 1;
         Step i = steps.pop();
         while ((i instanceof Step.Adjust) && !steps.isEmpty()) {
             final Step.Adjust currentStep = (Step.Adjust) i;
@@ -231,6 +281,7 @@ public class ModelTrainer {
             final Step nextStep = steps.getFirst();
             final double[] input = nextStep.getValues();
 
+            final long backwardStart = (metrics != null) ? System.nanoTime() : 0L;
             currentStep.tweaker.function.apply(
                     /*     input = */ input,
                     /*     layer = */ currentlayer,
@@ -238,6 +289,7 @@ public class ModelTrainer {
                     /*    output = */ lowerError
             );
 
+            final long updateStart = (metrics != null) ? System.nanoTime() : 0L;
             currentStep.tweaker.updater.apply(
                     /*        input = */ input,
                     /*        layer = */ currentlayer,
@@ -245,13 +297,72 @@ public class ModelTrainer {
                     /* learningRate = */ learningRate
             );
 
+            if (metrics != null) {
+                final long end = System.nanoTime();
+                metrics.onLayer(MetricsListener.Phase.Backward, layerIndex, currentlayer, 1, updateStart - backwardStart);
+                metrics.onLayer(MetricsListener.Phase.Update, layerIndex, currentlayer, 1, end - updateStart);
+            }
+
             // Current layer's input error is the previous layer's output error
             upperError = lowerError;
+            layerIndex--;
             i = steps.pop();
         }
 
+        if (metrics != null) metrics.onSamples(1, isCorrect ? 1 : 0, System.nanoTime() - start);
         return isCorrect ? 1.0 : -1.0;
     }
+
+    //================================================================
+
+    private BatchWorkspace batchWorkspace;
+
+    /**
+     * Run a mini-batch adjust iteration, with a learning rate.
+     * <p>
+     * All samples go through the forward and backward propagation together, so the dense layers
+     * run as matrix-matrix operations. The weight gradients of the whole batch are summed up, and
+     * the weights are updated once at the end of the batch. Since the gradients are summed (not averaged),
+     * the learning rate means the same as in {@link #adjust(DataSet.Entry, double)}.
+     *
+     * @param entries      Data entries, with the sample data and a correct label
+     * @param learningRate learning rate of this network
+     * @return correct prediction count of this batch, made before the update
+     */
+    public int adjustBatch(final List<? extends DataSet.Entry> entries, double learningRate) {
+        // Check the learning rate
+        if (Double.isNaN(learningRate) || learningRate <= 0.0) {
+            learningRate = DefaultLearningRate;
+        }
+
+        final int batchSize = entries.size();
+        if (batchSize == 0) return 0;
+
+        for (final DataSet.Entry entry : entries) checkLabeledData(entry);
+
+        final MetricsListener metrics = this.metrics;
+        final long start = (metrics != null) ? System.nanoTime() : 0L;
+
+        if (batchWorkspace == null) batchWorkspace = new BatchWorkspace(adjusters);
+        final BatchWorkspace workspace = batchWorkspace;
+        workspace.metrics = metrics;
+        final int correct = workspace.accumulate(entries);
+
+        // Update once for the whole batch
+        for (int k = 0; k < adjusters.length; k++) {
+            if (workspace.gradients[k] == null) continue;
+            final long updateStart = (metrics != null) ? System.nanoTime() : 0L;
+            adjusters[k].updater.applyGradient(adjusters[k].layer, workspace.gradients[k], learningRate);
+            workspace.clearGradient(k);
+            if (metrics != null) {
+                metrics.onLayer(MetricsListener.Phase.Update, k, adjusters[k].layer, batchSize, System.nanoTime() - updateStart);
+            }
+        }
+
+        if (metrics != null) metrics.onSamples(batchSize, correct, System.nanoTime() - start);
+        return correct;
+    }
+
     //================================================================
 
     /**
@@ -266,12 +377,18 @@ public class ModelTrainer {
                         writer.printf("D %d %d ", layer.getInputSize(), layer.getOutputSize());
                         final int inputSize = layer.getInputSize();
                         final int outputSize = layer.getOutputSize();
+                        // Weights are output-major in memory, the text format is [input][output]
                         for (int i = 0; i < inputSize; i++) {
                             for (int k = 0; k < outputSize; k++) {
-                                writer.print(layer.data[i * outputSize + k]);
+                                writer.print(layer.data[k * inputSize + i]);
                                 writer.print(" ");
                             }
                         }
+                        // Biases follow the weights
+                        for (int k = inputSize * outputSize; k < layer.data.length; k++) {
+                            writer.print(layer.data[k]);
+                            writer.print(" ");
+                        }
                         break;
                     }
 
@@ -297,31 +414,82 @@ public class ModelTrainer {
      * Create a ModelTrainer from a set of layers
      */
     public static ModelTrainer create(Layer... layers) {
+        return create(Optimizer.Sgd, layers);
+    }
+
+    /**
+     * Create a ModelTrainer from a set of layers, dense layers are updated by the optimizer
+     */
+    public static ModelTrainer create(final Optimizer optimizer, final Layer... layers) {
+        if (optimizer == null) throw new IllegalArgumentException("Optimizer should not be null");
         final Model model = new Model(layers);
-        final LayerAdjust[] adjusters = createAdjustersForLayers(layers);
-        return new ModelTrainer(adjusters, model);
+        final LayerAdjust[] adjusters = createAdjustersForLayers(layers, ExecutionPolicy.Adaptive, optimizer);
+        return new ModelTrainer(adjusters, model, optimizer);
     }
 
     /**
-     * Create a ModelTrainer on a Model
+     * Create a ModelTrainer on a Model.
+     * <p>
+     * Training always runs in double precision. The weights are shared with a Float64 model,
+     * a Float32 model is widened to a Float64 copy first, use {@link #toModel(Precision)} to get it back.
      */
     public static ModelTrainer on(final Model model) {
-        final LayerAdjust[] adjusts = createAdjustersForLayers(model.layers);
-        return new ModelTrainer(adjusts, model);
+        return withOptimizer(model, Optimizer.Sgd);
+    }
+
+    /**
+     * Create a ModelTrainer on a Model, all dense kernels run with the given execution policy.
+     * The weights are shared with a Float64 model, see {@link #on(Model)}.
+     */
+    public static ModelTrainer on(final Model model, final ExecutionPolicy policy) {
+        return on(model, policy, Optimizer.Sgd);
+    }
+
+    /**
+     * Create a ModelTrainer on a Model, dense layers are updated by the optimizer.
+     * The weights are shared with a Float64 model, see {@link #on(Model)}.
+     * <p>
+     * Not an overload of {@code on}: an Optimizer and an ExecutionPolicy are both functional interfaces
+     * of three parameters, so a lambda would match either of them.
+     */
+    public static ModelTrainer withOptimizer(final Model model, final Optimizer optimizer) {
+        if (optimizer == null) throw new IllegalArgumentException("Optimizer should not be null");
+        final Model master = model.withPrecision(Precision.Float64);
+        final LayerAdjust[] adjusts = createAdjustersForLayers(master.layers, ExecutionPolicy.Adaptive, optimizer);
+        return new ModelTrainer(adjusts, master, optimizer);
+    }
+
+    /**
+     * Create a ModelTrainer on a Model, with an execution policy and an optimizer.
+     * The weights are shared with a Float64 model, see {@link #on(Model)}.
+     */
+    public static ModelTrainer on(final Model model, final ExecutionPolicy policy, final Optimizer optimizer) {
+        if (optimizer == null) throw new IllegalArgumentException("Optimizer should not be null");
+        final Model pinned = model.withPrecision(Precision.Float64).withExecutionPolicy(policy);
+        final LayerAdjust[] adjusts = createAdjustersForLayers(pinned.layers, policy, optimizer);
+        return new ModelTrainer(adjusts, pinned, optimizer);
     }
 
     // Helper to create adjuster for each layers
     static LayerAdjust[] createAdjustersForLayers(Layer[] layers) {
+        return createAdjustersForLayers(layers, ExecutionPolicy.Adaptive);
+    }
+
+    static LayerAdjust[] createAdjustersForLayers(Layer[] layers, ExecutionPolicy policy) {
+        return createAdjustersForLayers(layers, policy, Optimizer.Sgd);
+    }
+
+    static LayerAdjust[] createAdjustersForLayers(Layer[] layers, ExecutionPolicy policy, Optimizer optimizer) {
         final LayerAdjust[] adjusts = new LayerAdjust[layers.length];
         for (int i = 0; i < adjusts.length; i++) {
-            adjusts[i] = LayerAdjust.createAdjuster(layers[i]);
+            adjusts[i] = LayerAdjust.createAdjuster(layers[i], policy, optimizer);
         }
         return adjusts;
     }
 
     //================================================================
     /**
-     * The default learning rate.
+     * The default learning rate, fit for plain SGD only, see {@link Optimizer}.
      * <p>
      * Why `8e-7`(0.0000008)? I have no idea. This value is from the origin LL4J codes.
      */
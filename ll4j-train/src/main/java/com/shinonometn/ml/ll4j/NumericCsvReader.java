@@ -0,0 +1,245 @@
+package com.shinonometn.ml.ll4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader of numeric CSV files, like the MNIST CSV files.
+ * <p>
+ * Bytes are read in large blocks, each line is located in the block and its fields are parsed
+ * in place by {@link AsciiNumbers}, so no String is created for lines or fields. Empty lines are skipped,
+ * both "\n" and "\r\n" line endings are accepted. Not thread-safe.
+ */
+public final class NumericCsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] bytes = buffer.array();
+
+    private int position = 0;      // Start of the next line
+    private int limit = 0;         // End of valid bytes
+    private boolean eof = false;
+
+    private int lineStart = 0;     // Current line, [lineStart, lineEnd), without the line break
+    private int lineEnd = 0;
+    private long lineNumber = 0;
+
+    public NumericCsvReader(final ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Read lines from a block of bytes in memory, [from, to)
+     */
+    NumericCsvReader(final byte[] bytes, final int from, final int to) {
+        this.channel = null;
+        this.buffer = ByteBuffer.wrap(bytes);
+        this.bytes = bytes;
+        this.position = from;
+        this.limit = to;
+        this.eof = true;
+    }
+
+    /**
+     * Open a CSV file
+     */
+    public static NumericCsvReader open(final Path path) throws IOException {
+        return new NumericCsvReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Skip a line, such as the header
+     *
+     * @return false if there is no more line
+     */
+    public boolean skipLine() throws IOException {
+        return nextLine();
+    }
+
+    /**
+     * Read the next non-empty row into an array
+     *
+     * @return value count of the row, or -1 if there is no more row
+     * @throws IOException if the row has more values than the array can hold, or a field is not a number
+     */
+    public int readRow(final double[] values) throws IOException {
+        if (!nextNonEmptyLine()) return -1;
+        return parseLine(values, values.length);
+    }
+
+    /**
+     * Read the next non-empty row
+     *
+     * @return values of the row, or null if there is no more row
+     */
+    public double[] readRow() throws IOException {
+        if (!nextNonEmptyLine()) return null;
+
+        int count = 1;
+        for (int i = lineStart; i < lineEnd; i++) if (bytes[i] == ',') count++;
+        if (bytes[lineEnd - 1] == ',') count--;
+        final double[] values = new double[count];
+        parseLine(values, count);
+        return values;
+    }
+
+    /**
+     * Current line number, starts from 1
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    //================================================================
+
+    private boolean nextNonEmptyLine() throws IOException {
+        do {
+            if (!nextLine()) return false;
+        } while (lineStart == lineEnd);
+        return true;
+    }
+
+    // End of the last field parsed by parseSlowly, at the comma or the line end
+    private int fieldEnd;
+
+    /**
+     * Parse all fields of the current line. A trailing comma does not start a new field.
+     *
+     * @return value count
+     */
+    private int parseLine(final double[] values, final int capacity) throws IOException {
+        final byte[] bytes = this.bytes;
+        final int end = lineEnd;
+
+        int count = 0;
+        int i = lineStart;
+        while (i < end) {
+            if (count >= capacity) throw new IOException(String.format(
+                    "Too many values at line %d, expected at most %d", lineNumber, capacity
+            ));
+
+            // Fast path for plain numbers like "255" and "0.2431372549"
+            final int from = i;
+            long mantissa = 0;
+            int fraction = -1;
+            while (i < end) {
+                final int d = bytes[i] - '0';
+                if (d >= 0 && d <= 9) {
+                    mantissa = mantissa * 10 + d;
+                } else if (d == '.' - '0' && fraction < 0) {
+                    fraction = i;
+                } else {
+                    break;
+                }
+                i++;
+            }
+            final int digits = (fraction < 0) ? i - from : i - from - 1;
+            final int scale = (fraction < 0) ? 0 : i - fraction - 1;
+
+            if ((i == end || bytes[i] == ',') && digits > 0 && digits <= 18
+                    && mantissa <= AsciiNumbers.MAX_EXACT_MANTISSA && scale <= 22) {
+                values[count++] = (scale == 0) ? mantissa : mantissa / AsciiNumbers.POWERS_OF_TEN[scale];
+            } else {
+                values[count++] = parseSlowly(from, i);
+                i = fieldEnd;
+            }
+            i++; // Skip the comma
+        }
+        return count;
+    }
+
+    /**
+     * Parse anything that is not a plain number, like signs, exponents and spaces
+     */
+    private double parseSlowly(final int from, int i) throws IOException {
+        final int end = lineEnd;
+        while (i < end && bytes[i] != ',') i++;
+        fieldEnd = i;
+
+        int start = from, stop = i;
+        while (start < stop && bytes[start] == ' ') start++;
+        while (stop > start && bytes[stop - 1] == ' ') stop--;
+
+        try {
+            return AsciiNumbers.parseDouble(bytes, start, stop);
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format(
+                    "Bad number at line %d: \"%s\"", lineNumber, AsciiNumbers.asString(bytes, from, i)
+            ));
+        }
+    }
+
+    /**
+     * Locate the next line
+     *
+     * @return false if there is no more input
+     */
+    private boolean nextLine() throws IOException {
+        int scan = position;
+        while (true) {
+            // Find the line break
+            while (scan < limit && bytes[scan] != '\n') scan++;
+            if (scan < limit) break;
+
+            if (eof) {
+                // The last line has no line break
+                if (position >= limit) return false;
+                break;
+            }
+
+            // Keep the partial line and read more
+            final int kept = fill();
+            scan = kept;
+        }
+
+        lineStart = position;
+        lineEnd = scan;
+        if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') lineEnd--;
+        position = Math.min(scan + 1, limit);
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * Move the partial line to the start of buffer and read more bytes, grow the buffer if the line is too long
+     *
+     * @return length of the partial line
+     */
+    private int fill() throws IOException {
+        final int kept = limit - position;
+        if (kept == bytes.length) {
+            final ByteBuffer larger = ByteBuffer.allocate(bytes.length * 2);
+            System.arraycopy(bytes, position, larger.array(), 0, kept);
+            buffer = larger;
+            bytes = larger.array();
+        } else if (kept > 0) {
+            System.arraycopy(bytes, position, bytes, 0, kept);
+        }
+        position = 0;
+        limit = kept;
+
+        buffer.clear();
+        buffer.position(kept);
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer);
+            if (read < 0) {
+                eof = true;
+                break;
+            }
+            if (read == 0) break;
+        }
+        limit = buffer.position();
+        return kept;
+    }
+}
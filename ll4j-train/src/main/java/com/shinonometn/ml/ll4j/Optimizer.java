@@ -0,0 +1,73 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Optimizer decides how gradients change the weights of a layer.
+ * <p>
+ * An optimizer creates one {@link LayerAdjust.Updater} for each trainable layer of a trainer. The updater owns the
+ * state of the layer, like the velocity of momentum, allocated once when the trainer is created. Gradients are
+ * computed by the dense kernels of {@link TrainingKernels}, the updater only combines them with its state.
+ * <p>
+ * Gradients of a batch are summed, not averaged, so a learning rate fit for one optimizer is not fit for another:
+ * plain SGD takes tiny rates like {@link ModelTrainer#DefaultLearningRate}, Adam takes rates around 1e-3.
+ */
+@FunctionalInterface
+public interface Optimizer {
+
+    /**
+     * Create the updater of a layer with weights
+     *
+     * @param layer  the layer, its weights are output-major
+     * @param sgd    plain SGD updater of the layer, which computes the gradients
+     * @param policy how the update runs over the rows of the layer
+     */
+    LayerAdjust.Updater newUpdater(final Layer layer, final LayerAdjust.Updater sgd, final ExecutionPolicy policy);
+
+    //================================================================
+
+    /**
+     * Plain SGD: weights -= learningRate * gradient. It has no state.
+     */
+    Optimizer Sgd = (layer, sgd, policy) -> sgd;
+
+    /**
+     * SGD with momentum: velocity = momentum * velocity + gradient, weights -= learningRate * velocity
+     *
+     * @param momentum in [0, 1), 0.9 is common
+     */
+    static Optimizer momentum(final double momentum) {
+        Optimizers.checkRate("Momentum", momentum);
+        return (layer, sgd, policy) -> new Optimizers.Momentum(sgd, policy, layer.data.length, momentum, false);
+    }
+
+    /**
+     * Nesterov momentum, the update looks ahead along the velocity:
+     * velocity = momentum * velocity + gradient, weights -= learningRate * (gradient + momentum * velocity)
+     *
+     * @param momentum in [0, 1), 0.9 is common
+     */
+    static Optimizer nesterov(final double momentum) {
+        Optimizers.checkRate("Momentum", momentum);
+        return (layer, sgd, policy) -> new Optimizers.Momentum(sgd, policy, layer.data.length, momentum, true);
+    }
+
+    /**
+     * Adam with beta1 = 0.9, beta2 = 0.999 and epsilon = 1e-8
+     */
+    static Optimizer adam() {
+        return adam(0.9, 0.999, 1e-8);
+    }
+
+    /**
+     * Adam, each weight gets a step size from running averages of its gradient and squared gradient
+     *
+     * @param beta1   decay of the gradient average, in [0, 1)
+     * @param beta2   decay of the squared gradient average, in [0, 1)
+     * @param epsilon added to the root of the squared gradient average, should be positive
+     */
+    static Optimizer adam(final double beta1, final double beta2, final double epsilon) {
+        Optimizers.checkRate("Beta1", beta1);
+        Optimizers.checkRate("Beta2", beta2);
+        if (!(epsilon > 0)) throw new IllegalArgumentException("Epsilon should be positive, got " + epsilon);
+        return (layer, sgd, policy) -> new Optimizers.Adam(sgd, policy, layer.data.length, beta1, beta2, epsilon);
+    }
+}
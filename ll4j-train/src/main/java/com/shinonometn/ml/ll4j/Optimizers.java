@@ -0,0 +1,207 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Updaters of the built-in optimizers, see {@link Optimizer}.
+ * <p>
+ * State and weights are updated in one pass, without allocation. The per-sample update computes the gradient
+ * of each weight on the fly instead of storing it.
+ */
+final class Optimizers {
+    private Optimizers() {
+    }
+
+    static void checkRate(final String name, final double value) {
+        if (!(value >= 0 && value < 1)) throw new IllegalArgumentException(String.format(
+                "%s should be in [0, 1), got %s", name, value
+        ));
+    }
+
+    /** Input of a bias, which is updated as a row of one weight */
+    private static final double[] BiasInput = {1};
+
+    /**
+     * Base of stateful updaters of dense layers. Gradients are accumulated by the SGD kernel.
+     * The biases of a layer with bias are updated after the rows.
+     */
+    abstract static class Stateful implements LayerAdjust.Updater {
+        private final LayerAdjust.Updater sgd;
+        private final ExecutionPolicy policy;
+
+        Stateful(final LayerAdjust.Updater sgd, final ExecutionPolicy policy) {
+            this.sgd = sgd;
+            this.policy = policy;
+        }
+
+        /**
+         * Update a row of weights with the gradient of one sample, error * inputs
+         */
+        abstract void updateRow(double[] weights, int row, double error, double[] inputs, int inputSize, double lr);
+
+        @Override
+        public void apply(final double[] inputs, final Layer layer, final double[] errors, final double lr) {
+            final int inputSize = layer.getInputSize();
+            final double[] weights = layer.data;
+
+            beginStep();
+            policy.execute(layer.getOutputSize(), inputSize, (from, to) -> {
+                for (int idxO = from; idxO < to; idxO++) {
+                    updateRow(weights, idxO * inputSize, errors[idxO], inputs, inputSize, lr);
+                }
+            });
+
+            final int bias = inputSize * layer.getOutputSize();
+            for (int k = bias; k < weights.length; k++) updateRow(weights, k, errors[k - bias], BiasInput, 1, lr);
+        }
+
+        @Override
+        public void accumulate(double[] inputs, Layer layer, double[] errors, int batchSize, double[] gradient) {
+            sgd.accumulate(inputs, layer, errors, batchSize, gradient);
+        }
+
+        @Override
+        public void applyGradient(final Layer layer, final double[] gradient, final double lr) {
+            final int inputSize = layer.getInputSize();
+
+            beginStep();
+            policy.execute(layer.getOutputSize(), inputSize, (from, to) -> applyGradient(
+                    layer, gradient, from * inputSize, to * inputSize, lr
+            ));
+            applyGradient(layer, gradient, inputSize * layer.getOutputSize(), layer.data.length, lr);
+        }
+
+        @Override
+        public abstract void applyGradient(Layer layer, double[] gradient, int from, int to, double lr);
+    }
+
+    //================================================================
+
+    /**
+     * Momentum and Nesterov momentum, one velocity for each weight
+     */
+    static final class Momentum extends Stateful {
+        private final double momentum;
+        private final boolean nesterov;
+        private final double[] velocity;
+
+        Momentum(
+                final LayerAdjust.Updater sgd, final ExecutionPolicy policy,
+                final int weightCount, final double momentum, final boolean nesterov
+        ) {
+            super(sgd, policy);
+            this.momentum = momentum;
+            this.nesterov = nesterov;
+            this.velocity = new double[weightCount];
+        }
+
+        @Override
+        void updateRow(double[] weights, int row, double error, double[] inputs, int inputSize, double lr) {
+            final double[] velocity = this.velocity;
+            final double mu = momentum;
+            if (nesterov) {
+                for (int idxI = 0; idxI < inputSize; idxI++) {
+                    final double g = error * inputs[idxI];
+                    final double v = mu * velocity[row + idxI] + g;
+                    velocity[row + idxI] = v;
+                    weights[row + idxI] -= lr * (g + mu * v);
+                }
+            } else {
+                for (int idxI = 0; idxI < inputSize; idxI++) {
+                    final double v = mu * velocity[row + idxI] + error * inputs[idxI];
+                    velocity[row + idxI] = v;
+                    weights[row + idxI] -= lr * v;
+                }
+            }
+        }
+
+        @Override
+        public void applyGradient(Layer layer, double[] gradient, int from, int to, double lr) {
+            final double[] weights = layer.data;
+            final double[] velocity = this.velocity;
+            final double mu = momentum;
+            if (nesterov) {
+                for (int k = from; k < to; k++) {
+                    final double g = gradient[k];
+                    final double v = mu * velocity[k] + g;
+                    velocity[k] = v;
+                    weights[k] -= lr * (g + mu * v);
+                }
+            } else {
+                for (int k = from; k < to; k++) {
+                    final double v = mu * velocity[k] + gradient[k];
+                    velocity[k] = v;
+                    weights[k] -= lr * v;
+                }
+            }
+        }
+    }
+
+    //================================================================
+
+    /**
+     * Adam, with the bias correction folded into the step size and epsilon:
+     * weights -= lr * sqrt(1 - beta2^t) / (1 - beta1^t) * m / (sqrt(v) + epsilon * sqrt(1 - beta2^t))
+     */
+    static final class Adam extends Stateful {
+        private final double beta1;
+        private final double beta2;
+        private final double epsilon;
+        private final double[] m;
+        private final double[] v;
+
+        // Written by beginStep, read by the ranges of the same step
+        private long step;
+        private double stepScale;
+        private double stepEpsilon;
+
+        Adam(
+                final LayerAdjust.Updater sgd, final ExecutionPolicy policy,
+                final int weightCount, final double beta1, final double beta2, final double epsilon
+        ) {
+            super(sgd, policy);
+            this.beta1 = beta1;
+            this.beta2 = beta2;
+            this.epsilon = epsilon;
+            this.m = new double[weightCount];
+            this.v = new double[weightCount];
+        }
+
+        @Override
+        public void beginStep() {
+            step++;
+            final double correction1 = 1 - Math.pow(beta1, step);
+            final double correction2 = Math.sqrt(1 - Math.pow(beta2, step));
+            stepScale = correction2 / correction1;
+            stepEpsilon = epsilon * correction2;
+        }
+
+        @Override
+        void updateRow(double[] weights, int row, double error, double[] inputs, int inputSize, double lr) {
+            final double[] m = this.m, v = this.v;
+            final double b1 = beta1, b2 = beta2, rate = lr * stepScale, eps = stepEpsilon;
+            for (int idxI = 0; idxI < inputSize; idxI++) {
+                final int k = row + idxI;
+                final double g = error * inputs[idxI];
+                final double mk = b1 * m[k] + (1 - b1) * g;
+                final double vk = b2 * v[k] + (1 - b2) * g * g;
+                m[k] = mk;
+                v[k] = vk;
+                weights[k] -= rate * mk / (Math.sqrt(vk) + eps);
+            }
+        }
+
+        @Override
+        public void applyGradient(Layer layer, double[] gradient, int from, int to, double lr) {
+            final double[] weights = layer.data;
+            final double[] m = this.m, v = this.v;
+            final double b1 = beta1, b2 = beta2, rate = lr * stepScale, eps = stepEpsilon;
+            for (int k = from; k < to; k++) {
+                final double g = gradient[k];
+                final double mk = b1 * m[k] + (1 - b1) * g;
+                final double vk = b2 * v[k] + (1 - b2) * g * g;
+                m[k] = mk;
+                v[k] = vk;
+                weights[k] -= rate * mk / (Math.sqrt(vk) + eps);
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.shinonometn.ml.ll4j;
+
+import com.shinonometn.ml.ll4j.DataSet.LabelEntry;
+import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parse a labeled CSV file (label first, then the features) on multiple threads.
+ * <p>
+ * The file is split into chunks of about {@link #ChunkSize} bytes. A chunk owns the lines starting in its
+ * byte range, so the ranges are aligned to line starts by the workers, and every line is parsed exactly once.
+ * Each chunk is delivered as a batch of entries through a bounded queue, which limits how far the workers
+ * can run ahead of the consumer.
+ * <p>
+ * In {@link Order#Strict} order the batches come in file order, so the entries are the same as
+ * {@link LabelEntry#createCSVIterator(String, boolean)}. In {@link Order#Unordered} order each batch is delivered
+ * as soon as it is parsed, entries in a batch still keep their order.
+ */
+public final class ParallelCsvLoader {
+    private ParallelCsvLoader() {
+    }
+
+    /** Bytes of a chunk */
+    public static final int ChunkSize = 4 * 1024 * 1024;
+
+    /** Delivery order of the batches */
+    public enum Order {
+        /** Batches in file order, for reproducible runs */
+        Strict,
+        /** Batches in the order they are parsed, for throughput */
+        Unordered
+    }
+
+    //================================================================
+
+    /**
+     * Open a CSV file with a worker for each processor, entries are delivered one by one
+     */
+    public static SampleIterator<LabelEntry> open(final Path path, final boolean skipHeader, final Order order)
+            throws IOException {
+        return open(path, skipHeader, Runtime.getRuntime().availableProcessors(), order);
+    }
+
+    /**
+     * Open a CSV file, entries are delivered one by one
+     */
+    public static SampleIterator<LabelEntry> open(final Path path,
+                                                  final boolean skipHeader,
+                                                  final int workerCount,
+                                                  final Order order) throws IOException {
+        final SampleIterator<List<LabelEntry>> batches = openBatches(path, skipHeader, workerCount, order);
+        return new SampleIterator<LabelEntry>() {
+            private Iterator<LabelEntry> batch = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!batch.hasNext()) {
+                    if (!batches.hasNext()) return false;
+                    batch = batches.next().iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public LabelEntry next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return batch.next();
+            }
+
+            @Override
+            public void close() throws IOException {
+                // Entries of the current batch are dropped too
+                batch = Collections.emptyIterator();
+                batches.close();
+            }
+        };
+    }
+
+    /**
+     * Open a CSV file, entries are delivered in batches, one batch for each chunk. Empty batches are skipped.
+     * <p>
+     * Parse errors are thrown from {@link Iterator#hasNext()} as {@link UncheckedIOException}, line numbers in
+     * the messages are counted from the start of the chunk.
+     * Close the iterator to stop the workers if it is not read to the end.
+     *
+     * @param workerCount thread count of parsing
+     * @param order       delivery order of the batches
+     */
+    public static SampleIterator<List<LabelEntry>> openBatches(final Path path,
+                                                               final boolean skipHeader,
+                                                               final int workerCount,
+                                                               final Order order) throws IOException {
+        if (workerCount < 1) throw new IllegalArgumentException("Worker count should be at least 1, got " + workerCount);
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new Batches(channel, skipHeader, workerCount, order);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    //================================================================
+
+    private static final class Batches implements SampleIterator<List<LabelEntry>> {
+        private final FileChannel channel;
+        private final long dataStart;
+        private final long size;
+        private final int chunkCount;
+        private final Order order;
+
+        // Parsed and pending chunks. Strict order puts the chunks in when they are claimed, so the queue keeps
+        // the file order, and Unordered puts them in when they are parsed.
+        private final BlockingQueue<CompletableFuture<List<LabelEntry>>> queue;
+        private final ExecutorService executor;
+
+        private final AtomicInteger nextChunk = new AtomicInteger(0);
+        private volatile boolean closed = false;
+
+        private int delivered = 0;
+        private List<LabelEntry> batch;
+
+        Batches(final FileChannel channel, final boolean skipHeader, final int workerCount, final Order order)
+                throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.dataStart = skipHeader ? headerEnd(channel, size) : 0;
+            this.chunkCount = (int) ((size - dataStart + ChunkSize - 1) / ChunkSize);
+            this.order = order;
+            this.queue = new ArrayBlockingQueue<>(workerCount * 2);
+
+            final int threadCount = Math.max(Math.min(workerCount, chunkCount), 1);
+            final AtomicInteger threadIndex = new AtomicInteger(0);
+            this.executor = Executors.newFixedThreadPool(threadCount, r -> {
+                final Thread thread = new Thread(r, "ll4j-csv-loader-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < threadCount; i++) executor.execute(this::work);
+            executor.shutdown();
+        }
+
+        private void work() {
+            try {
+                while (!closed) {
+                    final int chunk;
+                    final CompletableFuture<List<LabelEntry>> result;
+                    if (order == Order.Strict) {
+                        // Claim and enqueue together, so the queue is in chunk order
+                        synchronized (nextChunk) {
+                            chunk = nextChunk.getAndIncrement();
+                            if (chunk >= chunkCount) return;
+                            result = new CompletableFuture<>();
+                            queue.put(result);
+                        }
+                        parseTo(chunk, result);
+                    } else {
+                        chunk = nextChunk.getAndIncrement();
+                        if (chunk >= chunkCount) return;
+                        result = new CompletableFuture<>();
+                        parseTo(chunk, result);
+                        queue.put(result);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Closed
+            }
+        }
+
+        private void parseTo(final int chunk, final CompletableFuture<List<LabelEntry>> result) {
+            try {
+                result.complete(parseChunk(chunk));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Parse the lines starting in [start, end) of a chunk
+         */
+        private List<LabelEntry> parseChunk(final int chunk) throws IOException {
+            final long start = dataStart + (long) chunk * ChunkSize;
+            final long end = Math.min(start + ChunkSize, size);
+
+            // Read one more byte before the range to tell if the range starts at a line start
+            final long readFrom = (start > 0) ? start - 1 : 0;
+            byte[] bytes = new byte[(int) (end - readFrom) + 1024];
+            int length = read(readFrom, bytes, 0, (int) (end - readFrom));
+
+            int from = 0;
+            if (start > 0) {
+                // Skip the tail of the line owned by the previous chunk
+                while (from < length && bytes[from] != '\n') from++;
+                if (from == length) return Collections.emptyList();
+                from++;
+            }
+
+            // Read on to the end of the last line
+            long position = end;
+            while (bytes[length - 1] != '\n' && position < size) {
+                if (length == bytes.length) {
+                    final byte[] larger = new byte[bytes.length * 2];
+                    System.arraycopy(bytes, 0, larger, 0, length);
+                    bytes = larger;
+                }
+                final int scanFrom = length;
+                final int read = read(position, bytes, length, (int) Math.min(bytes.length - length, size - position));
+                position += read;
+                length += read;
+                int i = scanFrom;
+                while (i < length && bytes[i] != '\n') i++;
+                if (i < length) {
+                    length = i + 1;
+                    break;
+                }
+            }
+
+            final NumericCsvReader reader = new NumericCsvReader(bytes, from, length);
+            final List<LabelEntry> entries = new ArrayList<>();
+            double[] row = null;
+            while (!closed) {
+                final int count;
+                if (row == null) {
+                    row = reader.readRow();
+                    if (row == null) break;
+                    count = row.length;
+                } else {
+                    count = reader.readRow(row);
+                    if (count < 0) break;
+                }
+                entries.add(LabelEntry.ofRow(reader, row, count));
+            }
+            return entries;
+        }
+
+        private int read(final long position, final byte[] bytes, final int offset, final int length) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                final int read = channel.read(buffer, position + buffer.position() - offset);
+                if (read < 0) break;
+            }
+            return buffer.position() - offset;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (batch == null || batch.isEmpty()) {
+                if (closed || delivered >= chunkCount) return false;
+                batch = take();
+                delivered++;
+            }
+            return true;
+        }
+
+        @Override
+        public List<LabelEntry> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final List<LabelEntry> result = batch;
+            batch = null;
+            return result;
+        }
+
+        private List<LabelEntry> take() {
+            try {
+                return queue.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for CSV data", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                close();
+                if (cause instanceof IOException) throw new UncheckedIOException((IOException) cause);
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        /**
+         * Stop the workers and close the file
+         */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            batch = null;
+            executor.shutdownNow();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to read
+            }
+        }
+    }
+
+    /**
+     * Find the end of the first line
+     */
+    private static long headerEnd(final FileChannel channel, final long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read < 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+}
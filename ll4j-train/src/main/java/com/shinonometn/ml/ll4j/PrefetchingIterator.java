@@ -0,0 +1,170 @@
+package com.shinonometn.ml.ll4j;
+
+import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read a {@link SampleIterator} ahead on a background thread.
+ * <p>
+ * Samples are passed through a bounded ring buffer of {@code depth} slots, and the reader blocks when it is full.
+ * The consumer takes everything that is ready at once into a local buffer, so most {@link #next()} calls are
+ * an array read without any lock. The slots are free again while the local buffer is consumed, so with the
+ * sample the reader is putting, up to 2 * {@code depth} + 1 samples can be read and not consumed yet.
+ * <p>
+ * Errors of the source are thrown from {@link #hasNext()} or {@link #next()} of the consumer, after the samples
+ * read before the error. {@link #close()} stops the reader and closes the source.
+ * Only one thread should consume the iterator.
+ * <p>
+ * With a metrics listener, the count of samples ready is reported as queue {@value #QueueName} each time the consumer
+ * takes a new group of samples. A depth of 0 means the consumer waited for the reader.
+ */
+public final class PrefetchingIterator<T> implements SampleIterator<T> {
+    /** Queue name in the metrics */
+    public static final String QueueName = "prefetch";
+
+    private static final AtomicInteger threadIndex = new AtomicInteger(0);
+
+    /** Marks the end of the source */
+    private static final Object End = new Object();
+
+    /** Carries an error of the source */
+    private static final class Failure {
+        final Throwable error;
+
+        Failure(final Throwable error) {
+            this.error = error;
+        }
+    }
+
+    private final SampleIterator<T> source;
+    private final int depth;
+    private final MetricsListener metrics;
+    private final ArrayBlockingQueue<Object> slots;
+    private final Thread reader;
+    private volatile boolean closed = false;
+
+    // Samples taken from the slots, consumed from index
+    private final ArrayList<Object> taken;
+    private int index = 0;
+    private Object current;
+
+    private PrefetchingIterator(final SampleIterator<T> source, final int depth, final MetricsListener metrics) {
+        this.source = source;
+        this.depth = depth;
+        this.metrics = metrics;
+        this.slots = new ArrayBlockingQueue<>(depth);
+        this.taken = new ArrayList<>(depth);
+        this.reader = new Thread(this::read, "ll4j-prefetch-" + threadIndex.incrementAndGet());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void read() {
+        try {
+            Object item;
+            try {
+                while (!closed && source.hasNext()) slots.put(source.next());
+                item = End;
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException | Error e) {
+                item = new Failure(e);
+            }
+            if (!closed) slots.put(item);
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    /** Depth of the buffer */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (current == null) current = take();
+        if (current instanceof Failure) {
+            final Throwable error = ((Failure) current).error;
+            if (error instanceof Error) throw (Error) error;
+            throw (RuntimeException) error;
+        }
+        return current != End;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        final T result = (T) current;
+        current = null;
+        return result;
+    }
+
+    private Object take() {
+        if (closed) return End;
+        if (index == taken.size()) {
+            taken.clear();
+            index = 0;
+            if (metrics != null) metrics.onQueueDepth(QueueName, slots.size());
+            try {
+                taken.add(slots.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for samples", e);
+            }
+            slots.drainTo(taken);
+        }
+        return taken.get(index++);
+    }
+
+    /**
+     * Stop the reader, then close the source
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        reader.interrupt();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                reader.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        slots.clear();
+        taken.clear();
+        current = null;
+        source.close();
+    }
+
+    //================================================================
+
+    /**
+     * Read ahead of a source with {@code depth} slots, up to 2 * {@code depth} + 1 samples ahead
+     */
+    public static <T> PrefetchingIterator<T> wrap(final SampleIterator<T> source, final int depth) {
+        return wrap(source, depth, null);
+    }
+
+    /**
+     * Read ahead of a source with {@code depth} slots, and report the queue depth to a listener
+     *
+     * @param metrics the listener, null to disable the metrics
+     */
+    public static <T> PrefetchingIterator<T> wrap(final SampleIterator<T> source, final int depth, final MetricsListener metrics) {
+        if (depth < 1) throw new IllegalArgumentException("Depth should be at least 1, got " + depth);
+        return new PrefetchingIterator<>(source, depth, metrics);
+    }
+}
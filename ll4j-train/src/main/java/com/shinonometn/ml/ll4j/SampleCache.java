@@ -0,0 +1,211 @@
+package com.shinonometn.ml.ll4j;
+
+import com.shinonometn.ml.ll4j.DataSet.LabelEntry;
+import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary cache of a labeled CSV data set, so the text is parsed only once.
+ * <p>
+ * All numbers are little-endian.
+ * <pre>
+ * Header, 24 bytes
+ *   magic       4 bytes, "LL4S"
+ *   version     int32
+ *   count       int32, sample count
+ *   features    int32, feature count of each sample
+ *   type        int32, feature type, 0x08 for unsigned byte and 0x0D for float (same as IDX)
+ *   reserved    int32
+ *
+ * Samples, fixed size, for each sample
+ *   label       int32
+ *   features    features * type size bytes
+ * </pre>
+ * Features are stored as unsigned bytes if all values of the data set are integers in [0, 255]
+ * (like MNIST pixels), so they are read back exactly. Otherwise they are stored as floats.
+ */
+public final class SampleCache {
+    private SampleCache() {
+    }
+
+    /** "LL4S" in little-endian */
+    static final int MAGIC = 0x53344C4C;
+
+    public static final int VERSION = 1;
+
+    static final int TYPE_UBYTE = 0x08;
+    static final int TYPE_FLOAT = 0x0D;
+
+    private static final int HEADER_SIZE = 24;
+
+    //================================================================
+
+    /**
+     * Open a cache file, and create it from the CSV file first if it is missing or older than the CSV file.
+     */
+    public static SampleIterator<LabelEntry> openOrCreate(final String csvPath, final String cachePath, final boolean skipHeader)
+            throws IOException {
+        final Path csv = Paths.get(csvPath);
+        final Path cache = Paths.get(cachePath);
+        if (!Files.exists(cache) || Files.getLastModifiedTime(cache).compareTo(Files.getLastModifiedTime(csv)) < 0) {
+            create(csv, cache, skipHeader);
+        }
+        return open(cache);
+    }
+
+    /**
+     * Convert a CSV file (label first, then the features) to a cache file
+     *
+     * @return sample count
+     */
+    public static int create(final Path csv, final Path cache, final boolean skipHeader) throws IOException {
+        // Write to a temporary file, so a broken conversion never leaves a cache behind
+        final Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try {
+            // Try bytes first, and start over with floats if any value does not fit
+            int count = write(csv, temp, skipHeader, TYPE_UBYTE);
+            if (count < 0) count = write(csv, temp, skipHeader, TYPE_FLOAT);
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+            return count;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Open a cache file, samples are read through a memory-mapped buffer
+     */
+    public static SampleIterator<LabelEntry> open(final Path cache) throws IOException {
+        final MappedByteBuffer mapped;
+        try (final FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Cache file is too large: " + size + " bytes");
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        final ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException(
+                "Not a sample cache file: " + cache
+        );
+        final int version = buffer.getInt(4);
+        if (version != VERSION) throw new IOException(String.format(
+                "Unsupported cache version %d, expected %d", version, VERSION
+        ));
+        final int count = buffer.getInt(8);
+        final int featureCount = buffer.getInt(12);
+        final int type = buffer.getInt(16);
+        if (type != TYPE_UBYTE && type != TYPE_FLOAT) throw new IOException(String.format(
+                "Unknown feature type 0x%02x", type
+        ));
+
+        final int sampleSize = 4 + featureCount * ((type == TYPE_UBYTE) ? 1 : 4);
+        if ((long) HEADER_SIZE + (long) count * sampleSize > buffer.limit()) throw new IOException(
+                "Cache file is truncated: " + cache
+        );
+
+        return new SampleIterator<LabelEntry>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public LabelEntry next() {
+                if (index >= count) throw new NoSuchElementException();
+
+                final int offset = HEADER_SIZE + index * sampleSize;
+                final int label = buffer.getInt(offset);
+                final double[] values = new double[featureCount];
+                if (type == TYPE_UBYTE) {
+                    for (int i = 0; i < featureCount; i++) values[i] = buffer.get(offset + 4 + i) & 0xFF;
+                } else {
+                    for (int i = 0; i < featureCount; i++) values[i] = buffer.getFloat(offset + 4 + i * 4);
+                }
+
+                index++;
+                return new LabelEntry(label, values);
+            }
+
+            @Override
+            public void close() {
+                // The mapping is released with the buffer
+                index = count;
+            }
+        };
+    }
+
+    //================================================================
+
+    /**
+     * Write the cache with a feature type
+     *
+     * @return sample count, or -1 if a value does not fit in the type
+     */
+    private static int write(final Path csv, final Path cache, final boolean skipHeader, final int type) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (final FileChannel channel = FileChannel.open(
+                cache,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+        ); final SampleIterator<LabelEntry> samples = ParallelCsvLoader.open(csv, skipHeader, ParallelCsvLoader.Order.Strict)) {
+
+            // Header is written at last, when the count is known
+            channel.position(HEADER_SIZE);
+
+            int count = 0;
+            int featureCount = -1;
+            while (samples.hasNext()) {
+                final LabelEntry entry = samples.next();
+                final double[] values = entry.values;
+                if (featureCount < 0) featureCount = values.length;
+                if (values.length != featureCount) throw new IOException(String.format(
+                        "Sample %d has %d features, expected %d", count, values.length, featureCount
+                ));
+
+                ensureRemaining(channel, buffer, 4);
+                buffer.putInt(entry.getLabelValue());
+
+                for (final double value : values) {
+                    if (type == TYPE_UBYTE) {
+                        if (value < 0 || value > 255 || value != (int) value) return -1;
+                        ensureRemaining(channel, buffer, 1);
+                        buffer.put((byte) (int) value);
+                    } else {
+                        ensureRemaining(channel, buffer, 4);
+                        buffer.putFloat((float) value);
+                    }
+                }
+                count++;
+            }
+            flush(channel, buffer);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(Math.max(featureCount, 0)).putInt(type).putInt(0);
+            channel.position(0);
+            flush(channel, buffer);
+            return count;
+        }
+    }
+
+    private static void ensureRemaining(final FileChannel channel, final ByteBuffer buffer, final int size) throws IOException {
+        if (buffer.remaining() < size) flush(channel, buffer);
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
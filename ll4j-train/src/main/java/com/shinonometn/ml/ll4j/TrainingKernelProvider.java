@@ -0,0 +1,17 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Provider of the training kernels used by the built-in layers, next to their forward kernels.
+ * <p>
+ * Providers are found with {@link java.util.ServiceLoader} like {@link KernelProvider}s, see {@link TrainingKernels}.
+ */
+public interface TrainingKernelProvider extends KernelProvider {
+    /** Backward kernel of dense layers, see {@link BackwardFunction#Dense} */
+    BackwardFunction backwardDense(ExecutionPolicy policy);
+
+    /** Backward kernel of LeakyRelu layers, see {@link BackwardFunction#LeakyRelu} */
+    BackwardFunction backwardLeakyRelu();
+
+    /** Weight update of dense layers, see {@link AdjustFunctions#DenseUpdate} */
+    LayerAdjust.Updater denseUpdate(ExecutionPolicy policy);
+}
@@ -0,0 +1,64 @@
+package com.shinonometn.ml.ll4j;
+
+/**
+ * Select the training kernels of the built-in layers, same as {@link Kernels} does for the forward kernels.
+ */
+public final class TrainingKernels {
+    private TrainingKernels() {
+    }
+
+    private static final TrainingKernelProvider Scalar = new TrainingKernelProvider() {
+        @Override
+        public String getName() {
+            return Kernels.ScalarName;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return true;
+        }
+
+        @Override
+        public ForwardFunction forwardDense(final ExecutionPolicy policy) {
+            return Kernels.scalar().forwardDense(policy);
+        }
+
+        @Override
+        public ForwardFunction forwardLeakyRelu() {
+            return Kernels.scalar().forwardLeakyRelu();
+        }
+
+        @Override
+        public BackwardFunction backwardDense(final ExecutionPolicy policy) {
+            return BackwardFunction.scalarDense(policy);
+        }
+
+        @Override
+        public BackwardFunction backwardLeakyRelu() {
+            return BackwardFunction.ScalarLeakyRelu;
+        }
+
+        @Override
+        public LayerAdjust.Updater denseUpdate(final ExecutionPolicy policy) {
+            return AdjustFunctions.scalarDenseUpdate(policy);
+        }
+    };
+
+    private static final class Holder {
+        static final TrainingKernelProvider Current = Kernels.load(TrainingKernelProvider.class, Scalar);
+    }
+
+    /**
+     * The kernels used by the built-in layers while training
+     */
+    public static TrainingKernelProvider current() {
+        return Holder.Current;
+    }
+
+    /**
+     * The scalar kernels, they run on any JVM
+     */
+    public static TrainingKernelProvider scalar() {
+        return Scalar;
+    }
+}
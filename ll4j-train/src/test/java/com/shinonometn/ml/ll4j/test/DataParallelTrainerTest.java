@@ -0,0 +1,54 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.DataParallelTrainer;
+import com.shinonometn.ml.ll4j.DataSet;
+import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.Optimizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestTrainers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the striped gradient reduction of the data-parallel trainer gives the same weights as one trainer
+ */
+public class DataParallelTrainerTest {
+    private final static long Seed = 17;
+    private final static double LearningRate = 1e-2;
+
+    @Test
+    public void workersGiveTheSameWeightsAsOneTrainer() {
+        final List<DataSet.Entry> samples = createSamples(new Random(1), 96);
+
+        for (final int workerCount : new int[]{1, 2, 3, 4}) {
+            final ModelTrainer expected = createTrainer(Seed, Optimizer.Sgd);
+            final ModelTrainer actual = createTrainer(Seed, Optimizer.Sgd);
+            int expectedCorrect = 0, actualCorrect = 0;
+            try (final DataParallelTrainer parallel = DataParallelTrainer.on(actual, workerCount)) {
+                for (int from = 0; from < samples.size(); from += 32) {
+                    final List<DataSet.Entry> batch = samples.subList(from, from + 32);
+                    expectedCorrect += expected.adjustBatch(batch, LearningRate);
+                    actualCorrect += parallel.adjustBatch(batch, LearningRate);
+                }
+            }
+            assertEquals(expectedCorrect, actualCorrect, "Correct count with " + workerCount + " workers");
+            assertSameWeights(expected, actual, 1e-12);
+        }
+    }
+
+    @Test
+    public void moreWorkersThanSamples() {
+        // Some workers get an empty shard, but still update their stripe
+        final List<DataSet.Entry> samples = createSamples(new Random(2), 3);
+        final ModelTrainer expected = createTrainer(Seed, Optimizer.Sgd);
+        final ModelTrainer actual = createTrainer(Seed, Optimizer.Sgd);
+        expected.adjustBatch(samples, LearningRate);
+        try (final DataParallelTrainer parallel = DataParallelTrainer.on(actual, 5)) {
+            parallel.adjustBatch(samples, LearningRate);
+        }
+        assertSameWeights(expected, actual, 1e-12);
+    }
+}
@@ -0,0 +1,103 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.AdjustFunctions;
+import com.shinonometn.ml.ll4j.DataSet;
+import com.shinonometn.ml.ll4j.HogwildTrainer;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.Layers;
+import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.Optimizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestTrainers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the training of dense layers with bias. Mini-batches run the dense layer and the LeakyRelu after it
+ * as one fused kernel, the per-sample adjust runs them apart, so a batch of one should give the same weights.
+ */
+public class DenseBiasTrainingTest {
+    private final static long Seed = 23;
+    private final static double LearningRate = 1e-2;
+
+    /**
+     * Random samples, with all-zero samples first and in the middle. Their hidden pre-activations are the
+     * biases, some exactly zero and some negative.
+     */
+    private static List<DataSet.Entry> createSamplesWithZeros() {
+        final List<DataSet.Entry> samples = createSamples(new Random(2), 24);
+        samples.set(0, DataSet.LabelEntry.of(1, new double[InputSize]));
+        samples.set(12, DataSet.LabelEntry.of(3, new double[InputSize]));
+        return samples;
+    }
+
+    private static double[] biasesOf(final ModelTrainer trainer, final int k, final int input, final int output) {
+        return Arrays.copyOfRange(weightsOf(trainer, k), input * output, input * output + output);
+    }
+
+    private static void assertBiasesChanged(final ModelTrainer initial, final ModelTrainer trained) {
+        assertFalse(Arrays.equals(
+                biasesOf(initial, 0, InputSize, HiddenSize), biasesOf(trained, 0, InputSize, HiddenSize)
+        ), "Hidden biases");
+        assertFalse(Arrays.equals(
+                biasesOf(initial, 2, HiddenSize, ClassCount), biasesOf(trained, 2, HiddenSize, ClassCount)
+        ), "Output biases");
+    }
+
+    //================================================================
+
+    @Test
+    public void batchOfOneMatchesPerSampleAdjust() {
+        final List<DataSet.Entry> samples = createSamplesWithZeros();
+        final Optimizer[] optimizers = {
+                Optimizer.Sgd, Optimizer.momentum(0.9), Optimizer.nesterov(0.9), Optimizer.adam()
+        };
+
+        for (final Optimizer optimizer : optimizers) {
+            final ModelTrainer expected = createBiasedTrainer(Seed, optimizer);
+            final ModelTrainer actual = createBiasedTrainer(Seed, optimizer);
+            for (final DataSet.Entry sample : samples) {
+                expected.adjust(sample, LearningRate);
+                actual.adjustBatch(Collections.singletonList(sample), LearningRate);
+            }
+            assertSameWeights(expected, actual, 1e-12);
+            assertBiasesChanged(createBiasedTrainer(Seed, Optimizer.Sgd), actual);
+        }
+    }
+
+    @Test
+    public void hogwildStripedUpdatesTheBiases() {
+        // With one worker the samples are adjusted in order, one stripe of rows at a time
+        final List<DataSet.Entry> samples = createSamplesWithZeros();
+        final ModelTrainer expected = createBiasedTrainer(Seed, Optimizer.Sgd);
+        final ModelTrainer actual = createBiasedTrainer(Seed, Optimizer.Sgd);
+        for (final DataSet.Entry sample : samples) expected.adjust(sample, LearningRate);
+        try (final HogwildTrainer hogwild = HogwildTrainer.on(actual, 1, HogwildTrainer.UpdateMode.Striped)) {
+            hogwild.adjust(samples, LearningRate);
+        }
+        assertSameWeights(expected, actual, 1e-12);
+        assertBiasesChanged(createBiasedTrainer(Seed, Optimizer.Sgd), actual);
+    }
+
+    @Test
+    public void gaussianFillZeroesTheBiases() {
+        final double[] biases = {1, -2, 3};
+        final Layer layer = Layers.dense(4, 3, new double[12], biases);
+        assertSame(layer, AdjustFunctions.fillWithGaussianRandom(layer));
+
+        final double[] data = layer.getData();
+        assertEquals(15, data.length);
+        for (int i = 12; i < 15; i++) assertEquals(0, data[i], 0, "Bias " + (i - 12));
+        for (int i = 0; i < 12; i++) assertNotEquals(0, data[i], "Weight " + i);
+
+        // A layer without bias is filled as a whole
+        final double[] plain = AdjustFunctions.fillWithGaussianRandom(Layers.dense(4, 3)).getData();
+        assertEquals(12, plain.length);
+        for (int i = 0; i < 12; i++) assertNotEquals(0, plain[i], "Weight " + i);
+    }
+}
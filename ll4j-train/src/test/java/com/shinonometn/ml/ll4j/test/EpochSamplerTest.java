@@ -0,0 +1,111 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.EpochSampler;
+import com.shinonometn.ml.ll4j.NRandom;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that each epoch visits every index exactly once, and that a seed gives the same orders again
+ */
+public class EpochSamplerTest {
+    // Empty, tiny, odd, powers of 2 and 4 and their neighbours
+    private final static int[] Sizes = {0, 1, 2, 3, 4, 5, 7, 15, 16, 17, 63, 64, 65, 100, 1000, 4095, 4097, 60000};
+    private final static int Epochs = 3;
+
+    private interface Factory {
+        EpochSampler create(int size, long seed);
+    }
+
+    private static int[] nextOrder(final EpochSampler sampler) {
+        final int[] order = new int[sampler.size()];
+        final PrimitiveIterator.OfInt iterator = sampler.nextEpoch();
+        for (int i = 0; i < order.length; i++) {
+            assertTrue(iterator.hasNext());
+            order[i] = iterator.nextInt();
+        }
+        assertFalse(iterator.hasNext());
+        return order;
+    }
+
+    private static void assertPermutation(final int[] order) {
+        final int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) assertEquals(i, sorted[i], "Index " + i + " of " + order.length);
+    }
+
+    private static void checkSampler(final String name, final Factory factory) {
+        for (final int size : Sizes) {
+            final EpochSampler sampler = factory.create(size, 42);
+            final EpochSampler again = factory.create(size, 42);
+            final EpochSampler other = factory.create(size, 43);
+            int[] previous = null;
+            for (int epoch = 1; epoch <= Epochs; epoch++) {
+                final int[] order = nextOrder(sampler);
+                assertPermutation(order);
+                assertEquals(epoch, sampler.getEpoch());
+                assertArrayEquals(order, nextOrder(again), name + " with the same seed, size " + size);
+
+                final int[] otherOrder = nextOrder(other);
+                if (size >= 16) {
+                    assertFalse(Arrays.equals(order, otherOrder), name + " with another seed, size " + size);
+                    assertFalse(Arrays.equals(order, previous), name + " epoch " + epoch + ", size " + size);
+                }
+                previous = order;
+            }
+        }
+    }
+
+    @Test
+    public void shuffledVisitsEveryIndexOnce() {
+        checkSampler("shuffled", EpochSampler::shuffled);
+    }
+
+    @Test
+    public void permutationVisitsEveryIndexOnce() {
+        checkSampler("permutation", EpochSampler::permutation);
+    }
+
+    @Test
+    public void sequentialKeepsTheOrder() {
+        final EpochSampler sampler = EpochSampler.sequential(10);
+        for (int epoch = 0; epoch < Epochs; epoch++) {
+            assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, nextOrder(sampler));
+        }
+    }
+
+    @Test
+    public void negativeSizeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> EpochSampler.shuffled(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> EpochSampler.permutation(-1, 1));
+    }
+
+    @Test
+    public void nextIntIsUniformInItsBound() {
+        // NRandom is the generator of java.util.Random without the seed scrambling
+        final int[] bounds = {1, 2, 3, 7, 10, 16, 100, 1 << 20, (1 << 30) + 1, Integer.MAX_VALUE};
+        for (final int bound : bounds) {
+            final NRandom random = new NRandom(7);
+            final Random reference = new Random(7 ^ 0x5DEECE66DL);
+            for (int i = 0; i < 1000; i++) {
+                final int value = random.nextInt(bound);
+                assertTrue(value >= 0 && value < bound, "Bound " + bound);
+                assertEquals(reference.nextInt(bound), value, "Bound " + bound);
+            }
+        }
+
+        // Every value of a small bound comes up about as often
+        final NRandom random = new NRandom(11);
+        final int[] counts = new int[6];
+        for (int i = 0; i < 60000; i++) counts[random.nextInt(6)]++;
+        for (final int count : counts) assertTrue(Math.abs(count - 10000) < 500, Arrays.toString(counts));
+
+        assertThrows(IllegalArgumentException.class, () -> new NRandom(1).nextInt(0));
+        assertThrows(IllegalArgumentException.class, () -> new NRandom(1).nextInt(-5));
+    }
+}
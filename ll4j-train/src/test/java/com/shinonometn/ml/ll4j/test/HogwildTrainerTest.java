@@ -0,0 +1,67 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.DataSet;
+import com.shinonometn.ml.ll4j.HogwildTrainer;
+import com.shinonometn.ml.ll4j.HogwildTrainer.UpdateMode;
+import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.Optimizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestTrainers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that Hogwild workers take every sample once, and that striped updates lose none of them
+ */
+public class HogwildTrainerTest {
+    private final static long Seed = 31;
+
+    @Test
+    public void oneWorkerMatchesPerSampleAdjust() {
+        final List<DataSet.Entry> samples = createSamples(new Random(4), 100);
+        for (final UpdateMode mode : UpdateMode.values()) {
+            final ModelTrainer expected = createTrainer(Seed, Optimizer.Sgd);
+            final ModelTrainer actual = createTrainer(Seed, Optimizer.Sgd);
+            int expectedCorrect = 0;
+            for (final DataSet.Entry sample : samples) if (expected.adjust(sample, 1e-2) > 0) expectedCorrect++;
+            try (final HogwildTrainer hogwild = HogwildTrainer.on(actual, 1, mode)) {
+                assertEquals(expectedCorrect, hogwild.adjust(samples, 1e-2), mode.name());
+            }
+            assertSameWeights(expected, actual, 0);
+        }
+    }
+
+    @Test
+    public void stripedWorkersLoseNoUpdate() {
+        // With a tiny learning rate every sample sees about the initial weights, so the change of the weights is
+        // the summed gradient of one batch, whatever order the workers run in. A lost update or a sample taken
+        // twice would be off by a whole gradient of a sample.
+        final List<DataSet.Entry> samples = createSamples(new Random(5), 2000);
+        final double learningRate = 1e-9;
+        final double[] initial = weightsOf(createTrainer(Seed, Optimizer.Sgd), 0);
+
+        final ModelTrainer batch = createTrainer(Seed, Optimizer.Sgd);
+        batch.adjustBatch(samples, learningRate);
+        final double[] expected = weightsOf(batch, 0);
+
+        for (final int workerCount : new int[]{2, 4, 8}) {
+            final ModelTrainer trainer = createTrainer(Seed, Optimizer.Sgd);
+            try (final HogwildTrainer hogwild = HogwildTrainer.on(trainer, workerCount, UpdateMode.Striped)) {
+                hogwild.adjust(samples, learningRate);
+            }
+            final double[] actual = weightsOf(trainer, 0);
+
+            double largest = 0;
+            for (int i = 0; i < initial.length; i++) largest = Math.max(largest, Math.abs(expected[i] - initial[i]));
+            for (int i = 0; i < initial.length; i++) {
+                assertEquals(
+                        expected[i] - initial[i], actual[i] - initial[i], largest * 1e-4,
+                        "Change of weight " + i + " with " + workerCount + " workers"
+                );
+            }
+        }
+    }
+}
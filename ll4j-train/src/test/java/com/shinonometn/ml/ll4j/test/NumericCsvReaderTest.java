@@ -0,0 +1,120 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.NumericCsvReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the edge cases of the CSV reader against hand-written rows
+ */
+public class NumericCsvReaderTest {
+
+    private static NumericCsvReader reader(final String text) {
+        return new NumericCsvReader(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    private static List<double[]> readAll(final String text) throws IOException {
+        final List<double[]> rows = new ArrayList<>();
+        try (final NumericCsvReader reader = reader(text)) {
+            double[] row;
+            while ((row = reader.readRow()) != null) rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void blankLinesAreSkipped() throws IOException {
+        final List<double[]> rows = readAll("\n1,2\n\n\n3,4\n\n");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new double[]{1, 2}, rows.get(0));
+        assertArrayEquals(new double[]{3, 4}, rows.get(1));
+    }
+
+    @Test
+    public void crlfLineEndings() throws IOException {
+        final List<double[]> rows = readAll("1,2\r\n\r\n3,4.5\r\n");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new double[]{1, 2}, rows.get(0));
+        assertArrayEquals(new double[]{3, 4.5}, rows.get(1));
+    }
+
+    @Test
+    public void lastLineWithoutLineBreak() throws IOException {
+        final List<double[]> rows = readAll("1,2\n3,4");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new double[]{3, 4}, rows.get(1));
+    }
+
+    @Test
+    public void trailingCommaDoesNotStartAField() throws IOException {
+        final List<double[]> rows = readAll("1,2,\r\n3,4,\n");
+        assertArrayEquals(new double[]{1, 2}, rows.get(0));
+        assertArrayEquals(new double[]{3, 4}, rows.get(1));
+
+        try (final NumericCsvReader reader = reader("5,6,\n")) {
+            final double[] values = new double[2];
+            assertEquals(2, reader.readRow(values));
+            assertArrayEquals(new double[]{5, 6}, values);
+        }
+    }
+
+    @Test
+    public void numbersThatNeedTheSlowPath() throws IOException {
+        final List<double[]> rows = readAll("-1.5,+2,1e3,2.5E-2, 7 ,0.2431372549,12345678901234567890\n");
+        assertArrayEquals(new double[]{-1.5, 2, 1000, 0.025, 7, 0.2431372549, 12345678901234567890.0}, rows.get(0));
+    }
+
+    @Test
+    public void plainNumbersAreExact() throws IOException {
+        // Same values as Double.parseDouble, on the fast path
+        final String[] fields = {"0", "255", "0.1", "0.2431372549", "123456789.987654321", "0.0000001"};
+        final double[] row = readAll(String.join(",", fields)).get(0);
+        for (int i = 0; i < fields.length; i++) assertEquals(Double.parseDouble(fields[i]), row[i], 0.0, fields[i]);
+    }
+
+    @Test
+    public void lineLongerThanTheBuffer() throws IOException {
+        // More than the 1 MiB buffer, so the buffer has to grow
+        final int count = 300_000;
+        final StringBuilder builder = new StringBuilder("9\n");
+        for (int i = 0; i < count; i++) builder.append(i % 256).append(i + 1 < count ? "," : "\n");
+        builder.append("1,2\n");
+
+        final List<double[]> rows = readAll(builder.toString());
+        assertEquals(3, rows.size());
+        assertEquals(count, rows.get(1).length);
+        for (int i = 0; i < count; i++) assertEquals(i % 256, rows.get(1)[i], 0.0);
+        assertArrayEquals(new double[]{1, 2}, rows.get(2));
+    }
+
+    @Test
+    public void errorsNameTheLine() throws IOException {
+        try (final NumericCsvReader reader = reader("1,2\n\n3,x\n")) {
+            assertNotNull(reader.readRow());
+            final IOException e = assertThrows(IOException.class, reader::readRow);
+            assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+        }
+
+        try (final NumericCsvReader reader = reader("1,2,3\n")) {
+            assertThrows(IOException.class, () -> reader.readRow(new double[2]));
+        }
+    }
+
+    @Test
+    public void headerIsSkipped() throws IOException {
+        try (final NumericCsvReader reader = reader("label,pixel0\r\n1,2\r\n")) {
+            assertTrue(reader.skipLine());
+            assertArrayEquals(new double[]{1, 2}, reader.readRow());
+            assertEquals(2, reader.getLineNumber());
+            assertNull(reader.readRow());
+        }
+    }
+}
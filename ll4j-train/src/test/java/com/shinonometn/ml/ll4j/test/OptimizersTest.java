@@ -0,0 +1,235 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.DataParallelTrainer;
+import com.shinonometn.ml.ll4j.DataSet;
+import com.shinonometn.ml.ll4j.Layers;
+import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.Optimizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.shinonometn.ml.ll4j.test.TestTrainers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check momentum, Nesterov and Adam against the textbook updates, computed here on a D -> J model with bias.
+ * The error of the judge layer is output - one-hot(label), so the gradients are easy to compute by hand.
+ */
+public class OptimizersTest {
+    private final static int Inputs = 3;
+    private final static int Outputs = 2;
+    private final static double Momentum = 0.9;
+    private final static double Beta1 = 0.9;
+    private final static double Beta2 = 0.999;
+    private final static double Epsilon = 1e-8;
+
+    private enum Kind {Momentum, Nesterov, Adam}
+
+    private static Optimizer optimizerOf(final Kind kind) {
+        switch (kind) {
+            case Momentum:
+                return Optimizer.momentum(Momentum);
+            case Nesterov:
+                return Optimizer.nesterov(Momentum);
+            default:
+                return Optimizer.adam(Beta1, Beta2, Epsilon);
+        }
+    }
+
+    /**
+     * The optimizer written out on a D(3, 2) layer with bias. Weights are output-major and followed by the
+     * biases, like the layer data.
+     */
+    private static final class Reference {
+        private final Kind kind;
+        final double[] weights;
+        private final double[] velocity;
+        private final double[] m;
+        private final double[] v;
+        private int step = 0;
+
+        Reference(final Kind kind, final double[] weights) {
+            this.kind = kind;
+            this.weights = weights.clone();
+            this.velocity = new double[weights.length];
+            this.m = new double[weights.length];
+            this.v = new double[weights.length];
+        }
+
+        /** One update with the summed gradient of the samples */
+        void step(final List<DataSet.Entry> samples, final double lr) {
+            final double[] gradient = new double[weights.length];
+            for (final DataSet.Entry sample : samples) {
+                final double[] x = sample.values;
+                final int label = (int) sample.getLabel()[0];
+                for (int j = 0; j < Outputs; j++) {
+                    double y = weights[Inputs * Outputs + j];
+                    for (int i = 0; i < Inputs; i++) y += weights[j * Inputs + i] * x[i];
+                    final double error = y - ((j == label) ? 1 : 0);
+                    for (int i = 0; i < Inputs; i++) gradient[j * Inputs + i] += error * x[i];
+                    gradient[Inputs * Outputs + j] += error;
+                }
+            }
+
+            step++;
+            for (int k = 0; k < weights.length; k++) {
+                final double g = gradient[k];
+                switch (kind) {
+                    case Momentum:
+                        velocity[k] = Momentum * velocity[k] + g;
+                        weights[k] -= lr * velocity[k];
+                        break;
+                    case Nesterov:
+                        velocity[k] = Momentum * velocity[k] + g;
+                        weights[k] -= lr * (g + Momentum * velocity[k]);
+                        break;
+                    case Adam:
+                        m[k] = Beta1 * m[k] + (1 - Beta1) * g;
+                        v[k] = Beta2 * v[k] + (1 - Beta2) * g * g;
+                        final double mHat = m[k] / (1 - Math.pow(Beta1, step));
+                        final double vHat = v[k] / (1 - Math.pow(Beta2, step));
+                        weights[k] -= lr * mHat / (Math.sqrt(vHat) + Epsilon);
+                        break;
+                }
+            }
+        }
+    }
+
+    private static double[] createLayerData(final Random random) {
+        final double[] data = new double[Inputs * Outputs + Outputs];
+        for (int k = 0; k < data.length; k++) data[k] = random.nextGaussian() * 0.5;
+        return data;
+    }
+
+    private static ModelTrainer createTrainer(final Optimizer optimizer, final double[] data) {
+        // Layers.dense takes the weights in [input][output] order
+        final double[] weights = new double[Inputs * Outputs];
+        for (int j = 0; j < Outputs; j++) {
+            for (int i = 0; i < Inputs; i++) weights[i * Outputs + j] = data[j * Inputs + i];
+        }
+        final double[] biases = new double[Outputs];
+        System.arraycopy(data, Inputs * Outputs, biases, 0, Outputs);
+        return ModelTrainer.create(optimizer, Layers.dense(Inputs, Outputs, weights, biases), Layers.judge(Outputs));
+    }
+
+    private static List<DataSet.Entry> createSamples(final Random random, final int count) {
+        final List<DataSet.Entry> samples = new ArrayList<>(count);
+        for (int idxS = 0; idxS < count; idxS++) {
+            final double[] values = new double[Inputs];
+            for (int i = 0; i < Inputs; i++) values[i] = random.nextGaussian();
+            samples.add(DataSet.LabelEntry.of(random.nextInt(Outputs), values));
+        }
+        return samples;
+    }
+
+    private static void assertWeights(final double[] expected, final ModelTrainer trainer, final String message) {
+        final double[] actual = weightsOf(trainer, 0);
+        assertEquals(expected.length, actual.length, message);
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(expected[k], actual[k], 1e-10 * Math.max(1, Math.abs(expected[k])), message + ", weight " + k);
+        }
+    }
+
+    //================================================================
+
+    @Test
+    public void firstStepsByHand() {
+        // D(1, 2) from zero weights, input 2 and label 0: the error of output 0 is 2w - 1, output 1 stays at 0
+        final double[] expectedSgd = {0.2, 0.32};
+        final double[] expectedMomentum = {0.2, 0.5};
+        final double[] expectedNesterov = {0.38, 0.6332};
+        final double[] expectedAdam = {0.0999999995, 0.19881257937657};
+        final Optimizer[] optimizers = {
+                Optimizer.Sgd, optimizerOf(Kind.Momentum), optimizerOf(Kind.Nesterov), optimizerOf(Kind.Adam)
+        };
+        final double[][] expected = {expectedSgd, expectedMomentum, expectedNesterov, expectedAdam};
+
+        final DataSet.Entry sample = DataSet.LabelEntry.of(0, new double[]{2});
+        for (int o = 0; o < optimizers.length; o++) {
+            final ModelTrainer trainer = ModelTrainer.create(optimizers[o], Layers.dense(1, 2), Layers.judge(2));
+            for (int step = 0; step < 2; step++) {
+                trainer.adjust(sample, 0.1);
+                final double[] weights = weightsOf(trainer, 0);
+                assertEquals(expected[o][step], weights[0], 1e-12, "Optimizer " + o + ", step " + (step + 1));
+                assertEquals(0, weights[1], 0, "Optimizer " + o + ", step " + (step + 1));
+            }
+        }
+    }
+
+    @Test
+    public void perSampleUpdatesMatchTheReference() {
+        final List<DataSet.Entry> samples = createSamples(new Random(3), 8);
+        for (final Kind kind : Kind.values()) {
+            final double lr = (kind == Kind.Adam) ? 1e-2 : 5e-2;
+            final double[] data = createLayerData(new Random(4));
+            final Reference reference = new Reference(kind, data);
+            final ModelTrainer trainer = createTrainer(optimizerOf(kind), data);
+            for (final DataSet.Entry sample : samples) {
+                reference.step(Collections.singletonList(sample), lr);
+                trainer.adjust(sample, lr);
+                assertWeights(reference.weights, trainer, kind.name());
+            }
+        }
+    }
+
+    @Test
+    public void batchUpdatesMatchTheReference() {
+        final List<DataSet.Entry> samples = createSamples(new Random(5), 24);
+        for (final Kind kind : Kind.values()) {
+            final double lr = 1e-2;
+            final double[] data = createLayerData(new Random(6));
+            final Reference reference = new Reference(kind, data);
+            final ModelTrainer trainer = createTrainer(optimizerOf(kind), data);
+            for (int from = 0; from < samples.size(); from += 6) {
+                final List<DataSet.Entry> batch = samples.subList(from, from + 6);
+                reference.step(batch, lr);
+                trainer.adjustBatch(batch, lr);
+                assertWeights(reference.weights, trainer, kind.name());
+            }
+        }
+    }
+
+    @Test
+    public void stripedAdamCountsOneStepForEachBatch() {
+        // Each worker applies a stripe of the gradient, the bias correction should still count batches
+        final List<DataSet.Entry> samples = createSamples(new Random(7), 24);
+        for (final int workerCount : new int[]{1, 2, 3, 4}) {
+            final double[] data = createLayerData(new Random(8));
+            final Reference reference = new Reference(Kind.Adam, data);
+            final ModelTrainer trainer = createTrainer(optimizerOf(Kind.Adam), data);
+            try (final DataParallelTrainer parallel = DataParallelTrainer.on(trainer, workerCount)) {
+                for (int from = 0; from < samples.size(); from += 6) {
+                    final List<DataSet.Entry> batch = samples.subList(from, from + 6);
+                    reference.step(batch, 1e-2);
+                    parallel.adjustBatch(batch, 1e-2);
+                    assertWeights(reference.weights, trainer, workerCount + " workers");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void adamWorkersGiveTheSameWeightsAsOneWorker() {
+        final List<DataSet.Entry> samples = TestTrainers.createSamples(new Random(1), 96);
+        final double[] initial = weightsOf(TestTrainers.createTrainer(17, Optimizer.adam()), 0);
+        for (final int workerCount : new int[]{2, 3, 4}) {
+            final ModelTrainer expected = TestTrainers.createTrainer(17, Optimizer.adam());
+            final ModelTrainer actual = TestTrainers.createTrainer(17, Optimizer.adam());
+            try (final DataParallelTrainer one = DataParallelTrainer.on(expected, 1);
+                 final DataParallelTrainer parallel = DataParallelTrainer.on(actual, workerCount)) {
+                for (int from = 0; from < samples.size(); from += 32) {
+                    final List<DataSet.Entry> batch = samples.subList(from, from + 32);
+                    one.adjustBatch(batch, 1e-3);
+                    parallel.adjustBatch(batch, 1e-3);
+                }
+            }
+            assertFalse(Arrays.equals(initial, weightsOf(actual, 0)));
+            assertSameWeights(expected, actual, 1e-12);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.DataSet.LabelEntry;
+import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+import com.shinonometn.ml.ll4j.ParallelCsvLoader;
+import com.shinonometn.ml.ll4j.ParallelCsvLoader.Order;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the chunked CSV loader against the sequential reader, on files of a few chunks.
+ * The second field of each row is its index in the file.
+ */
+public class ParallelCsvLoaderTest {
+    private final static String Header = "label,id,a,b,c\n";
+
+    private interface Rows {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static Path createFile(final Rows rows) throws IOException {
+        final Path path = Files.createTempFile("ll4j-csv-", ".csv");
+        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            rows.write(out);
+        } catch (IOException | RuntimeException e) {
+            Files.delete(path);
+            throw e;
+        }
+        return path;
+    }
+
+    private static int writeRow(final OutputStream out, final Random random, final int id, final String lineBreak)
+            throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(id % 10).append(',').append(id);
+        // Random lengths, so lines cross the chunk boundaries at any byte. Rows of a file have the same field count
+        for (int i = 0; i < 3; i++) {
+            final int value = random.nextInt(256);
+            builder.append(',');
+            if (random.nextBoolean()) builder.append(value); else builder.append(value / 255.0);
+        }
+        builder.append(lineBreak);
+        final byte[] bytes = builder.toString().getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * A file with a header and rows of about the given byte count
+     */
+    private static Path createFile(final long byteCount, final String lineBreak) throws IOException {
+        return createFile(out -> {
+            final Random random = new Random(byteCount);
+            out.write(Header.getBytes(StandardCharsets.US_ASCII));
+            long written = 0;
+            for (int id = 0; written < byteCount; id++) written += writeRow(out, random, id, lineBreak);
+        });
+    }
+
+    private static List<LabelEntry> readAll(final SampleIterator<LabelEntry> iterator) throws IOException {
+        final List<LabelEntry> entries = new ArrayList<>();
+        try (final SampleIterator<LabelEntry> entryIterator = iterator) {
+            while (entryIterator.hasNext()) entries.add(entryIterator.next());
+        }
+        return entries;
+    }
+
+    private static void assertSameEntries(final List<LabelEntry> expected, final List<LabelEntry> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getLabelValue(), actual.get(i).getLabelValue(), "Label of row " + i);
+            assertArrayEquals(expected.get(i).values, actual.get(i).values, "Values of row " + i);
+        }
+    }
+
+    /** Every id in [0, count) appears exactly once */
+    private static void assertEveryRowOnce(final List<LabelEntry> entries, final int count) {
+        final int[] ids = new int[entries.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = (int) entries.get(i).values[0];
+        Arrays.sort(ids);
+        assertEquals(count, ids.length);
+        for (int i = 0; i < ids.length; i++) assertEquals(i, ids[i], "Row " + i);
+    }
+
+    //================================================================
+
+    @Test
+    public void strictOrderMatchesTheSequentialReader() throws IOException {
+        for (final String lineBreak : new String[]{"\n", "\r\n"}) {
+            final Path path = createFile(ParallelCsvLoader.ChunkSize * 5L / 2, lineBreak);
+            try {
+                final List<LabelEntry> expected = readAll(LabelEntry.createCSVIterator(path.toString(), true));
+                assertTrue(expected.size() > 1000);
+                for (final int workerCount : new int[]{1, 4}) {
+                    assertSameEntries(expected, readAll(ParallelCsvLoader.open(path, true, workerCount, Order.Strict)));
+                }
+            } finally {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void unorderedDeliversEveryRowOnce() throws IOException {
+        final Path path = createFile(ParallelCsvLoader.ChunkSize * 7L / 2, "\n");
+        try {
+            final int count = readAll(LabelEntry.createCSVIterator(path.toString(), true)).size();
+            try (final SampleIterator<List<LabelEntry>> batches = ParallelCsvLoader.openBatches(path, true, 4, Order.Unordered)) {
+                final List<LabelEntry> entries = new ArrayList<>();
+                while (batches.hasNext()) {
+                    final List<LabelEntry> batch = batches.next();
+                    assertFalse(batch.isEmpty());
+                    // Rows of a batch keep their order
+                    for (int i = 1; i < batch.size(); i++) assertTrue(batch.get(i - 1).values[0] < batch.get(i).values[0]);
+                    entries.addAll(batch);
+                }
+                assertEveryRowOnce(entries, count);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void linesOnTheChunkBoundary() throws IOException {
+        // One line ends right before the boundary and the next one starts on it
+        final int headerLength = Header.length();
+        final int[] count = new int[1];
+        final Path path = createFile(out -> {
+            final Random random = new Random(5);
+            out.write(Header.getBytes(StandardCharsets.US_ASCII));
+            long written = 0;
+            int id = 0;
+            while (written < ParallelCsvLoader.ChunkSize - 200) written += writeRow(out, random, id++, "\n");
+
+            // Leading zeros fill the line up to the boundary
+            final String start = (id % 10) + "," + id + ",1,2,";
+            final int zeros = (int) (ParallelCsvLoader.ChunkSize - written) - start.length() - 2;
+            final char[] padding = new char[zeros];
+            Arrays.fill(padding, '0');
+            final String line = start + new String(padding) + "5\n";
+            out.write(line.getBytes(StandardCharsets.US_ASCII));
+            written += line.length();
+            assertEquals(ParallelCsvLoader.ChunkSize, written);
+            id++;
+
+            for (int i = 0; i < 100; i++) writeRow(out, random, id++, "\n");
+            count[0] = id;
+        });
+        try {
+            final byte[] bytes = Files.readAllBytes(path);
+            assertEquals((byte) '\n', bytes[headerLength + ParallelCsvLoader.ChunkSize - 1]);
+
+            final List<LabelEntry> expected = readAll(LabelEntry.createCSVIterator(path.toString(), true));
+            assertEveryRowOnce(expected, count[0]);
+            assertSameEntries(expected, readAll(ParallelCsvLoader.open(path, true, 2, Order.Strict)));
+            assertEveryRowOnce(readAll(ParallelCsvLoader.open(path, true, 2, Order.Unordered)), count[0]);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void parseErrorsReachTheConsumer() throws IOException {
+        // A bad row in the second chunk
+        final Path path = createFile(out -> {
+            final Random random = new Random(9);
+            out.write(Header.getBytes(StandardCharsets.US_ASCII));
+            long written = 0;
+            int id = 0;
+            while (written < ParallelCsvLoader.ChunkSize * 3L / 2) written += writeRow(out, random, id++, "\n");
+            out.write("1,x,2,3,4\n".getBytes(StandardCharsets.US_ASCII));
+            while (written < ParallelCsvLoader.ChunkSize * 5L / 2) written += writeRow(out, random, id++, "\n");
+        });
+        try {
+            for (final Order order : Order.values()) {
+                final SampleIterator<LabelEntry> iterator = ParallelCsvLoader.open(path, true, 2, order);
+                try {
+                    final UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> {
+                        while (iterator.hasNext()) iterator.next();
+                    }, order.name());
+                    assertTrue(e.getMessage().contains("Bad number"), e.getMessage());
+                } finally {
+                    iterator.close();
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void closeStopsTheWorkers() throws Exception {
+        // More chunks than the queue can hold, so the worker is blocked on the full queue
+        final Path path = createFile(ParallelCsvLoader.ChunkSize * 6L, "\n");
+        try {
+            final SampleIterator<LabelEntry> iterator = ParallelCsvLoader.open(path, true, 1, Order.Strict);
+            assertTrue(iterator.hasNext());
+            assertEquals(0, (int) iterator.next().values[0]);
+            Thread.sleep(200);
+            iterator.close();
+            assertFalse(iterator.hasNext());
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (loaderThreadCount() > 0) {
+                assertTrue(System.currentTimeMillis() < deadline, "Loader threads are still running");
+                Thread.sleep(10);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static int loaderThreadCount() {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("ll4j-csv-loader-") && thread.isAlive()) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.DataSet.SampleIterator;
+import com.shinonometn.ml.ll4j.PrefetchingIterator;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the prefetching iterator keeps the order of its source, passes the errors of the source after
+ * the samples read before them, and stops its reader on close.
+ */
+public class PrefetchingIteratorTest {
+
+    /**
+     * Counts from 0, and fails when it reaches {@code failAt}
+     */
+    private static final class CountingSource implements SampleIterator<Integer> {
+        private final int count;
+        private final int failAt;
+        final AtomicInteger read = new AtomicInteger(0);
+        volatile boolean closed = false;
+
+        CountingSource(final int count, final int failAt) {
+            this.count = count;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return read.get() < count;
+        }
+
+        @Override
+        public Integer next() {
+            final int value = read.get();
+            if (value == failAt) throw new IllegalStateException("Bad sample " + value);
+            return read.getAndIncrement();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static int prefetchThreadCount() {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("ll4j-prefetch-") && thread.isAlive()) count++;
+        }
+        return count;
+    }
+
+    private static void awaitNoPrefetchThread() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (prefetchThreadCount() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Prefetch threads are still running");
+            Thread.sleep(10);
+        }
+    }
+
+    //================================================================
+
+    @Test
+    public void orderIsKept() throws Exception {
+        for (final int depth : new int[]{1, 3, 64}) {
+            final CountingSource source = new CountingSource(1000, -1);
+            try (final PrefetchingIterator<Integer> iterator = PrefetchingIterator.wrap(source, depth)) {
+                for (int i = 0; i < 1000; i++) {
+                    assertTrue(iterator.hasNext(), "Sample " + i + " with depth " + depth);
+                    assertEquals(i, (int) iterator.next(), "Sample " + i + " with depth " + depth);
+                }
+                assertFalse(iterator.hasNext());
+            }
+            assertTrue(source.closed);
+        }
+        awaitNoPrefetchThread();
+    }
+
+    @Test
+    public void errorsComeAfterTheSamplesBeforeThem() throws Exception {
+        for (final int depth : new int[]{1, 4}) {
+            final CountingSource source = new CountingSource(100, 10);
+            try (final PrefetchingIterator<Integer> iterator = PrefetchingIterator.wrap(source, depth)) {
+                for (int i = 0; i < 10; i++) assertEquals(i, (int) iterator.next(), "Sample " + i);
+                final IllegalStateException e = assertThrows(IllegalStateException.class, iterator::hasNext);
+                assertEquals("Bad sample 10", e.getMessage());
+                // The error stays, it is not skipped
+                assertThrows(IllegalStateException.class, iterator::next);
+            }
+            assertTrue(source.closed);
+        }
+        awaitNoPrefetchThread();
+    }
+
+    @Test
+    public void closeStopsABlockedReader() throws Exception {
+        // Nothing is consumed, so the reader fills the slots and blocks on the next one
+        final int depth = 2;
+        final CountingSource source = new CountingSource(Integer.MAX_VALUE, -1);
+        final PrefetchingIterator<Integer> iterator = PrefetchingIterator.wrap(source, depth);
+        Thread.sleep(200);
+        assertEquals(depth + 1, source.read.get());
+        assertEquals(1, prefetchThreadCount());
+
+        iterator.close();
+        assertTrue(source.closed);
+        assertFalse(iterator.hasNext());
+        awaitNoPrefetchThread();
+    }
+
+    @Test
+    public void depthShouldBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> PrefetchingIterator.wrap(new CountingSource(1, -1), 0));
+    }
+}
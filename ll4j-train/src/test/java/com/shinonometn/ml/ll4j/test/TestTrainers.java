@@ -0,0 +1,93 @@
+package com.shinonometn.ml.ll4j.test;
+
+import com.shinonometn.ml.ll4j.DataSet;
+import com.shinonometn.ml.ll4j.Layer;
+import com.shinonometn.ml.ll4j.Layers;
+import com.shinonometn.ml.ll4j.ModelTrainer;
+import com.shinonometn.ml.ll4j.Optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Small D -> L -> D -> J models and random samples shared by the training tests
+ */
+final class TestTrainers {
+    private TestTrainers() {
+    }
+
+    final static int InputSize = 20;
+    final static int HiddenSize = 12;
+    final static int ClassCount = 5;
+
+    /** Weights in [input][output] order, same as {@link Layers#dense(int, int, double[])} */
+    static double[] createWeights(final Random random, final int input, final int output) {
+        final double[] weights = new double[input * output];
+        for (int i = 0; i < weights.length; i++) weights[i] = random.nextGaussian() / Math.sqrt(input);
+        return weights;
+    }
+
+    /**
+     * Create a trainer, trainers created from the same seed start with the same weights
+     */
+    static ModelTrainer createTrainer(final long seed, final Optimizer optimizer) {
+        final Random random = new Random(seed);
+        return ModelTrainer.create(
+                optimizer,
+                Layers.dense(InputSize, HiddenSize, createWeights(random, InputSize, HiddenSize)),
+                Layers.leakyRelu(HiddenSize),
+                Layers.dense(HiddenSize, ClassCount, createWeights(random, HiddenSize, ClassCount)),
+                Layers.judge(ClassCount)
+        );
+    }
+
+    /**
+     * Create a trainer whose dense layers have biases. A third of the hidden biases are zero and the others
+     * have both signs, so an all-zero sample gives pre-activations that are exactly zero or negative.
+     */
+    static ModelTrainer createBiasedTrainer(final long seed, final Optimizer optimizer) {
+        final Random random = new Random(seed);
+        final double[] hiddenBiases = new double[HiddenSize];
+        for (int j = 0; j < HiddenSize; j++) hiddenBiases[j] = (j % 3 == 0) ? 0 : random.nextGaussian();
+        final double[] outputBiases = new double[ClassCount];
+        for (int j = 0; j < ClassCount; j++) outputBiases[j] = random.nextGaussian();
+        return ModelTrainer.create(
+                optimizer,
+                Layers.dense(InputSize, HiddenSize, createWeights(random, InputSize, HiddenSize), hiddenBiases),
+                Layers.leakyRelu(HiddenSize),
+                Layers.dense(HiddenSize, ClassCount, createWeights(random, HiddenSize, ClassCount), outputBiases),
+                Layers.judge(ClassCount)
+        );
+    }
+
+    static List<DataSet.Entry> createSamples(final Random random, final int count) {
+        final List<DataSet.Entry> samples = new ArrayList<>(count);
+        for (int idxS = 0; idxS < count; idxS++) {
+            final double[] values = new double[InputSize];
+            for (int i = 0; i < values.length; i++) values[i] = random.nextGaussian();
+            samples.add(DataSet.LabelEntry.of(random.nextInt(ClassCount), values));
+        }
+        return samples;
+    }
+
+    /** A copy of the weights of layer k, output-major and followed by the biases */
+    static double[] weightsOf(final ModelTrainer trainer, final int k) {
+        final Layer layer = trainer.toModel().getLayers().get(k);
+        return layer.getData().clone();
+    }
+
+    static void assertSameWeights(final ModelTrainer expected, final ModelTrainer actual, final double tolerance) {
+        final int layerCount = expected.toModel().getLayers().size();
+        for (int k = 0; k < layerCount; k++) {
+            final double[] e = weightsOf(expected, k);
+            final double[] a = weightsOf(actual, k);
+            assertEquals(e.length, a.length, "Weight count of layer " + k);
+            for (int i = 0; i < e.length; i++) {
+                assertEquals(e[i], a[i], tolerance * Math.max(1, Math.abs(e[i])), "Weight " + i + " of layer " + k);
+            }
+        }
+    }
+}
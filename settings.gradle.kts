@@ -11,7 +11,9 @@ rootProject.name = "LL4J"
 include("ll4j-huzpsb")
 include("ll4j-rt")
 include("ll4j-train")
+include("ll4j-simd")
 include("ll4j-demo")
+include("ll4j-bench")
 
 pluginManagement {
     repositories {